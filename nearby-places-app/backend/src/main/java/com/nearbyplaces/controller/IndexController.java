@@ -0,0 +1,69 @@
+package com.nearbyplaces.controller;
+
+import com.nearbyplaces.service.ClusterService;
+import com.nearbyplaces.service.PlaceIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/api/index")
+@CrossOrigin(origins = "*")
+public class IndexController {
+    
+    @Autowired
+    private PlaceIndexService placeIndexService;
+    
+    @Autowired
+    private ClusterService clusterService;
+    
+    /**
+     * Rebuild the spatial indexes and cluster pyramids from the places table
+     * 
+     * @return Number of indexed places
+     */
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild() {
+        try {
+            placeIndexService.rebuild();
+            clusterService.rebuild();
+            return ResponseEntity.ok().body("{\"places\": " + placeIndexService.size() + "}");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("{\"error\": \"Failed to rebuild spatial index\"}");
+        }
+    }
+    
+    /**
+     * Describe the shard this instance serves, as used by coordinators
+     * 
+     * @return Cell range of the indexed places, empty for the whole world, and their number
+     */
+    @GetMapping("/shard")
+    public ResponseEntity<?> shard() {
+        return ResponseEntity.ok().body("{\"cellRange\": \"" + placeIndexService.getShardRange()
+            + "\", \"places\": " + placeIndexService.size() + "}");
+    }
+    
+    /**
+     * Write the current index snapshot to the configured snapshot file
+     * 
+     * @return Path of the written file
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<?> writeSnapshot() {
+        try {
+            Path path = placeIndexService.writeSnapshot();
+            return ResponseEntity.ok().body("{\"path\": \"" + path + "\"}");
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("{\"error\": \"Failed to write snapshot\"}");
+        }
+    }
+}
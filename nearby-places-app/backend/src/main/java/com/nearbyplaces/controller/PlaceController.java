@@ -1,16 +1,33 @@
 package com.nearbyplaces.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nearbyplaces.dto.ClusterResponse;
+import com.nearbyplaces.dto.CompletionResponse;
+import com.nearbyplaces.dto.NearbyBatchResponse;
+import com.nearbyplaces.dto.NearbyPageResponse;
 import com.nearbyplaces.dto.NearbyPlacesRequest;
 import com.nearbyplaces.dto.PlaceResponse;
-import com.nearbyplaces.dto.ReviewResponse;
+import com.nearbyplaces.dto.ViewportResponse;
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.service.AutocompleteService;
+import com.nearbyplaces.service.ClusterService;
+import com.nearbyplaces.service.NearbyBatchService;
 import com.nearbyplaces.service.PlaceService;
+import com.nearbyplaces.service.ReviewPrefetcher;
 import com.nearbyplaces.service.ReviewService;
+import com.nearbyplaces.service.ShardCoordinator;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
-import java.math.BigDecimal;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 
 @RestController
@@ -18,44 +35,390 @@ import java.util.List;
 @CrossOrigin(origins = "*")
 public class PlaceController {
     
+    private static final int MAX_NEARBY_RESULTS = 1000;
+    private static final int MAX_NEAREST_RESULTS = 1000;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_VIEWPORT_RESULTS = 5000;
+    private static final int MAX_ZOOM = 24;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int MAX_COMPLETIONS = 20;
+    private static final int STREAM_FLUSH_INTERVAL = 100;
+    
     @Autowired
     private PlaceService placeService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private NearbyBatchService nearbyBatchService;
+    
+    @Autowired
+    private ClusterService clusterService;
+    
+    @Autowired
+    private AutocompleteService autocompleteService;
+    
     @Autowired
     private ReviewService reviewService;
     
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+    
+    @Autowired
+    private ReviewPrefetcher reviewPrefetcher;
+    
+    /**
+     * Find places within the radius
+     * 
+     * @param sort distance, rating or relevance
+     * @param limit Maximum number of places, the best ranked ones are kept
+     * @return Places with their distance
+     */
     @GetMapping("/nearby")
-    public ResponseEntity<List<PlaceResponse>> findNearbyPlaces(
-            @RequestParam BigDecimal latitude,
-            @RequestParam BigDecimal longitude,
-            @RequestParam BigDecimal radius,
+    public ResponseEntity<?> findNearbyPlaces(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam double radius,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer limit) {
+        
+        if (limit != null && (limit < 1 || limit > MAX_NEARBY_RESULTS)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            if (shardCoordinator.isEnabled()) {
+                ShardCoordinator.Result result = shardCoordinator.findNearbyPlaces(latitude, longitude, radius, type,
+                    sort, limit);
+                reviewPrefetcher.prefetchTopResults(result.getPlaces());
+                return gathered(result);
+            }
+            List<PlaceResponse> places = placeService.findNearbyPlaces(latitude, longitude, radius, type, sort, limit);
+            reviewPrefetcher.prefetchTopResults(places);
+            return ResponseEntity.ok(places);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Stream nearby places as newline-delimited JSON in distance order
+     * 
+     * @return One JSON place per line, written while the index is scanned; a
+     *         coordinator gathers the places from the shards before writing them
+     */
+    @GetMapping(value = "/nearby", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamNearbyPlaces(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam double radius,
             @RequestParam(required = false) String type) {
         
-        List<PlaceResponse> places = placeService.findNearbyPlaces(latitude, longitude, radius, type);
-        return ResponseEntity.ok(places);
+        try {
+            if (shardCoordinator.isEnabled()) {
+                ShardCoordinator.Result result = shardCoordinator.findNearbyPlaces(latitude, longitude, radius, type,
+                    "distance", null);
+                return gatheredFrom(result).contentType(MediaType.APPLICATION_NDJSON)
+                    .body(ndjson(result.getPlaces().iterator()));
+            }
+            Iterator<PlaceResponse> places = placeService.streamNearbyPlaces(latitude, longitude, radius, type);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(ndjson(places));
+        } catch (IllegalArgumentException e) {
+            byte[] error = ("{\"error\": \"" + e.getMessage() + "\"}").getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(error));
+        }
+    }
+    
+    /**
+     * Page through nearby places in distance order
+     * 
+     * @param limit Maximum number of places per page
+     * @param cursor Cursor returned with the previous page
+     * @return The page and the cursor of the next page; 400 on a coordinator,
+     *         as cursors refer to rows of a single index
+     */
+    @GetMapping("/nearby/page")
+    public ResponseEntity<?> findNearbyPlacesPage(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam double radius,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String cursor) {
+        
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (shardCoordinator.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"Paging is not available on a coordinator, use /api/nearby with a limit\"}");
+        }
+        
+        try {
+            NearbyPageResponse page = placeService.findNearbyPlacesPage(latitude, longitude, radius, type, limit, cursor);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
     }
     
     @PostMapping("/nearby")
-    public ResponseEntity<List<PlaceResponse>> findNearbyPlacesPost(
+    public ResponseEntity<?> findNearbyPlacesPost(
             @Valid @RequestBody NearbyPlacesRequest request) {
         
-        List<PlaceResponse> places = placeService.findNearbyPlaces(
-            request.getLatitude(), 
-            request.getLongitude(), 
-            request.getRadius(),
-            request.getType()
-        );
+        try {
+            if (shardCoordinator.isEnabled()) {
+                ShardCoordinator.Result result = shardCoordinator.findNearbyPlaces(request.getLatitude(),
+                    request.getLongitude(), request.getRadius(), request.getType(), request.getSort(),
+                    request.getLimit());
+                reviewPrefetcher.prefetchTopResults(result.getPlaces());
+                return gathered(result);
+            }
+            List<PlaceResponse> places = placeService.findNearbyPlaces(
+                request.getLatitude(), 
+                request.getLongitude(), 
+                request.getRadius(),
+                request.getType(),
+                request.getSort(),
+                request.getLimit()
+            );
+            reviewPrefetcher.prefetchTopResults(places);
+            return ResponseEntity.ok(places);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Run several nearby searches in one call
+     * 
+     * @param requests The queries, results are returned in the same order
+     * @return Distinct places and per-query results referring to them
+     */
+    @PostMapping("/nearby/batch")
+    public ResponseEntity<?> findNearbyPlacesBatch(@RequestBody List<NearbyPlacesRequest> requests) {
+        try {
+            NearbyBatchResponse response = nearbyBatchService.findNearbyPlaces(requests);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    @GetMapping("/nearby/knn")
+    public ResponseEntity<?> findNearestPlaces(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "20") int k,
+            @RequestParam(required = false) String type) {
+        
+        if (k < 1 || k > MAX_NEAREST_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            if (shardCoordinator.isEnabled()) {
+                return gathered(shardCoordinator.findNearestPlaces(latitude, longitude, k, type));
+            }
+            List<PlaceResponse> places = placeService.findNearestPlaces(latitude, longitude, k, type);
+            return ResponseEntity.ok(places);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Search places near the given coordinates by name or address
+     * 
+     * @param q Free text query
+     * @return Matching places, best match first
+     */
+    @GetMapping("/places/search")
+    public ResponseEntity<List<PlaceResponse>> searchPlaces(
+            @RequestParam String q,
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "10") double radius,
+            @RequestParam(defaultValue = "20") int limit) {
+        
+        if (q.isBlank() || limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<PlaceResponse> places = placeService.searchPlaces(q, latitude, longitude, radius, limit);
         return ResponseEntity.ok(places);
     }
     
+    /**
+     * Complete a place name or type prefix
+     * 
+     * @param prefix Text typed so far
+     * @return Completions, the ones popular around the given location first
+     */
+    @GetMapping("/places/autocomplete")
+    public ResponseEntity<List<CompletionResponse>> autocomplete(
+            @RequestParam String prefix,
+            @RequestParam(required = false) Double latitude,
+            @RequestParam(required = false) Double longitude,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        if (limit < 1 || limit > MAX_COMPLETIONS) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<CompletionResponse> completions = autocompleteService.complete(prefix, latitude, longitude, limit);
+        return ResponseEntity.ok(completions);
+    }
+    
+    /**
+     * Find the places inside a map viewport
+     * 
+     * @param since Previous viewport as minLat,minLng,maxLat,maxLng; when given
+     *              only places entering and leaving the viewport are returned
+     * @return Places of the viewport or the difference to the previous one
+     */
+    @GetMapping("/places/viewport")
+    public ResponseEntity<?> findPlacesInViewport(
+            @RequestParam double minLat,
+            @RequestParam double minLng,
+            @RequestParam double maxLat,
+            @RequestParam double maxLng,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String since) {
+        
+        if (limit < 1 || limit > MAX_VIEWPORT_RESULTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            BoundingBox box = viewport(minLat, minLng, maxLat, maxLng);
+            BoundingBox previous = since == null || since.isBlank() ? null : parseViewport(since);
+            ViewportResponse response = placeService.findPlacesInViewport(box, previous, type, limit);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Find the place clusters of a map viewport at a zoom level
+     * 
+     * @param bbox Viewport as minLng,minLat,maxLng,maxLat
+     * @param zoom Map zoom level
+     * @return Clusters with centroid, place count and top-rated place id
+     */
+    @GetMapping("/places/clusters")
+    public ResponseEntity<?> findClusters(
+            @RequestParam String bbox,
+            @RequestParam int zoom,
+            @RequestParam(required = false) String type) {
+        
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            String[] parts = bbox.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("bbox must be minLng,minLat,maxLng,maxLat");
+            }
+            BoundingBox box = viewport(Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[0].trim()),
+                Double.parseDouble(parts[3].trim()), Double.parseDouble(parts[2].trim()));
+            List<ClusterResponse> clusters = clusterService.findClusters(box, zoom, type);
+            return ResponseEntity.ok(clusters);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"bbox must be minLng,minLat,maxLng,maxLat\"}");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body("{\"error\": \"" + e.getMessage() + "\"}");
+        }
+    }
+    
+    /**
+     * Get the reviews of a place. The request thread is released while the
+     * reviews are fetched upstream.
+     * 
+     * @return The reviews, or 503 if none are cached and the upstream is failing
+     */
     @GetMapping("/places/{placeId}/reviews")
-    public ResponseEntity<List<ReviewResponse>> getPlaceReviews(@PathVariable String placeId) {
-        List<ReviewResponse> reviews = reviewService.getPlaceReviews(placeId);
-        return ResponseEntity.ok(reviews);
+    public Mono<ResponseEntity<?>> getPlaceReviews(@PathVariable String placeId) {
+        return reviewService.getPlaceReviews(placeId)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .onErrorResume(e -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("{\"error\": \"Reviews are temporarily unavailable\"}")));
     }
     
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Nearby Places API is running!");
     }
+    
+    /**
+     * Writes one JSON place per line, flushing every few places
+     */
+    private StreamingResponseBody ndjson(Iterator<PlaceResponse> places) {
+        return (OutputStream out) -> {
+            int written = 0;
+            while (places.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(places.next()));
+                out.write('\n');
+                if (++written % STREAM_FLUSH_INTERVAL == 0) {
+                    out.flush();
+                }
+            }
+        };
+    }
+    
+    /**
+     * Places gathered from shards; when shards were left out the response
+     * says so in the X-Partial-Results and X-Failed-Shards headers
+     */
+    private static ResponseEntity<List<PlaceResponse>> gathered(ShardCoordinator.Result result) {
+        return gatheredFrom(result).body(result.getPlaces());
+    }
+    
+    private static ResponseEntity.BodyBuilder gatheredFrom(ShardCoordinator.Result result) {
+        if (!result.isPartial()) {
+            return ResponseEntity.ok();
+        }
+        return ResponseEntity.ok()
+            .header("X-Partial-Results", "true")
+            .header("X-Failed-Shards", String.join(",", result.getFailedShards()));
+    }
+    
+    private static BoundingBox parseViewport(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("since must be minLat,minLng,maxLat,maxLng");
+        }
+        try {
+            return viewport(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("since must be minLat,minLng,maxLat,maxLng");
+        }
+    }
+    
+    private static BoundingBox viewport(double minLat, double minLng, double maxLat, double maxLng) {
+        if (!(minLat >= -90 && maxLat <= 90 && minLat <= maxLat)) {
+            throw new IllegalArgumentException("Latitudes must be between -90 and 90 with minLat <= maxLat");
+        }
+        if (!(minLng >= -180 && minLng <= 180 && maxLng >= -180 && maxLng <= 180)) {
+            throw new IllegalArgumentException("Longitudes must be between -180 and 180");
+        }
+        // minLng > maxLng describes a viewport crossing the antimeridian
+        return new BoundingBox(minLat, maxLat, minLng, maxLng);
+    }
 } 
\ No newline at end of file
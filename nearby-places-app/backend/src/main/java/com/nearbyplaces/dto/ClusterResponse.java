@@ -0,0 +1,52 @@
+package com.nearbyplaces.dto;
+
+public class ClusterResponse {
+    
+    private double latitude;
+    private double longitude;
+    private int count;
+    private String topPlaceId;
+    
+    // Constructors
+    public ClusterResponse() {}
+    
+    public ClusterResponse(double latitude, double longitude, int count, String topPlaceId) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.count = count;
+        this.topPlaceId = topPlaceId;
+    }
+    
+    // Getters and Setters
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public void setCount(int count) {
+        this.count = count;
+    }
+    
+    public String getTopPlaceId() {
+        return topPlaceId;
+    }
+    
+    public void setTopPlaceId(String topPlaceId) {
+        this.topPlaceId = topPlaceId;
+    }
+}
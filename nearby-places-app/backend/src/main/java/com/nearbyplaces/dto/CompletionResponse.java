@@ -0,0 +1,32 @@
+package com.nearbyplaces.dto;
+
+public class CompletionResponse {
+    
+    private String text;
+    private String kind;
+    
+    // Constructors
+    public CompletionResponse() {}
+    
+    public CompletionResponse(String text, String kind) {
+        this.text = text;
+        this.kind = kind;
+    }
+    
+    // Getters and Setters
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public String getKind() {
+        return kind;
+    }
+    
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+}
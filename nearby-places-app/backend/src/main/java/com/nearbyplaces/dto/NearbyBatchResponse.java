@@ -0,0 +1,40 @@
+package com.nearbyplaces.dto;
+
+import java.util.List;
+
+/**
+ * Results of a batch nearby search. Every distinct place is listed once in
+ * places; each entry of results belongs to the query at the same position of
+ * the request and refers to its places by index, with their distances from
+ * its own center.
+ */
+public class NearbyBatchResponse {
+    
+    private List<PlaceResponse> places;
+    private List<NearbyBatchResult> results;
+    
+    // Constructors
+    public NearbyBatchResponse() {}
+    
+    public NearbyBatchResponse(List<PlaceResponse> places, List<NearbyBatchResult> results) {
+        this.places = places;
+        this.results = results;
+    }
+    
+    // Getters and Setters
+    public List<PlaceResponse> getPlaces() {
+        return places;
+    }
+    
+    public void setPlaces(List<PlaceResponse> places) {
+        this.places = places;
+    }
+    
+    public List<NearbyBatchResult> getResults() {
+        return results;
+    }
+    
+    public void setResults(List<NearbyBatchResult> results) {
+        this.results = results;
+    }
+}
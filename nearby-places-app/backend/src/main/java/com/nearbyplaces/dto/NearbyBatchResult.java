@@ -0,0 +1,45 @@
+package com.nearbyplaces.dto;
+
+import java.util.List;
+
+public class NearbyBatchResult {
+    
+    private List<Integer> places;
+    // Kilometers from this query's center, one per entry of places
+    private List<Double> distances;
+    private String error;
+    
+    // Constructors
+    public NearbyBatchResult() {}
+    
+    public NearbyBatchResult(List<Integer> places, List<Double> distances, String error) {
+        this.places = places;
+        this.distances = distances;
+        this.error = error;
+    }
+    
+    // Getters and Setters
+    public List<Integer> getPlaces() {
+        return places;
+    }
+    
+    public void setPlaces(List<Integer> places) {
+        this.places = places;
+    }
+    
+    public List<Double> getDistances() {
+        return distances;
+    }
+    
+    public void setDistances(List<Double> distances) {
+        this.distances = distances;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
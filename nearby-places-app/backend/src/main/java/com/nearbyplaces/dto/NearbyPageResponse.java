@@ -0,0 +1,34 @@
+package com.nearbyplaces.dto;
+
+import java.util.List;
+
+public class NearbyPageResponse {
+    
+    private List<PlaceResponse> places;
+    private String nextCursor;
+    
+    // Constructors
+    public NearbyPageResponse() {}
+    
+    public NearbyPageResponse(List<PlaceResponse> places, String nextCursor) {
+        this.places = places;
+        this.nextCursor = nextCursor;
+    }
+    
+    // Getters and Setters
+    public List<PlaceResponse> getPlaces() {
+        return places;
+    }
+    
+    public void setPlaces(List<PlaceResponse> places) {
+        this.places = places;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
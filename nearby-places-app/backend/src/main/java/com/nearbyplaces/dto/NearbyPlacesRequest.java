@@ -2,59 +2,68 @@ package com.nearbyplaces.dto;
 
 import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
-import java.math.BigDecimal;
+import jakarta.validation.constraints.Pattern;
 
 public class NearbyPlacesRequest {
     
     @NotNull(message = "Latitude is required")
     @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
     @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
-    private BigDecimal latitude;
+    private Double latitude;
     
     @NotNull(message = "Longitude is required")
     @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
     @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
-    private BigDecimal longitude;
+    private Double longitude;
     
     @NotNull(message = "Radius is required")
     @DecimalMin(value = "0.1", message = "Radius must be at least 0.1")
     @DecimalMax(value = "50000.0", message = "Radius must be at most 50000")
-    private BigDecimal radius;
+    private Double radius;
     
     private String type;
     
+    @Pattern(regexp = "(?i)distance|rating|relevance", message = "Sort must be distance, rating or relevance")
+    private String sort;
+    
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 1000, message = "Limit must be at most 1000")
+    private Integer limit;
+    
     // Constructors
     public NearbyPlacesRequest() {}
     
-    public NearbyPlacesRequest(BigDecimal latitude, BigDecimal longitude, BigDecimal radius) {
+    public NearbyPlacesRequest(Double latitude, Double longitude, Double radius) {
         this.latitude = latitude;
         this.longitude = longitude;
         this.radius = radius;
     }
     
     // Getters and Setters
-    public BigDecimal getLatitude() {
+    public Double getLatitude() {
         return latitude;
     }
     
-    public void setLatitude(BigDecimal latitude) {
+    public void setLatitude(Double latitude) {
         this.latitude = latitude;
     }
     
-    public BigDecimal getLongitude() {
+    public Double getLongitude() {
         return longitude;
     }
     
-    public void setLongitude(BigDecimal longitude) {
+    public void setLongitude(Double longitude) {
         this.longitude = longitude;
     }
     
-    public BigDecimal getRadius() {
+    public Double getRadius() {
         return radius;
     }
     
-    public void setRadius(BigDecimal radius) {
+    public void setRadius(Double radius) {
         this.radius = radius;
     }
 
@@ -65,4 +74,20 @@ public class NearbyPlacesRequest {
     public void setType(String type) {
         this.type = type;
     }
-} 
\ No newline at end of file
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+}
\ No newline at end of file
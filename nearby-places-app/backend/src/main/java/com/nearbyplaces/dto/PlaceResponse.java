@@ -1,22 +1,27 @@
 package com.nearbyplaces.dto;
 
-import java.math.BigDecimal;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public class PlaceResponse {
     
     private String name;
     private String address;
-    private BigDecimal latitude;
-    private BigDecimal longitude;
-    private BigDecimal rating;
+    private double latitude;
+    private double longitude;
+    private Double rating;
     private String placeId;
     private List<String> types;
     
+    // Kilometers from the search center, omitted where there is none
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double distance;
+    
     // Constructors
     public PlaceResponse() {}
     
-    public PlaceResponse(String name, String address, BigDecimal latitude, BigDecimal longitude, BigDecimal rating, String placeId) {
+    public PlaceResponse(String name, String address, double latitude, double longitude, Double rating, String placeId) {
         this.name = name;
         this.address = address;
         this.latitude = latitude;
@@ -25,7 +30,7 @@ public class PlaceResponse {
         this.placeId = placeId;
     }
     
-    public PlaceResponse(String name, String address, BigDecimal latitude, BigDecimal longitude, BigDecimal rating, String placeId, List<String> types) {
+    public PlaceResponse(String name, String address, double latitude, double longitude, Double rating, String placeId, List<String> types) {
         this.name = name;
         this.address = address;
         this.latitude = latitude;
@@ -52,27 +57,27 @@ public class PlaceResponse {
         this.address = address;
     }
     
-    public BigDecimal getLatitude() {
+    public double getLatitude() {
         return latitude;
     }
     
-    public void setLatitude(BigDecimal latitude) {
+    public void setLatitude(double latitude) {
         this.latitude = latitude;
     }
     
-    public BigDecimal getLongitude() {
+    public double getLongitude() {
         return longitude;
     }
     
-    public void setLongitude(BigDecimal longitude) {
+    public void setLongitude(double longitude) {
         this.longitude = longitude;
     }
     
-    public BigDecimal getRating() {
+    public Double getRating() {
         return rating;
     }
     
-    public void setRating(BigDecimal rating) {
+    public void setRating(Double rating) {
         this.rating = rating;
     }
     
@@ -91,4 +96,12 @@ public class PlaceResponse {
     public void setTypes(List<String> types) {
         this.types = types;
     }
-} 
\ No newline at end of file
+    
+    public Double getDistance() {
+        return distance;
+    }
+    
+    public void setDistance(Double distance) {
+        this.distance = distance;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.nearbyplaces.dto;
+
+import java.util.List;
+
+/**
+ * Places of a map viewport. In diff mode places holds only the places that
+ * entered the viewport and left the place ids of those that are no longer in it.
+ */
+public class ViewportResponse {
+    
+    private List<PlaceResponse> places;
+    private List<String> left;
+    private boolean truncated;
+    
+    // Constructors
+    public ViewportResponse() {}
+    
+    public ViewportResponse(List<PlaceResponse> places, List<String> left, boolean truncated) {
+        this.places = places;
+        this.left = left;
+        this.truncated = truncated;
+    }
+    
+    // Getters and Setters
+    public List<PlaceResponse> getPlaces() {
+        return places;
+    }
+    
+    public void setPlaces(List<PlaceResponse> places) {
+        this.places = places;
+    }
+    
+    public List<String> getLeft() {
+        return left;
+    }
+    
+    public void setLeft(List<String> left) {
+        this.left = left;
+    }
+    
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+}
@@ -0,0 +1,31 @@
+package com.nearbyplaces.event;
+
+import com.nearbyplaces.model.Place;
+
+/**
+ * Published after a place has been inserted, updated or deleted through JPA
+ */
+public class PlaceChangedEvent {
+    
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+    
+    private final Type type;
+    private final Place place;
+    
+    public PlaceChangedEvent(Type type, Place place) {
+        this.type = type;
+        this.place = place;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public Place getPlace() {
+        return place;
+    }
+}
@@ -0,0 +1,39 @@
+package com.nearbyplaces.event;
+
+import com.nearbyplaces.model.Place;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener that turns writes to the places table into
+ * {@link PlaceChangedEvent}s for the in-memory read models.
+ *
+ * Events are published when the write is flushed, before its transaction
+ * commits. Read models that must not see rolled back writes listen with
+ * {@code @TransactionalEventListener(phase = AFTER_COMMIT)}.
+ */
+@Component
+public class PlaceEntityListener {
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @PostPersist
+    public void onPersist(Place place) {
+        eventPublisher.publishEvent(new PlaceChangedEvent(PlaceChangedEvent.Type.CREATED, place));
+    }
+    
+    @PostUpdate
+    public void onUpdate(Place place) {
+        eventPublisher.publishEvent(new PlaceChangedEvent(PlaceChangedEvent.Type.UPDATED, place));
+    }
+    
+    @PostRemove
+    public void onRemove(Place place) {
+        eventPublisher.publishEvent(new PlaceChangedEvent(PlaceChangedEvent.Type.DELETED, place));
+    }
+}
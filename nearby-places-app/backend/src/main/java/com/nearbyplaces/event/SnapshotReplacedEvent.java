@@ -0,0 +1,19 @@
+package com.nearbyplaces.event;
+
+import com.nearbyplaces.index.PlaceSnapshot;
+
+/**
+ * Published after the place index service has switched to a new snapshot
+ */
+public class SnapshotReplacedEvent {
+    
+    private final PlaceSnapshot snapshot;
+    
+    public SnapshotReplacedEvent(PlaceSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    public PlaceSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,362 @@
+package com.nearbyplaces.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix trie over place names and types with precomputed
+ * completions.
+ *
+ * Names are indexed under the folded full name and under every word suffix of
+ * it, so "pi" completes "Domino's Pizza". Every node stores the top completions
+ * of its subtree for each coarse geo region the subtree has places in, plus a
+ * global list, ranked by popularity: the number of places carrying the term in
+ * the region (or anywhere), each weighted up by its rating. A lookup is a walk
+ * down the prefix and a binary search for the region; nothing is ranked at
+ * query time.
+ *
+ * The trie is flattened into parallel arrays (first-child / next-sibling
+ * layout) after construction, so it costs a few arrays rather than an object
+ * per node.
+ */
+public final class AutocompleteTrie {
+
+    public static final String KIND_PLACE = "place";
+    public static final String KIND_TYPE = "type";
+
+    private static final long GLOBAL_REGION = -1;
+
+    private final double regionSizeDegrees;
+    private final int regionColumns;
+
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] regionStart;
+    private final long[] regionKeys;
+    private final int[] listStart;
+    private final int[] listTerms;
+    private final String[] termTexts;
+    private final String[] termKinds;
+
+    private AutocompleteTrie(double regionSizeDegrees, char[] labels, int[] firstChild, int[] nextSibling,
+                             int[] regionStart, long[] regionKeys, int[] listStart, int[] listTerms,
+                             String[] termTexts, String[] termKinds) {
+        this.regionSizeDegrees = regionSizeDegrees;
+        this.regionColumns = (int) Math.ceil(360.0 / regionSizeDegrees);
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.regionStart = regionStart;
+        this.regionKeys = regionKeys;
+        this.listStart = listStart;
+        this.listTerms = listTerms;
+        this.termTexts = termTexts;
+        this.termKinds = termKinds;
+    }
+
+    /**
+     * Builds the trie over the names and types of all rows of the table
+     *
+     * @param table Places to index
+     * @param regionSizeDegrees Edge length of a popularity region in degrees
+     * @param completionsPerNode Completions kept per node and region
+     * @return The built trie
+     */
+    public static AutocompleteTrie build(PlaceTable table, double regionSizeDegrees, int completionsPerNode) {
+        if (regionSizeDegrees <= 0 || regionSizeDegrees > 180) {
+            throw new IllegalArgumentException("Region size must be in (0, 180] degrees");
+        }
+        if (completionsPerNode < 1) {
+            throw new IllegalArgumentException("Completions per node must be at least 1");
+        }
+        return new Builder(regionSizeDegrees, completionsPerNode).build(table);
+    }
+
+    /**
+     * Completes a prefix
+     *
+     * @param prefix Text typed so far
+     * @param latitude The latitude coordinate, NaN to rank by global popularity only
+     * @param longitude The longitude coordinate, NaN to rank by global popularity only
+     * @param limit Maximum number of completions
+     * @return Completions of the region first, topped up with global ones
+     */
+    public List<Completion> complete(String prefix, double latitude, double longitude, int limit) {
+        List<Completion> result = new ArrayList<>();
+        String key = String.join(" ", words(prefix == null ? "" : prefix));
+        if (key.isEmpty() || labels.length == 0) {
+            return result;
+        }
+        if (prefix.endsWith(" ")) {
+            key += " ";
+        }
+
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = child(node, key.charAt(i));
+        }
+        if (node < 0) {
+            return result;
+        }
+
+        Set<Integer> terms = new LinkedHashSet<>();
+        if (!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            addList(node, regionKey(regionSizeDegrees, regionColumns, latitude, longitude), terms, limit);
+        }
+        addList(node, GLOBAL_REGION, terms, limit);
+        for (int term : terms) {
+            result.add(new Completion(termTexts[term], termKinds[term]));
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of distinct completion terms
+     */
+    public int size() {
+        return termTexts.length;
+    }
+
+    private int child(int node, char label) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (labels[child] == label) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private void addList(int node, long region, Set<Integer> terms, int limit) {
+        int index = Arrays.binarySearch(regionKeys, regionStart[node], regionStart[node + 1], region);
+        if (index < 0) {
+            return;
+        }
+        for (int i = listStart[index]; i < listStart[index + 1] && terms.size() < limit; i++) {
+            terms.add(listTerms[i]);
+        }
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : TextIndex.words(text)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static long regionKey(double regionSizeDegrees, int regionColumns, double latitude, double longitude) {
+        long row = (long) Math.floor((latitude + 90.0) / regionSizeDegrees);
+        long column = (long) Math.floor((GeoUtils.normalizeLongitude(longitude) + 180.0) / regionSizeDegrees);
+        return row * regionColumns + Math.min(column, regionColumns - 1);
+    }
+
+    /**
+     * A completion offered for a prefix
+     */
+    public static final class Completion {
+
+        private final String text;
+        private final String kind;
+
+        Completion(String text, String kind) {
+            this.text = text;
+            this.kind = kind;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return {@link #KIND_PLACE} for place names, {@link #KIND_TYPE} for place types
+         */
+        public String getKind() {
+            return kind;
+        }
+    }
+
+    private static final class Builder {
+
+        private final double regionSizeDegrees;
+        private final int regionColumns;
+        private final int completionsPerNode;
+        private final Map<String, Integer> termIds = new HashMap<>();
+        private final List<String> texts = new ArrayList<>();
+        private final List<String> kinds = new ArrayList<>();
+        private final List<Map<Long, Double>> weights = new ArrayList<>();
+        private final Node root = new Node('\0');
+
+        Builder(double regionSizeDegrees, int completionsPerNode) {
+            this.regionSizeDegrees = regionSizeDegrees;
+            this.regionColumns = (int) Math.ceil(360.0 / regionSizeDegrees);
+            this.completionsPerNode = completionsPerNode;
+        }
+
+        AutocompleteTrie build(PlaceTable table) {
+            for (int row = 0; row < table.size(); row++) {
+                long region = regionKey(regionSizeDegrees, regionColumns, table.latitude(row), table.longitude(row));
+                double rating = table.rating(row);
+                double weight = 1 + (Double.isNaN(rating) ? 0 : rating / 5);
+
+                String name = table.name(row);
+                if (name != null) {
+                    List<String> words = words(name);
+                    int term = addTerm(KIND_PLACE, name.strip(), String.join(" ", words), region, weight);
+                    for (int start = 0; start < words.size(); start++) {
+                        insert(String.join(" ", words.subList(start, words.size())), term);
+                    }
+                }
+                for (String type : table.types(row)) {
+                    String folded = String.join(" ", words(type.replace('_', ' ')));
+                    insert(folded, addTerm(KIND_TYPE, TypeIndex.normalize(type), folded, region, weight));
+                }
+            }
+            rank(root);
+            return flatten();
+        }
+
+        private int addTerm(String kind, String text, String key, long region, double weight) {
+            Integer term = termIds.get(kind + ':' + key);
+            if (term == null) {
+                term = texts.size();
+                termIds.put(kind + ':' + key, term);
+                texts.add(text);
+                kinds.add(kind);
+                weights.add(new HashMap<>());
+            }
+            weights.get(term).merge(region, weight, Double::sum);
+            weights.get(term).merge(GLOBAL_REGION, weight, Double::sum);
+            return term;
+        }
+
+        private void insert(String key, int term) {
+            if (key.isEmpty()) {
+                return;
+            }
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                char label = key.charAt(i);
+                node = node.children.computeIfAbsent(label, Node::new);
+            }
+            node.terms.add(term);
+        }
+
+        /**
+         * Computes the top completions per region of every node bottom-up
+         */
+        private void rank(Node node) {
+            Map<Long, Set<Integer>> candidates = new HashMap<>();
+            for (Node child : node.children.values()) {
+                rank(child);
+                for (Map.Entry<Long, int[]> entry : child.top.entrySet()) {
+                    Set<Integer> regionTerms = candidates.computeIfAbsent(entry.getKey(), r -> new LinkedHashSet<>());
+                    for (int term : entry.getValue()) {
+                        regionTerms.add(term);
+                    }
+                }
+            }
+            for (int term : node.terms) {
+                for (long region : weights.get(term).keySet()) {
+                    candidates.computeIfAbsent(region, r -> new LinkedHashSet<>()).add(term);
+                }
+            }
+
+            node.top = new TreeMap<>();
+            for (Map.Entry<Long, Set<Integer>> entry : candidates.entrySet()) {
+                long region = entry.getKey();
+                node.top.put(region, entry.getValue().stream()
+                    .sorted(Comparator.<Integer>comparingDouble(term -> -weights.get(term).get(region))
+                        .thenComparing(texts::get))
+                    .limit(completionsPerNode)
+                    .mapToInt(Integer::intValue)
+                    .toArray());
+            }
+        }
+
+        private AutocompleteTrie flatten() {
+            List<Node> nodes = new ArrayList<>();
+            number(root, nodes);
+
+            int nodeCount = nodes.size();
+            char[] labels = new char[nodeCount];
+            int[] firstChild = new int[nodeCount];
+            int[] nextSibling = new int[nodeCount];
+            int[] regionStart = new int[nodeCount + 1];
+            int regionCount = 0;
+            int listSize = 0;
+            for (Node node : nodes) {
+                regionCount += node.top.size();
+                for (int[] list : node.top.values()) {
+                    listSize += list.length;
+                }
+            }
+            long[] regionKeys = new long[regionCount];
+            int[] listStart = new int[regionCount + 1];
+            int[] listTerms = new int[listSize];
+            Arrays.fill(nextSibling, -1);
+
+            int region = 0;
+            int list = 0;
+            for (int id = 0; id < nodeCount; id++) {
+                Node node = nodes.get(id);
+                labels[id] = node.label;
+                firstChild[id] = -1;
+                int previous = -1;
+                for (Node child : node.children.values()) {
+                    if (previous < 0) {
+                        firstChild[id] = child.id;
+                    } else {
+                        nextSibling[previous] = child.id;
+                    }
+                    previous = child.id;
+                }
+
+                regionStart[id] = region;
+                for (Map.Entry<Long, int[]> entry : node.top.entrySet()) {
+                    regionKeys[region] = entry.getKey();
+                    listStart[region++] = list;
+                    for (int term : entry.getValue()) {
+                        listTerms[list++] = term;
+                    }
+                }
+            }
+            regionStart[nodeCount] = region;
+            listStart[regionCount] = list;
+
+            return new AutocompleteTrie(regionSizeDegrees, labels, firstChild, nextSibling, regionStart,
+                regionKeys, listStart, listTerms, texts.toArray(new String[0]), kinds.toArray(new String[0]));
+        }
+
+        private static void number(Node node, Collection<Node> nodes) {
+            node.id = nodes.size();
+            nodes.add(node);
+            for (Node child : node.children.values()) {
+                number(child, nodes);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        final char label;
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        final Set<Integer> terms = new LinkedHashSet<>();
+        TreeMap<Long, int[]> top;
+        int id;
+
+        Node(char label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.nearbyplaces.index;
+
+/**
+ * Latitude/longitude rectangle in degrees. When the box crosses the
+ * antimeridian minLng is greater than maxLng.
+ */
+public final class BoundingBox {
+    
+    private final double minLat;
+    private final double maxLat;
+    private final double minLng;
+    private final double maxLng;
+    
+    public BoundingBox(double minLat, double maxLat, double minLng, double maxLng) {
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLng = minLng;
+        this.maxLng = maxLng;
+    }
+    
+    public double getMinLat() {
+        return minLat;
+    }
+    
+    public double getMaxLat() {
+        return maxLat;
+    }
+    
+    public double getMinLng() {
+        return minLng;
+    }
+    
+    public double getMaxLng() {
+        return maxLng;
+    }
+    
+    public boolean crossesAntimeridian() {
+        return minLng > maxLng;
+    }
+    
+    public boolean contains(double lat, double lng) {
+        if (lat < minLat || lat > maxLat) {
+            return false;
+        }
+        if (crossesAntimeridian()) {
+            return lng >= minLng || lng <= maxLng;
+        }
+        return lng >= minLng && lng <= maxLng;
+    }
+}
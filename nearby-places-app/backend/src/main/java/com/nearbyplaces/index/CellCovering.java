@@ -0,0 +1,254 @@
+package com.nearbyplaces.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A small set of mixed-level {@link CellId} cells covering a search region.
+ *
+ * Covering starts at the coarsest level on which the region's bounding box
+ * spans at most four cells and refines the cells crossing the region's border
+ * level by level while the cell budget allows. Cells found to lie entirely
+ * inside the region are kept as they are and marked interior, so their places
+ * need no distance check. A tiny radius thereby ends up with a few deep cells
+ * and a continent-sized one with a few coarse cells, and the number of places
+ * checked stays proportional to the number of places found.
+ *
+ * Cells are returned as leaf id ranges in ascending order, with adjacent
+ * ranges of the same kind merged.
+ */
+final class CellCovering {
+
+    private final long[] rangeMins;
+    private final long[] rangeMaxs;
+    private final boolean[] interior;
+
+    private CellCovering(long[] rangeMins, long[] rangeMaxs, boolean[] interior) {
+        this.rangeMins = rangeMins;
+        this.rangeMaxs = rangeMaxs;
+        this.interior = interior;
+    }
+
+    /**
+     * Covers the points within radiusKm of the given center
+     */
+    static CellCovering ofCircle(double latitude, double longitude, double radiusKm, int maxCells) {
+        return cover(new Circle(latitude, longitude, radiusKm), GeoUtils.boundingBox(latitude, longitude, radiusKm),
+            maxCells);
+    }
+
+    /**
+     * Covers the box, crossing the antimeridian when minLng > maxLng
+     */
+    static CellCovering ofBox(BoundingBox box, int maxCells) {
+        return cover(new Box(box), box, maxCells);
+    }
+
+    int size() {
+        return rangeMins.length;
+    }
+
+    long rangeMin(int index) {
+        return rangeMins[index];
+    }
+
+    long rangeMax(int index) {
+        return rangeMaxs[index];
+    }
+
+    /**
+     * @return Whether the range lies entirely inside the region
+     */
+    boolean isInterior(int index) {
+        return interior[index];
+    }
+
+    private static CellCovering cover(Region region, BoundingBox bounds, int maxCells) {
+        if (maxCells < 4) {
+            throw new IllegalArgumentException("A covering needs at least 4 cells");
+        }
+        List<Cell> result = new ArrayList<>();
+        ArrayDeque<Cell> frontier = new ArrayDeque<>();
+
+        int level = startLevel(bounds);
+        int minY = CellId.y(level, bounds.getMinLat());
+        int maxY = CellId.y(level, bounds.getMaxLat());
+        int minX = CellId.x(level, bounds.getMinLng());
+        int maxX = CellId.x(level, bounds.getMaxLng());
+        for (int y = minY; y <= maxY; y++) {
+            if (bounds.crossesAntimeridian()) {
+                for (int x = minX; x < 1 << level; x++) {
+                    classify(region, new Cell(level, x, y), result, frontier);
+                }
+                for (int x = 0; x <= maxX && x < minX; x++) {
+                    classify(region, new Cell(level, x, y), result, frontier);
+                }
+            } else {
+                for (int x = minX; x <= maxX; x++) {
+                    classify(region, new Cell(level, x, y), result, frontier);
+                }
+            }
+        }
+
+        // Frontier cells are dequeued coarse to fine, so the budget is spent evenly along the border
+        while (!frontier.isEmpty()) {
+            Cell cell = frontier.poll();
+            if (cell.level == CellId.MAX_LEVEL || result.size() + frontier.size() + 4 > maxCells) {
+                result.add(cell);
+                continue;
+            }
+            for (int dy = 0; dy < 2; dy++) {
+                for (int dx = 0; dx < 2; dx++) {
+                    classify(region, new Cell(cell.level + 1, 2 * cell.x + dx, 2 * cell.y + dy), result, frontier);
+                }
+            }
+        }
+        return merge(result);
+    }
+
+    /**
+     * Coarsest level on which the bounding box spans at most two cells per axis
+     */
+    private static int startLevel(BoundingBox bounds) {
+        double lngSpan = bounds.getMaxLng() - bounds.getMinLng() + (bounds.crossesAntimeridian() ? 360.0 : 0.0);
+        double maxSpan = Math.max(lngSpan / 360.0, (bounds.getMaxLat() - bounds.getMinLat()) / 180.0);
+        if (maxSpan <= 0) {
+            return CellId.MAX_LEVEL;
+        }
+        int level = (int) Math.floor(-Math.log(maxSpan) / Math.log(2));
+        return Math.max(0, Math.min(CellId.MAX_LEVEL, level));
+    }
+
+    private static void classify(Region region, Cell cell, List<Cell> result, ArrayDeque<Cell> frontier) {
+        double minLat = CellId.minLat(cell.level, cell.y);
+        double maxLat = CellId.minLat(cell.level, cell.y + 1);
+        double minLng = CellId.minLng(cell.level, cell.x);
+        double maxLng = CellId.minLng(cell.level, cell.x + 1);
+        if (!region.intersects(minLat, maxLat, minLng, maxLng)) {
+            return;
+        }
+        if (region.contains(minLat, maxLat, minLng, maxLng)) {
+            cell.interior = true;
+            result.add(cell);
+        } else {
+            frontier.add(cell);
+        }
+    }
+
+    private static CellCovering merge(List<Cell> cells) {
+        cells.sort(Comparator.comparingLong(cell -> cell.id));
+        long[] rangeMins = new long[cells.size()];
+        long[] rangeMaxs = new long[cells.size()];
+        boolean[] interior = new boolean[cells.size()];
+        int count = 0;
+        for (Cell cell : cells) {
+            long min = CellId.rangeMin(cell.id);
+            long max = CellId.rangeMax(cell.id);
+            // Leaf ids are odd, so adjacent ranges are two apart
+            if (count > 0 && interior[count - 1] == cell.interior && rangeMaxs[count - 1] + 2 == min) {
+                rangeMaxs[count - 1] = max;
+                continue;
+            }
+            rangeMins[count] = min;
+            rangeMaxs[count] = max;
+            interior[count] = cell.interior;
+            count++;
+        }
+        return new CellCovering(Arrays.copyOf(rangeMins, count), Arrays.copyOf(rangeMaxs, count),
+            Arrays.copyOf(interior, count));
+    }
+
+    private static final class Cell {
+
+        final int level;
+        final int x;
+        final int y;
+        final long id;
+        boolean interior;
+
+        Cell(int level, int x, int y) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.id = CellId.fromCell(level, x, y);
+        }
+    }
+
+    /**
+     * Region tested against closed cell boxes (minLng <= maxLng)
+     */
+    private interface Region {
+
+        boolean intersects(double minLat, double maxLat, double minLng, double maxLng);
+
+        boolean contains(double minLat, double maxLat, double minLng, double maxLng);
+    }
+
+    private static final class Circle implements Region {
+
+        private final double latitude;
+        private final double longitude;
+        private final double radiusKm;
+
+        Circle(double latitude, double longitude, double radiusKm) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radiusKm = radiusKm;
+        }
+
+        @Override
+        public boolean intersects(double minLat, double maxLat, double minLng, double maxLng) {
+            return GeoUtils.minDistanceToBoxKm(latitude, longitude, minLat, maxLat, minLng, maxLng) <= radiusKm;
+        }
+
+        /**
+         * Any point of the cell is reachable from the cell center by walking
+         * along its meridian and then along its parallel, which bounds its
+         * distance from the center by half the cell height plus half the cell
+         * width at the latitude closest to the equator
+         */
+        @Override
+        public boolean contains(double minLat, double maxLat, double minLng, double maxLng) {
+            double centerLat = (minLat + maxLat) / 2;
+            double centerLng = (minLng + maxLng) / 2;
+            double widestLat = minLat <= 0 && maxLat >= 0 ? 0 : Math.min(Math.abs(minLat), Math.abs(maxLat));
+            double cellRadiusKm = GeoUtils.EARTH_RADIUS_KM * (Math.toRadians(maxLat - minLat) / 2
+                + Math.cos(Math.toRadians(widestLat)) * Math.toRadians(maxLng - minLng) / 2);
+            return GeoUtils.distanceKm(latitude, longitude, centerLat, centerLng) + cellRadiusKm <= radiusKm;
+        }
+    }
+
+    private static final class Box implements Region {
+
+        private final BoundingBox box;
+
+        Box(BoundingBox box) {
+            this.box = box;
+        }
+
+        @Override
+        public boolean intersects(double minLat, double maxLat, double minLng, double maxLng) {
+            if (minLat > box.getMaxLat() || maxLat < box.getMinLat()) {
+                return false;
+            }
+            if (box.crossesAntimeridian()) {
+                return maxLng >= box.getMinLng() || minLng <= box.getMaxLng();
+            }
+            return maxLng >= box.getMinLng() && minLng <= box.getMaxLng();
+        }
+
+        @Override
+        public boolean contains(double minLat, double maxLat, double minLng, double maxLng) {
+            if (minLat < box.getMinLat() || maxLat > box.getMaxLat()) {
+                return false;
+            }
+            if (box.crossesAntimeridian()) {
+                return minLng >= box.getMinLng() || maxLng <= box.getMaxLng();
+            }
+            return minLng >= box.getMinLng() && maxLng <= box.getMaxLng();
+        }
+    }
+}
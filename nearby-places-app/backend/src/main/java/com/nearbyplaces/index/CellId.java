@@ -0,0 +1,154 @@
+package com.nearbyplaces.index;
+
+/**
+ * 64-bit ids of a hierarchical latitude/longitude cell grid.
+ *
+ * Level 0 is the whole globe; every level splits each cell of the level above
+ * into four, down to {@link #MAX_LEVEL}, where a cell is a few centimetres
+ * wide. Cells of a level are numbered along a Hilbert curve, so a cell and all
+ * its descendants form one contiguous id range and neighbouring cells mostly
+ * get neighbouring ids.
+ *
+ * An id is the cell's curve position followed by a 1 bit and two 0 bits per
+ * level below it, as in S2. The level can therefore be read from the trailing
+ * zeros, and a cell contains exactly the leaf ids in [{@link #rangeMin},
+ * {@link #rangeMax}].
+ */
+public final class CellId {
+
+    public static final int MAX_LEVEL = 30;
+
+    private static final int CELLS = 1 << MAX_LEVEL;
+
+    private CellId() {}
+
+    /**
+     * @return Id of the leaf cell containing the point
+     */
+    public static long fromLatLng(double latitude, double longitude) {
+        return fromCell(MAX_LEVEL, x(MAX_LEVEL, longitude), y(MAX_LEVEL, latitude));
+    }
+
+    /**
+     * @param level Cell level
+     * @param x Column of the cell on its level, west to east
+     * @param y Row of the cell on its level, south to north
+     * @return Id of the cell
+     */
+    public static long fromCell(int level, int x, int y) {
+        int shift = MAX_LEVEL - level;
+        long position = hilbert(x << shift, y << shift) >>> (2 * shift);
+        return ((position << 1) | 1) << (2 * shift);
+    }
+
+    public static int level(long id) {
+        return MAX_LEVEL - Long.numberOfTrailingZeros(id) / 2;
+    }
+
+    /**
+     * @return Smallest leaf id inside the cell
+     */
+    public static long rangeMin(long id) {
+        return id - (Long.lowestOneBit(id) - 1);
+    }
+
+    /**
+     * @return Largest leaf id inside the cell
+     */
+    public static long rangeMax(long id) {
+        return id + (Long.lowestOneBit(id) - 1);
+    }
+
+    /**
+     * @return Id of the ancestor of the cell on the given level
+     */
+    public static long parent(long id, int level) {
+        long lowestBit = 1L << (2 * (MAX_LEVEL - level));
+        return (id & -lowestBit) | lowestBit;
+    }
+
+    /**
+     * @return Hex form of the id without its trailing zero digits, as S2 tokens
+     */
+    public static String toToken(long id) {
+        if (id == 0) {
+            return "X";
+        }
+        String hex = String.format("%016x", id);
+        int end = hex.length();
+        while (hex.charAt(end - 1) == '0') {
+            end--;
+        }
+        return hex.substring(0, end);
+    }
+
+    /**
+     * @return The id of a token produced by {@link #toToken}
+     * @throws IllegalArgumentException if the token is not a valid cell id
+     */
+    public static long fromToken(String token) {
+        if (token.isEmpty() || token.length() > 16) {
+            throw new IllegalArgumentException("Invalid cell token: " + token);
+        }
+        long id;
+        try {
+            id = Long.parseUnsignedLong(token, 16) << (4 * (16 - token.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cell token: " + token);
+        }
+        // A valid id has its lowest set bit at an even position up to 2 * MAX_LEVEL
+        int trailingZeros = Long.numberOfTrailingZeros(id);
+        if (id == 0 || trailingZeros % 2 != 0 || trailingZeros > 2 * MAX_LEVEL) {
+            throw new IllegalArgumentException("Invalid cell token: " + token);
+        }
+        return id;
+    }
+
+    /**
+     * @return Column of the cell containing the longitude on the given level
+     */
+    static int x(int level, double longitude) {
+        int cells = 1 << level;
+        int x = (int) Math.floor((longitude + 180.0) / 360.0 * cells);
+        return Math.max(0, Math.min(cells - 1, x));
+    }
+
+    /**
+     * @return Row of the cell containing the latitude on the given level
+     */
+    static int y(int level, double latitude) {
+        int cells = 1 << level;
+        int y = (int) Math.floor((latitude + 90.0) / 180.0 * cells);
+        return Math.max(0, Math.min(cells - 1, y));
+    }
+
+    static double minLng(int level, int x) {
+        return -180.0 + 360.0 * x / (1 << level);
+    }
+
+    static double minLat(int level, int y) {
+        return -90.0 + 180.0 * y / (1 << level);
+    }
+
+    /**
+     * Position of a leaf cell on the Hilbert curve through all leaf cells
+     */
+    private static long hilbert(int x, int y) {
+        long position = 0;
+        for (int s = CELLS >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            position += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = CELLS - 1 - x;
+                    y = CELLS - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,87 @@
+package com.nearbyplaces.index;
+
+/**
+ * A contiguous range of the {@link CellId} Hilbert curve, from the first leaf
+ * of one cell to the last leaf of another. As the curve keeps neighbouring
+ * cells mostly together, a range is a compact region, which makes ranges
+ * suitable for sharding places across instances.
+ *
+ * Ranges are written as two cell tokens (see {@link CellId#toToken}), e.g.
+ * "04-0c" for the first two of the four level 1 cells; a single token stands
+ * for just that cell.
+ */
+public final class CellRange {
+
+    /**
+     * The range of all cells
+     */
+    public static final CellRange WORLD = new CellRange(CellId.rangeMin(1L << 60), CellId.rangeMax(1L << 60), "");
+
+    private final long min;
+    private final long max;
+    private final String text;
+
+    private CellRange(long min, long max, String text) {
+        this.min = min;
+        this.max = max;
+        this.text = text;
+    }
+
+    /**
+     * @param value Range as "fromToken-toToken" or a single token, blank for {@link #WORLD}
+     * @throws IllegalArgumentException if a token is invalid or the range is empty
+     */
+    public static CellRange parse(String value) {
+        if (value == null || value.isBlank()) {
+            return WORLD;
+        }
+        String[] tokens = value.trim().split("-", -1);
+        if (tokens.length > 2) {
+            throw new IllegalArgumentException("Cell range must be fromToken-toToken: " + value);
+        }
+        long from = CellId.fromToken(tokens[0].trim());
+        long to = CellId.fromToken(tokens[tokens.length - 1].trim());
+        if (CellId.rangeMin(from) > CellId.rangeMax(to)) {
+            throw new IllegalArgumentException("Cell range ends before it starts: " + value);
+        }
+        return new CellRange(CellId.rangeMin(from), CellId.rangeMax(to),
+            CellId.toToken(from) + "-" + CellId.toToken(to));
+    }
+
+    public boolean isWorld() {
+        return min == WORLD.min && max == WORLD.max;
+    }
+
+    /**
+     * @return Whether the leaf cell of the point lies in the range
+     */
+    public boolean contains(double latitude, double longitude) {
+        long leaf = CellId.fromLatLng(latitude, longitude);
+        return leaf >= min && leaf <= max;
+    }
+
+    /**
+     * Checks the range against the covering of the search circle. Coverings
+     * contain the whole circle, so a false result is exact while a true one
+     * may be a near miss.
+     *
+     * @return Whether places within radiusKm of the center may lie in the range
+     */
+    public boolean intersectsCircle(double latitude, double longitude, double radiusKm) {
+        if (isWorld()) {
+            return true;
+        }
+        CellCovering covering = CellCovering.ofCircle(latitude, longitude, radiusKm, GeoGridIndex.MAX_COVERING_CELLS);
+        for (int i = 0; i < covering.size(); i++) {
+            if (covering.rangeMin(i) <= max && covering.rangeMax(i) >= min) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
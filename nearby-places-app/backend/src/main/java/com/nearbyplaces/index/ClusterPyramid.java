@@ -0,0 +1,305 @@
+package com.nearbyplaces.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hierarchical grid of place clusters for every map zoom level.
+ *
+ * Each zoom level z splits the Web Mercator plane into 2^z tiles per axis and
+ * every tile into cellsPerTile x cellsPerTile cells; a cell of level z is the
+ * union of four cells of level z + 1. Every non-empty cell holds one cluster
+ * with its place count, coordinate sums for the centroid and its top-rated
+ * place. Clusters of a level are kept in a sorted map keyed column-major, so a
+ * viewport query seeks from cluster to cluster and never visits empty cells.
+ *
+ * Adding or removing a place touches exactly one cluster per level. Only when
+ * the removed place was a cluster's top-rated place is that cluster's top
+ * recomputed, from its four children, or from its members on the finest level.
+ *
+ * Not thread-safe; callers guard access.
+ */
+public class ClusterPyramid {
+
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+
+    private final int maxZoom;
+    private final int cellsPerTileShift;
+    private final List<TreeMap<Long, Cluster>> levels;
+    private final Map<Long, Member> members = new HashMap<>();
+
+    /**
+     * @param maxZoom Finest zoom level with its own clusters
+     * @param cellsPerTile Cells per tile edge, a power of two
+     */
+    public ClusterPyramid(int maxZoom, int cellsPerTile) {
+        if (maxZoom < 0 || maxZoom > 22) {
+            throw new IllegalArgumentException("Max zoom must be in [0, 22]");
+        }
+        if (cellsPerTile < 1 || Integer.bitCount(cellsPerTile) != 1 || cellsPerTile > 256) {
+            throw new IllegalArgumentException("Cells per tile must be a power of two up to 256");
+        }
+        this.maxZoom = maxZoom;
+        this.cellsPerTileShift = Integer.numberOfTrailingZeros(cellsPerTile);
+        this.levels = new ArrayList<>(maxZoom + 1);
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            levels.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Builds a pyramid over the places of another pyramid that match the filter
+     */
+    public ClusterPyramid filtered(TypeFilter filter) {
+        ClusterPyramid result = new ClusterPyramid(maxZoom, 1 << cellsPerTileShift);
+        for (Member member : members.values()) {
+            if (filter.matches(member.types)) {
+                result.add(member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a place, replacing the place with the same id if present
+     *
+     * @param id Stable id of the place
+     * @param rating Rating of the place, NaN if it has none
+     */
+    public void add(long id, double latitude, double longitude, double rating, String placeId,
+                    Collection<String> types) {
+        List<String> normalized = new ArrayList<>(types == null ? 0 : types.size());
+        if (types != null) {
+            for (String type : types) {
+                normalized.add(TypeIndex.normalize(type));
+            }
+        }
+        add(new Member(id, latitude, longitude, rating, placeId, normalized));
+    }
+
+    /**
+     * Removes the place with the given id if present
+     */
+    public void remove(long id) {
+        Member member = members.remove(id);
+        if (member == null) {
+            return;
+        }
+        for (int zoom = maxZoom; zoom >= 0; zoom--) {
+            TreeMap<Long, Cluster> level = levels.get(zoom);
+            long key = cellKey(zoom, member);
+            Cluster cluster = level.get(key);
+            cluster.count--;
+            cluster.sumLat -= member.latitude;
+            cluster.sumLng -= member.longitude;
+            if (cluster.count == 0) {
+                level.remove(key);
+                continue;
+            }
+            if (zoom == maxZoom) {
+                cluster.members.remove(member);
+            }
+            if (cluster.top == member) {
+                cluster.top = zoom == maxZoom ? topOf(cluster.members) : topOfChildren(zoom, key);
+            }
+        }
+    }
+
+    /**
+     * Finds the clusters of the cells intersecting the box
+     *
+     * @param box The viewport, crossing the antimeridian when minLng > maxLng
+     * @param zoom Map zoom level, levels above the finest level use the finest level
+     * @return Clusters in the viewport
+     */
+    public List<Cluster> clusters(BoundingBox box, int zoom) {
+        int level = Math.max(0, Math.min(maxZoom, zoom));
+        int minY = y(level, box.getMaxLat());
+        int maxY = y(level, box.getMinLat());
+        int minX = x(level, box.getMinLng());
+        int maxX = x(level, box.getMaxLng());
+
+        List<Cluster> result = new ArrayList<>();
+        if (box.crossesAntimeridian()) {
+            collect(levels.get(level), minX, cells(level) - 1, minY, maxY, result);
+            collect(levels.get(level), 0, maxX, minY, maxY, result);
+        } else {
+            collect(levels.get(level), minX, maxX, minY, maxY, result);
+        }
+        return result;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    private void add(Member member) {
+        remove(member.id);
+        members.put(member.id, member);
+        for (int zoom = maxZoom; zoom >= 0; zoom--) {
+            Cluster cluster = levels.get(zoom).computeIfAbsent(cellKey(zoom, member), key -> new Cluster());
+            cluster.count++;
+            cluster.sumLat += member.latitude;
+            cluster.sumLng += member.longitude;
+            if (zoom == maxZoom) {
+                if (cluster.members == null) {
+                    cluster.members = new ArrayList<>();
+                }
+                cluster.members.add(member);
+            }
+            if (isBetter(member, cluster.top)) {
+                cluster.top = member;
+            }
+        }
+    }
+
+    /**
+     * Walks the clusters of columns [minX, maxX] between rows minY and maxY,
+     * seeking past the rows outside the range instead of stepping through them
+     */
+    private static void collect(TreeMap<Long, Cluster> level, int minX, int maxX, int minY, int maxY,
+                                List<Cluster> result) {
+        long cursor = key(minX, minY);
+        long end = key(maxX, maxY);
+        while (cursor <= end) {
+            Map.Entry<Long, Cluster> entry = level.ceilingEntry(cursor);
+            if (entry == null || entry.getKey() > end) {
+                return;
+            }
+            long key = entry.getKey();
+            int x = (int) (key >>> 32);
+            int y = (int) key;
+            if (y < minY) {
+                cursor = key(x, minY);
+            } else if (y > maxY) {
+                cursor = key(x + 1, minY);
+            } else {
+                result.add(entry.getValue());
+                cursor = key + 1;
+            }
+        }
+    }
+
+    private Member topOfChildren(int zoom, long key) {
+        int x = (int) (key >>> 32) << 1;
+        int y = (int) key << 1;
+        TreeMap<Long, Cluster> children = levels.get(zoom + 1);
+        Member top = null;
+        for (int dx = 0; dx < 2; dx++) {
+            for (int dy = 0; dy < 2; dy++) {
+                Cluster child = children.get(key(x + dx, y + dy));
+                if (child != null && isBetter(child.top, top)) {
+                    top = child.top;
+                }
+            }
+        }
+        return top;
+    }
+
+    private static Member topOf(List<Member> members) {
+        Member top = null;
+        for (Member member : members) {
+            if (isBetter(member, top)) {
+                top = member;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Higher ratings win and any rating beats no rating
+     */
+    private static boolean isBetter(Member candidate, Member current) {
+        if (current == null) {
+            return true;
+        }
+        if (Double.isNaN(candidate.rating)) {
+            return false;
+        }
+        return Double.isNaN(current.rating) || candidate.rating > current.rating;
+    }
+
+    private long cellKey(int zoom, Member member) {
+        return key(x(zoom, member.longitude), y(zoom, member.latitude));
+    }
+
+    private int cells(int zoom) {
+        return 1 << (zoom + cellsPerTileShift);
+    }
+
+    private int x(int zoom, double longitude) {
+        int cells = cells(zoom);
+        int x = (int) Math.floor((longitude + 180.0) / 360.0 * cells);
+        return Math.max(0, Math.min(cells - 1, x));
+    }
+
+    private int y(int zoom, double latitude) {
+        int cells = cells(zoom);
+        double lat = Math.toRadians(Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, latitude)));
+        double mercator = (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2;
+        int y = (int) Math.floor(mercator * cells);
+        return Math.max(0, Math.min(cells - 1, y));
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Places of one grid cell on one zoom level
+     */
+    public static final class Cluster {
+
+        private int count;
+        private double sumLat;
+        private double sumLng;
+        private Member top;
+        private List<Member> members;
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getLatitude() {
+            return sumLat / count;
+        }
+
+        public double getLongitude() {
+            return sumLng / count;
+        }
+
+        /**
+         * @return Place id of the highest rated place in the cluster
+         */
+        public String getTopPlaceId() {
+            return top.placeId;
+        }
+    }
+
+    private static final class Member {
+
+        final long id;
+        final double latitude;
+        final double longitude;
+        final double rating;
+        final String placeId;
+        final List<String> types;
+
+        Member(long id, double latitude, double longitude, double rating, String placeId, List<String> types) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.rating = rating;
+            this.placeId = placeId;
+            this.types = types;
+        }
+    }
+}
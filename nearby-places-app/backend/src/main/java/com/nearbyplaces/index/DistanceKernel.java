@@ -0,0 +1,60 @@
+package com.nearbyplaces.index;
+
+/**
+ * Scans a range of a {@link PlaceColumns} store for points inside a circle.
+ *
+ * The circle test compares the cosine of the central angle, computed from the
+ * precomputed sines and cosines, against the cosine of the angular radius:
+ * cos(c) = sinLat1 sinLat2 + cosLat1 cosLat2 (cosLng1 cosLng2 + sinLng1 sinLng2).
+ * Implementations must not allocate.
+ */
+public interface DistanceKernel {
+
+    /**
+     * Writes the row ids of all positions in [from, to) inside the query circle
+     *
+     * @param columns Column store to scan
+     * @param from First position, inclusive
+     * @param to Last position, exclusive
+     * @param query Precomputed query point and radius
+     * @param out Output buffer, must have room for to - from more entries after count
+     * @param count Number of entries already in out
+     * @return The new number of entries in out
+     */
+    int collectWithin(PlaceColumns columns, int from, int to, Query query, int[] out, int count);
+
+    /**
+     * Query point and radius in the form the kernels consume
+     */
+    final class Query {
+
+        final double sinLat;
+        final double cosLat;
+        final double sinLng;
+        final double cosLng;
+        final double minCos;
+
+        public Query(double latitude, double longitude, double radiusKm) {
+            double lat = Math.toRadians(latitude);
+            double lng = Math.toRadians(longitude);
+            double angle = radiusKm / GeoUtils.EARTH_RADIUS_KM;
+            this.sinLat = Math.sin(lat);
+            this.cosLat = Math.cos(lat);
+            this.sinLng = Math.sin(lng);
+            this.cosLng = Math.cos(lng);
+            this.minCos = angle >= Math.PI ? -1.0 : Math.cos(angle);
+        }
+
+        /**
+         * Checks a single position, used when candidates are not contiguous
+         */
+        boolean contains(PlaceColumns columns, int position) {
+            int offset = position * Double.BYTES;
+            double cosDeltaLng = columns.cosLng.getDouble(offset) * cosLng
+                + columns.sinLng.getDouble(offset) * sinLng;
+            double cosAngle = columns.sinLat.getDouble(offset) * sinLat
+                + columns.cosLat.getDouble(offset) * cosLat * cosDeltaLng;
+            return cosAngle >= minCos;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.nearbyplaces.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the fastest {@link DistanceKernel} the running JVM supports
+ */
+public final class DistanceKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistanceKernels.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "com.nearbyplaces.index.VectorDistanceKernel";
+
+    private DistanceKernels() {}
+
+    /**
+     * @param preferVector Whether to use the Vector API when the JVM provides it
+     * @return The vector kernel when available and preferred, the scalar kernel otherwise
+     */
+    public static DistanceKernel select(boolean preferVector) {
+        if (preferVector && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                DistanceKernel kernel = (DistanceKernel) Class.forName(VECTOR_KERNEL)
+                    .getDeclaredConstructor().newInstance();
+                logger.info("Using vectorised distance kernel");
+                return kernel;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warn("Vector API unavailable, falling back to scalar kernel: {}", e.getMessage());
+            }
+        } else if (preferVector) {
+            logger.info("Module {} not enabled, using scalar distance kernel", VECTOR_MODULE);
+        }
+        return new ScalarDistanceKernel();
+    }
+}
@@ -0,0 +1,109 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Heap {@link PlaceTable} over loaded {@link Place} entities
+ */
+public final class EntityPlaceTable implements PlaceTable {
+
+    private final Place[] places;
+    // Decoded once, as BigDecimal.doubleValue() dominates large scans
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public EntityPlaceTable(List<Place> source) {
+        List<Place> located = new ArrayList<>(source.size());
+        for (Place place : source) {
+            if (place.getLatitude() != null && place.getLongitude() != null) {
+                located.add(place);
+            }
+        }
+        this.places = located.toArray(new Place[0]);
+        this.latitudes = new double[places.length];
+        this.longitudes = new double[places.length];
+        for (int i = 0; i < places.length; i++) {
+            latitudes[i] = places[i].getLatitude().doubleValue();
+            longitudes[i] = places[i].getLongitude().doubleValue();
+        }
+    }
+
+    private EntityPlaceTable(Place[] places, double[] latitudes, double[] longitudes) {
+        this.places = places;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    /**
+     * @param order Row ids of this table in the desired order
+     * @return A table whose row i is row order[i] of this table
+     */
+    EntityPlaceTable reorder(int[] order) {
+        Place[] reordered = new Place[order.length];
+        double[] reorderedLatitudes = new double[order.length];
+        double[] reorderedLongitudes = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            reordered[i] = places[order[i]];
+            reorderedLatitudes[i] = latitudes[order[i]];
+            reorderedLongitudes[i] = longitudes[order[i]];
+        }
+        return new EntityPlaceTable(reordered, reorderedLatitudes, reorderedLongitudes);
+    }
+
+    /**
+     * @return The entity behind the row
+     */
+    Place place(int row) {
+        return places[row];
+    }
+
+    @Override
+    public int size() {
+        return places.length;
+    }
+
+    @Override
+    public long id(int row) {
+        return places[row].getId() == null ? -1 : places[row].getId();
+    }
+
+    @Override
+    public double latitude(int row) {
+        return latitudes[row];
+    }
+
+    @Override
+    public double longitude(int row) {
+        return longitudes[row];
+    }
+
+    @Override
+    public double rating(int row) {
+        return places[row].getRating() == null ? Double.NaN : places[row].getRating().doubleValue();
+    }
+
+    @Override
+    public String name(int row) {
+        return places[row].getName();
+    }
+
+    @Override
+    public String address(int row) {
+        return places[row].getAddress();
+    }
+
+    @Override
+    public String placeId(int row) {
+        return places[row].getPlaceId();
+    }
+
+    @Override
+    public List<String> types(int row) {
+        List<String> types = places[row].getTypes();
+        return types == null ? Collections.emptyList() : types;
+    }
+}
@@ -0,0 +1,340 @@
+package com.nearbyplaces.index;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Immutable hierarchical grid index over a {@link PlaceTable}.
+ *
+ * Every place is keyed by the 64-bit {@link CellId} of its leaf cell and the
+ * coordinate columns are stored sorted by that key, i.e. along the Hilbert
+ * curve. A query converts its region into a {@link CellCovering} of a few
+ * mixed-level cells; each cell is one key range that is found with a binary
+ * search and handed to the {@link DistanceKernel} as a whole. Ranges of cells
+ * lying entirely inside the region are taken without distance checks.
+ *
+ * When the table rows themselves are in cell order (as {@link PlaceSnapshot}
+ * arranges them) a row id equals its column position, so a row bitmap filter
+ * can be intersected with each candidate range before any distance math.
+ */
+public class GeoGridIndex {
+
+    /**
+     * Cell budget of a query covering
+     */
+    public static final int MAX_COVERING_CELLS = 16;
+
+    /**
+     * Positions scanned between two checks whether the searching thread was interrupted
+     */
+    private static final int INTERRUPT_CHECK_POSITIONS = 1 << 16;
+
+    private final int size;
+    private final boolean rowsInCellOrder;
+    private final ByteBuffer cellKeys;
+    private final PlaceColumns coordinates;
+    private final DistanceKernel kernel;
+
+    private GeoGridIndex(int size, boolean rowsInCellOrder, ByteBuffer cellKeys, PlaceColumns coordinates,
+                         DistanceKernel kernel) {
+        this.size = size;
+        this.rowsInCellOrder = rowsInCellOrder;
+        this.cellKeys = cellKeys;
+        this.coordinates = coordinates;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Builds an index over all rows of the given table
+     *
+     * @param table Places to index
+     * @param kernel Kernel used for the exact distance checks
+     * @return The built index
+     */
+    public static GeoGridIndex build(PlaceTable table, DistanceKernel kernel) {
+        int size = table.size();
+        int[] order = cellOrder(table);
+
+        ByteBuffer keys = ByteBuffer.allocate(size * Long.BYTES).order(PlaceColumns.ORDER);
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        boolean rowsInCellOrder = true;
+        for (int i = 0; i < size; i++) {
+            int row = order[i];
+            latitudes[i] = table.latitude(row);
+            longitudes[i] = table.longitude(row);
+            keys.putLong(i * Long.BYTES, CellId.fromLatLng(latitudes[i], longitudes[i]));
+            rowsInCellOrder &= row == i;
+        }
+
+        return new GeoGridIndex(size, rowsInCellOrder, keys, PlaceColumns.of(latitudes, longitudes, order), kernel);
+    }
+
+    /**
+     * Wraps index pages laid out as written by {@link #writeTo}
+     */
+    static GeoGridIndex wrap(ByteBuffer buffer, int offset, int size, boolean rowsInCellOrder, DistanceKernel kernel) {
+        ByteBuffer keys = PlaceColumns.slice(buffer, offset, size * Long.BYTES);
+        PlaceColumns coordinates = PlaceColumns.wrap(buffer, offset + size * Long.BYTES, size);
+        return new GeoGridIndex(size, rowsInCellOrder, keys, coordinates, kernel);
+    }
+
+    /**
+     * Sorts the rows of a table by leaf cell id. The sort is stable, so a table
+     * that is already in cell order yields the identity permutation.
+     *
+     * @return Row ids in cell order
+     */
+    static int[] cellOrder(PlaceTable table) {
+        int size = table.size();
+        long[] rowKeys = new long[size];
+        Integer[] order = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            rowKeys[row] = CellId.fromLatLng(table.latitude(row), table.longitude(row));
+            order[row] = row;
+        }
+        Arrays.sort(order, Comparator.comparingLong(row -> rowKeys[row]));
+
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of bytes {@link #writeTo} produces for the given size
+     */
+    static long byteSize(int size) {
+        return (long) size * Long.BYTES + PlaceColumns.byteSize(size);
+    }
+
+    /**
+     * Copies the cell keys and coordinate columns into the target buffer
+     */
+    void writeTo(ByteBuffer target) {
+        target.put(cellKeys.duplicate().clear());
+        coordinates.writeTo(target);
+    }
+
+    /**
+     * Finds the rows of all places within the given radius. Only places in the
+     * cells covering the search circle are considered, and only those in cells
+     * crossing its border are checked for exact distance.
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param rowFilter Optional bitmap of allowed rows, may be null
+     * @return Row ids of the places within the radius, in index order
+     */
+    public int[] findRowsWithinRadius(double latitude, double longitude, double radiusKm,
+                                      ImmutableRoaringBitmap rowFilter) {
+        if (size == 0 || (rowFilter != null && rowFilter.isEmpty())) {
+            return new int[0];
+        }
+
+        CellCovering covering = CellCovering.ofCircle(latitude, longitude, radiusKm, MAX_COVERING_CELLS);
+        return findRowsWithinRadius(covering, positionRanges(covering),
+            new DistanceKernel.Query(latitude, longitude, radiusKm), rowFilter, 0, size);
+    }
+
+    /**
+     * Finds the rows of the places within the query circle among the positions
+     * [lo, hi), so disjoint position slices can be searched independently
+     *
+     * @param covering Covering of the query circle
+     * @param ranges Position ranges of the covering cells, see {@link #positionRanges}
+     * @param query The query circle
+     * @param rowFilter Optional bitmap of allowed rows, may be null
+     * @param lo First position, inclusive
+     * @param hi Last position, exclusive
+     * @return Row ids of the places within the radius, in index order
+     * @throws CancellationException if the searching thread is interrupted, so
+     *         that a search given up on stops scanning
+     */
+    int[] findRowsWithinRadius(CellCovering covering, int[] ranges, DistanceKernel.Query query,
+                               ImmutableRoaringBitmap rowFilter, int lo, int hi) {
+        int[] out = new int[16];
+        int count = 0;
+        for (int i = 0; i < covering.size(); i++) {
+            int from = Math.max(lo, ranges[2 * i]);
+            int to = Math.min(hi, ranges[2 * i + 1]);
+            if (from >= to) {
+                continue;
+            }
+            out = ensureCapacity(out, count, to - from);
+            for (int start = from; start < to; start += INTERRUPT_CHECK_POSITIONS) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Search was interrupted");
+                }
+                int end = Math.min(to, start + INTERRUPT_CHECK_POSITIONS);
+                count = covering.isInterior(i)
+                    ? collectInBox(start, end, null, rowFilter, out, count)
+                    : collect(start, end, query, rowFilter, out, count);
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * @return Position range [from, to) of every covering cell, flattened into
+     *         one array in the order of the covering
+     */
+    int[] positionRanges(CellCovering covering) {
+        int[] ranges = new int[2 * covering.size()];
+        for (int i = 0; i < covering.size(); i++) {
+            ranges[2 * i] = lowerBound(covering.rangeMin(i));
+            ranges[2 * i + 1] = lowerBound(covering.rangeMax(i) + 1);
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the index position ranges of the cells covering the search circle.
+     * When {@link #isRowsInCellOrder} holds, positions are row ids, so other
+     * row-sorted structures can be walked over the same ranges.
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @return Ascending, non-overlapping [from, to) pairs flattened into one array
+     */
+    public int[] rangesWithinRadius(double latitude, double longitude, double radiusKm) {
+        if (size == 0) {
+            return new int[0];
+        }
+
+        CellCovering covering = CellCovering.ofCircle(latitude, longitude, radiusKm, MAX_COVERING_CELLS);
+        int[] ranges = new int[covering.size() * 2];
+        int count = 0;
+        for (int i = 0; i < covering.size(); i++) {
+            int from = lowerBound(covering.rangeMin(i));
+            int to = lowerBound(covering.rangeMax(i) + 1);
+            if (from >= to) {
+                continue;
+            }
+            if (count > 0 && ranges[count - 1] == from) {
+                // Interior and border cells next to each other
+                ranges[count - 1] = to;
+            } else {
+                ranges[count++] = from;
+                ranges[count++] = to;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Finds the rows of all places inside the given box. Cells inside the box
+     * are taken whole; only the cells on its border are checked place by place.
+     *
+     * @param box The box to search, crossing the antimeridian when minLng > maxLng
+     * @param rowFilter Optional bitmap of allowed rows, may be null
+     * @return Row ids of the places inside the box, in index order
+     */
+    public int[] findRowsWithinBox(BoundingBox box, ImmutableRoaringBitmap rowFilter) {
+        if (size == 0 || (rowFilter != null && rowFilter.isEmpty())) {
+            return new int[0];
+        }
+
+        CellCovering covering = CellCovering.ofBox(box, MAX_COVERING_CELLS);
+        int[] out = new int[16];
+        int count = 0;
+        for (int i = 0; i < covering.size(); i++) {
+            int from = lowerBound(covering.rangeMin(i));
+            int to = lowerBound(covering.rangeMax(i) + 1);
+            out = ensureCapacity(out, count, to - from);
+            count = collectInBox(from, to, covering.isInterior(i) ? null : box, rowFilter, out, count);
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isRowsInCellOrder() {
+        return rowsInCellOrder;
+    }
+
+    private int collect(int from, int to, DistanceKernel.Query query, ImmutableRoaringBitmap rowFilter,
+                        int[] out, int count) {
+        if (rowFilter == null) {
+            return kernel.collectWithin(coordinates, from, to, query, out, count);
+        }
+
+        if (rowsInCellOrder) {
+            // Positions are row ids, so only the filter's rows inside the range are visited
+            PeekableIntIterator rows = rowFilter.getIntIterator();
+            rows.advanceIfNeeded(from);
+            while (rows.hasNext() && rows.peekNext() < to) {
+                int position = rows.next();
+                if (query.contains(coordinates, position)) {
+                    out[count++] = position;
+                }
+            }
+            return count;
+        }
+
+        for (int position = from; position < to; position++) {
+            int row = coordinates.rowId(position);
+            if (rowFilter.contains(row) && query.contains(coordinates, position)) {
+                out[count++] = row;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collects the positions in [from, to) that pass the filter and lie in the
+     * box; a null box accepts every position
+     */
+    private int collectInBox(int from, int to, BoundingBox box, ImmutableRoaringBitmap rowFilter,
+                             int[] out, int count) {
+        if (rowFilter != null && rowsInCellOrder) {
+            PeekableIntIterator rows = rowFilter.getIntIterator();
+            rows.advanceIfNeeded(from);
+            while (rows.hasNext() && rows.peekNext() < to) {
+                int position = rows.next();
+                if (box == null || box.contains(coordinates.latitude(position), coordinates.longitude(position))) {
+                    out[count++] = position;
+                }
+            }
+            return count;
+        }
+
+        for (int position = from; position < to; position++) {
+            int row = coordinates.rowId(position);
+            if ((rowFilter == null || rowFilter.contains(row))
+                    && (box == null || box.contains(coordinates.latitude(position), coordinates.longitude(position)))) {
+                out[count++] = row;
+            }
+        }
+        return count;
+    }
+
+    private static int[] ensureCapacity(int[] out, int count, int candidates) {
+        int needed = count + candidates;
+        return needed <= out.length ? out : Arrays.copyOf(out, Math.max(needed, out.length * 2));
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cellKeys.getLong(mid * Long.BYTES) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
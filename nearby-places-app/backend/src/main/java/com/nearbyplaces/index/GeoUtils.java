@@ -0,0 +1,142 @@
+package com.nearbyplaces.index;
+
+/**
+ * Spherical geometry helpers shared by the in-memory spatial indexes
+ */
+public final class GeoUtils {
+    
+    public static final double EARTH_RADIUS_KM = 6371.0;
+    
+    /**
+     * Fixed-point scale of microdegree coordinates, about 0.11m of latitude
+     */
+    public static final double MICRODEGREES_PER_DEGREE = 1_000_000.0;
+    
+    private static final double MIN_LAT = Math.toRadians(-90.0);
+    private static final double MAX_LAT = Math.toRadians(90.0);
+    private static final double MIN_LNG = Math.toRadians(-180.0);
+    private static final double MAX_LNG = Math.toRadians(180.0);
+    
+    private GeoUtils() {}
+    
+    /**
+     * Great-circle distance between two points using the haversine formula
+     * 
+     * @return Distance in kilometers
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+    
+    /**
+     * Computes the smallest latitude/longitude box containing every point within
+     * radiusKm of the given center. If the circle contains a pole the box spans
+     * all longitudes; if it crosses the antimeridian minLng is greater than maxLng.
+     */
+    public static BoundingBox boundingBox(double latitude, double longitude, double radiusKm) {
+        double angular = radiusKm / EARTH_RADIUS_KM;
+        double lat = Math.toRadians(latitude);
+        double lng = Math.toRadians(longitude);
+        
+        double minLat = lat - angular;
+        double maxLat = lat + angular;
+        double minLng;
+        double maxLng;
+        
+        if (minLat > MIN_LAT && maxLat < MAX_LAT) {
+            double deltaLng = Math.asin(Math.sin(angular) / Math.cos(lat));
+            minLng = lng - deltaLng;
+            if (minLng < MIN_LNG) {
+                minLng += 2 * Math.PI;
+            }
+            maxLng = lng + deltaLng;
+            if (maxLng > MAX_LNG) {
+                maxLng -= 2 * Math.PI;
+            }
+        } else {
+            // A pole is inside the circle, so every longitude is reachable
+            minLat = Math.max(minLat, MIN_LAT);
+            maxLat = Math.min(maxLat, MAX_LAT);
+            minLng = MIN_LNG;
+            maxLng = MAX_LNG;
+        }
+        
+        return new BoundingBox(
+            Math.toDegrees(minLat),
+            Math.toDegrees(maxLat),
+            Math.toDegrees(minLng),
+            Math.toDegrees(maxLng)
+        );
+    }
+    
+    /**
+     * Lower bound of the distance from a point to any point inside a
+     * latitude/longitude box (minLng <= maxLng). The closest point of the box is
+     * either straight north/south of the point or on one of the two edge meridians.
+     * 
+     * @return Distance in kilometers, 0 if the point is inside the box
+     */
+    public static double minDistanceToBoxKm(double lat, double lng,
+                                            double minLat, double maxLat, double minLng, double maxLng) {
+        if (lng >= minLng && lng <= maxLng) {
+            double latGap = Math.max(0.0, Math.max(minLat - lat, lat - maxLat));
+            return Math.toRadians(latGap) * EARTH_RADIUS_KM;
+        }
+        return Math.min(
+            distanceToMeridianKm(lat, lng, minLng, minLat, maxLat),
+            distanceToMeridianKm(lat, lng, maxLng, minLat, maxLat));
+    }
+    
+    /**
+     * Distance from a point to the meridian segment at meridianLng between minLat and maxLat
+     */
+    private static double distanceToMeridianKm(double lat, double lng, double meridianLng,
+                                               double minLat, double maxLat) {
+        double deltaLng = normalizeLongitude(lng - meridianLng);
+        if (Math.abs(deltaLng) >= 90.0) {
+            // The foot of the perpendicular lies on the opposite meridian, so
+            // distance is monotonic along the segment and an endpoint is closest
+            return Math.min(
+                distanceKm(lat, lng, minLat, meridianLng),
+                distanceKm(lat, lng, maxLat, meridianLng));
+        }
+        double footLat = Math.toDegrees(Math.atan(
+            Math.tan(Math.toRadians(lat)) / Math.cos(Math.toRadians(deltaLng))));
+        double closestLat = Math.max(minLat, Math.min(maxLat, footLat));
+        return distanceKm(lat, lng, closestLat, meridianLng);
+    }
+    
+    /**
+     * Wraps a longitude difference into [-180, 180]
+     */
+    public static double normalizeLongitude(double lng) {
+        double wrapped = lng % 360.0;
+        if (wrapped > 180.0) {
+            wrapped -= 360.0;
+        } else if (wrapped < -180.0) {
+            wrapped += 360.0;
+        }
+        return wrapped;
+    }
+    
+    /**
+     * Rounds a coordinate to whole microdegrees
+     */
+    public static long toMicrodegrees(double degrees) {
+        return Math.round(degrees * MICRODEGREES_PER_DEGREE);
+    }
+    
+    /**
+     * Converts microdegrees back to degrees. The result is the double closest to
+     * the decimal value, so it prints with at most six fraction digits.
+     */
+    public static double fromMicrodegrees(long microdegrees) {
+        return microdegrees / MICRODEGREES_PER_DEGREE;
+    }
+}
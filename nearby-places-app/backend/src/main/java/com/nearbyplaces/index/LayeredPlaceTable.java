@@ -0,0 +1,65 @@
+package com.nearbyplaces.index;
+
+import java.util.List;
+
+/**
+ * {@link PlaceTable} of a base table followed by the rows of a delta table.
+ * Base rows keep their ids; delta row i is row base.size() + i.
+ */
+final class LayeredPlaceTable implements PlaceTable {
+
+    private final PlaceTable base;
+    private final PlaceTable delta;
+    private final int baseSize;
+
+    LayeredPlaceTable(PlaceTable base, PlaceTable delta) {
+        this.base = base;
+        this.delta = delta;
+        this.baseSize = base.size();
+    }
+
+    @Override
+    public int size() {
+        return baseSize + delta.size();
+    }
+
+    @Override
+    public long id(int row) {
+        return row < baseSize ? base.id(row) : delta.id(row - baseSize);
+    }
+
+    @Override
+    public double latitude(int row) {
+        return row < baseSize ? base.latitude(row) : delta.latitude(row - baseSize);
+    }
+
+    @Override
+    public double longitude(int row) {
+        return row < baseSize ? base.longitude(row) : delta.longitude(row - baseSize);
+    }
+
+    @Override
+    public double rating(int row) {
+        return row < baseSize ? base.rating(row) : delta.rating(row - baseSize);
+    }
+
+    @Override
+    public String name(int row) {
+        return row < baseSize ? base.name(row) : delta.name(row - baseSize);
+    }
+
+    @Override
+    public String address(int row) {
+        return row < baseSize ? base.address(row) : delta.address(row - baseSize);
+    }
+
+    @Override
+    public String placeId(int row) {
+        return row < baseSize ? base.placeId(row) : delta.placeId(row - baseSize);
+    }
+
+    @Override
+    public List<String> types(int row) {
+        return row < baseSize ? base.types(row) : delta.types(row - baseSize);
+    }
+}
@@ -0,0 +1,118 @@
+package com.nearbyplaces.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link PlaceTable} read straight from the pages of a snapshot file.
+ *
+ * Ids, coordinates and ratings are fixed-width long and double columns. Strings live in a
+ * shared UTF-8 pool and are addressed through per-row (offset, length) pairs,
+ * so they are only decoded for rows that end up in a response. Types are
+ * stored as one comma separated string per row.
+ */
+final class MappedPlaceTable implements PlaceTable {
+
+    static final int STRING_FIELDS = 4;
+    static final int NAME = 0;
+    static final int ADDRESS = 1;
+    static final int PLACE_ID = 2;
+    static final int TYPES = 3;
+    static final String TYPE_SEPARATOR = ",";
+
+    private final int size;
+    private final ByteBuffer latitudes;
+    private final ByteBuffer longitudes;
+    private final ByteBuffer ratings;
+    private final ByteBuffer ids;
+    private final ByteBuffer stringRefs;
+    private final ByteBuffer pool;
+
+    MappedPlaceTable(int size, ByteBuffer rows, ByteBuffer stringRefs, ByteBuffer pool) {
+        int columnBytes = size * Double.BYTES;
+        this.size = size;
+        this.latitudes = PlaceColumns.slice(rows, 0, columnBytes);
+        this.longitudes = PlaceColumns.slice(rows, columnBytes, columnBytes);
+        this.ratings = PlaceColumns.slice(rows, 2 * columnBytes, columnBytes);
+        this.ids = PlaceColumns.slice(rows, 3 * columnBytes, size * Long.BYTES);
+        this.stringRefs = stringRefs;
+        this.pool = pool;
+    }
+
+    /**
+     * @return Number of bytes of the fixed-width row columns for the given size
+     */
+    static long rowsByteSize(int size) {
+        return 3L * size * Double.BYTES + (long) size * Long.BYTES;
+    }
+
+    /**
+     * @return Number of bytes of the (offset, length) string references for the given size
+     */
+    static long stringRefsByteSize(int size) {
+        return 2L * STRING_FIELDS * size * Integer.BYTES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long id(int row) {
+        return ids.getLong(row * Long.BYTES);
+    }
+
+    @Override
+    public double latitude(int row) {
+        return latitudes.getDouble(row * Double.BYTES);
+    }
+
+    @Override
+    public double longitude(int row) {
+        return longitudes.getDouble(row * Double.BYTES);
+    }
+
+    @Override
+    public double rating(int row) {
+        return ratings.getDouble(row * Double.BYTES);
+    }
+
+    @Override
+    public String name(int row) {
+        return string(row, NAME);
+    }
+
+    @Override
+    public String address(int row) {
+        return string(row, ADDRESS);
+    }
+
+    @Override
+    public String placeId(int row) {
+        return string(row, PLACE_ID);
+    }
+
+    @Override
+    public List<String> types(int row) {
+        String types = string(row, TYPES);
+        return types == null || types.isEmpty()
+            ? Collections.emptyList()
+            : Arrays.asList(types.split(TYPE_SEPARATOR));
+    }
+
+    private String string(int row, int field) {
+        int ref = (row * STRING_FIELDS + field) * 2 * Integer.BYTES;
+        int offset = stringRefs.getInt(ref);
+        int length = stringRefs.getInt(ref + Integer.BYTES);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        pool.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+package com.nearbyplaces.index;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Rows of a {@link PlaceTable} found by a radius search, with their distance
+ * from the search center in kilometers
+ */
+public final class NearbyMatches {
+
+    private final int[] rows;
+    private final double[] distances;
+
+    public NearbyMatches(int[] rows, double[] distances) {
+        if (rows.length != distances.length) {
+            throw new IllegalArgumentException("Every row needs a distance");
+        }
+        this.rows = rows;
+        this.distances = distances;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public int[] getRows() {
+        return rows;
+    }
+
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return The closest limit matches of this one, ordered by (distance, position)
+     */
+    NearbyMatches closest(int limit) {
+        TopK closest = new TopK(Math.min(limit, rows.length));
+        for (int i = 0; i < rows.length; i++) {
+            closest.offer(i, -distances[i], distances[i]);
+        }
+        int[] order = closest.drain();
+        int[] selectedRows = new int[order.length];
+        double[] selectedDistances = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            selectedRows[i] = rows[order[i]];
+            selectedDistances[i] = distances[order[i]];
+        }
+        return new NearbyMatches(selectedRows, selectedDistances);
+    }
+
+    /**
+     * @return All matches of the parts, in part order
+     */
+    static NearbyMatches concat(List<NearbyMatches> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int size = 0;
+        for (NearbyMatches part : parts) {
+            size += part.size();
+        }
+        int[] rows = new int[size];
+        double[] distances = new double[size];
+        int offset = 0;
+        for (NearbyMatches part : parts) {
+            System.arraycopy(part.rows, 0, rows, offset, part.size());
+            System.arraycopy(part.distances, 0, distances, offset, part.size());
+            offset += part.size();
+        }
+        return new NearbyMatches(rows, distances);
+    }
+
+    /**
+     * Merges parts that are each ordered by distance
+     *
+     * @return The closest limit matches of all parts, ordered by (distance, part)
+     */
+    static NearbyMatches mergeClosest(List<NearbyMatches> parts, int limit) {
+        int[] next = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+            int order = Double.compare(parts.get(a).distances[next[a]], parts.get(b).distances[next[b]]);
+            return order != 0 ? order : Integer.compare(a, b);
+        });
+        int available = 0;
+        for (int part = 0; part < parts.size(); part++) {
+            available += parts.get(part).size();
+            if (parts.get(part).size() > 0) {
+                heads.add(part);
+            }
+        }
+
+        int size = Math.min(limit, available);
+        int[] rows = new int[size];
+        double[] distances = new double[size];
+        for (int i = 0; i < size; i++) {
+            int part = heads.poll();
+            NearbyMatches matches = parts.get(part);
+            rows[i] = matches.rows[next[part]];
+            distances[i] = matches.distances[next[part]];
+            if (++next[part] < matches.size()) {
+                heads.add(part);
+            }
+        }
+        return new NearbyMatches(rows, distances);
+    }
+}
@@ -0,0 +1,127 @@
+package com.nearbyplaces.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-optimised column store of place coordinates.
+ *
+ * Coordinates are kept as parallel primitive double columns in radians together
+ * with their precomputed sines and cosines, so a distance check is a handful of
+ * multiply-adds with no trigonometry and no allocation. rowIds maps each
+ * column position back to a {@link PlaceTable} row.
+ *
+ * Columns are little-endian buffers so the same layout can live on the heap or
+ * in a memory-mapped snapshot file.
+ */
+public final class PlaceColumns {
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int DOUBLE_COLUMNS = 6;
+
+    final int size;
+    final ByteBuffer latRad;
+    final ByteBuffer lngRad;
+    final ByteBuffer sinLat;
+    final ByteBuffer cosLat;
+    final ByteBuffer sinLng;
+    final ByteBuffer cosLng;
+    final ByteBuffer rowIds;
+
+    private PlaceColumns(int size, ByteBuffer latRad, ByteBuffer lngRad, ByteBuffer sinLat, ByteBuffer cosLat,
+                         ByteBuffer sinLng, ByteBuffer cosLng, ByteBuffer rowIds) {
+        this.size = size;
+        this.latRad = latRad;
+        this.lngRad = lngRad;
+        this.sinLat = sinLat;
+        this.cosLat = cosLat;
+        this.sinLng = sinLng;
+        this.cosLng = cosLng;
+        this.rowIds = rowIds;
+    }
+
+    /**
+     * Builds heap columns from coordinates in degrees
+     *
+     * @param latitudes Latitudes in degrees, one per position
+     * @param longitudes Longitudes in degrees, one per position
+     * @param rowIds Row id stored for each position
+     * @return The column store
+     */
+    public static PlaceColumns of(double[] latitudes, double[] longitudes, int[] rowIds) {
+        int size = rowIds.length;
+        PlaceColumns columns = new PlaceColumns(size,
+            allocate(size, Double.BYTES), allocate(size, Double.BYTES),
+            allocate(size, Double.BYTES), allocate(size, Double.BYTES),
+            allocate(size, Double.BYTES), allocate(size, Double.BYTES),
+            allocate(size, Integer.BYTES));
+        for (int i = 0; i < size; i++) {
+            double lat = Math.toRadians(latitudes[i]);
+            double lng = Math.toRadians(longitudes[i]);
+            int offset = i * Double.BYTES;
+            columns.latRad.putDouble(offset, lat);
+            columns.lngRad.putDouble(offset, lng);
+            columns.sinLat.putDouble(offset, Math.sin(lat));
+            columns.cosLat.putDouble(offset, Math.cos(lat));
+            columns.sinLng.putDouble(offset, Math.sin(lng));
+            columns.cosLng.putDouble(offset, Math.cos(lng));
+            columns.rowIds.putInt(i * Integer.BYTES, rowIds[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * Wraps columns laid out back to back in a buffer, as written by {@link #writeTo}
+     */
+    static PlaceColumns wrap(ByteBuffer buffer, int offset, int size) {
+        int columnBytes = size * Double.BYTES;
+        return new PlaceColumns(size,
+            slice(buffer, offset, columnBytes),
+            slice(buffer, offset + columnBytes, columnBytes),
+            slice(buffer, offset + 2 * columnBytes, columnBytes),
+            slice(buffer, offset + 3 * columnBytes, columnBytes),
+            slice(buffer, offset + 4 * columnBytes, columnBytes),
+            slice(buffer, offset + 5 * columnBytes, columnBytes),
+            slice(buffer, offset + DOUBLE_COLUMNS * columnBytes, size * Integer.BYTES));
+    }
+
+    /**
+     * @return Number of bytes {@link #writeTo} produces for the given size
+     */
+    static long byteSize(int size) {
+        return (long) size * (DOUBLE_COLUMNS * Double.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Copies all columns into the target buffer at its current position
+     */
+    void writeTo(ByteBuffer target) {
+        for (ByteBuffer column : new ByteBuffer[] {latRad, lngRad, sinLat, cosLat, sinLng, cosLng, rowIds}) {
+            target.put(column.duplicate().clear());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int rowId(int position) {
+        return rowIds.getInt(position * Integer.BYTES);
+    }
+
+    public double latitude(int position) {
+        return Math.toDegrees(latRad.getDouble(position * Double.BYTES));
+    }
+
+    public double longitude(int position) {
+        return Math.toDegrees(lngRad.getDouble(position * Double.BYTES));
+    }
+
+    private static ByteBuffer allocate(int size, int width) {
+        return ByteBuffer.allocate(size * width).order(ORDER);
+    }
+
+    static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.duplicate().position(offset).limit(offset + length).slice().order(ORDER);
+    }
+}
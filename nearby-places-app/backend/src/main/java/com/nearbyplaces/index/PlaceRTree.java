@@ -0,0 +1,492 @@
+package com.nearbyplaces.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Immutable R-tree over the rows of a {@link PlaceTable}, bulk-loaded with the
+ * Sort-Tile-Recursive (STR) algorithm.
+ *
+ * Nearest-neighbour queries use a best-first traversal: nodes are queued by the
+ * lower bound of their distance to the query point and places by their exact
+ * distance, so once a place reaches the head of the queue nothing left in the
+ * queue can be closer and it is final. The same traversal backs
+ * {@link #scan}, which streams places in distance order without a limit.
+ *
+ * The nodes are stored as little-endian columns of bounding boxes and child
+ * ranges, so a tree written into a snapshot file is searched straight from
+ * the mapped pages.
+ */
+public class PlaceRTree {
+
+    public static final int DEFAULT_NODE_CAPACITY = 16;
+
+    // Half the circumference, the largest possible distance between two points
+    private static final double HALF_CIRCUMFERENCE_KM = Math.PI * GeoUtils.EARTH_RADIUS_KM;
+
+    // Added to computed upper bounds so rounding never makes them undercut an exact distance
+    private static final double BOUND_SLACK_KM = 1e-6;
+
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final PlaceTable table;
+    private final int size;
+    private final int nodeCount;
+    private final int firstLeafNode;
+    private final ByteBuffer entryLat;
+    private final ByteBuffer entryLng;
+    private final ByteBuffer minLat;
+    private final ByteBuffer maxLat;
+    private final ByteBuffer minLng;
+    private final ByteBuffer maxLng;
+    private final ByteBuffer entryRows;
+    private final ByteBuffer firstChild;
+    private final ByteBuffer childCount;
+
+    private PlaceRTree(PlaceTable table, ByteBuffer buffer, int offset) {
+        this.table = table;
+        this.size = buffer.getInt(offset);
+        this.nodeCount = buffer.getInt(offset + Integer.BYTES);
+        this.firstLeafNode = buffer.getInt(offset + 2 * Integer.BYTES);
+
+        int position = offset + HEADER_BYTES;
+        this.entryLat = PlaceColumns.slice(buffer, position, size * Double.BYTES);
+        this.entryLng = PlaceColumns.slice(buffer, position += size * Double.BYTES, size * Double.BYTES);
+        this.minLat = PlaceColumns.slice(buffer, position += size * Double.BYTES, nodeCount * Double.BYTES);
+        this.maxLat = PlaceColumns.slice(buffer, position += nodeCount * Double.BYTES, nodeCount * Double.BYTES);
+        this.minLng = PlaceColumns.slice(buffer, position += nodeCount * Double.BYTES, nodeCount * Double.BYTES);
+        this.maxLng = PlaceColumns.slice(buffer, position += nodeCount * Double.BYTES, nodeCount * Double.BYTES);
+        this.entryRows = PlaceColumns.slice(buffer, position += nodeCount * Double.BYTES, size * Integer.BYTES);
+        this.firstChild = PlaceColumns.slice(buffer, position += size * Integer.BYTES, nodeCount * Integer.BYTES);
+        this.childCount = PlaceColumns.slice(buffer, position + nodeCount * Integer.BYTES, nodeCount * Integer.BYTES);
+    }
+
+    /**
+     * Bulk-loads a tree over all rows of the given table
+     *
+     * @param table Places to index
+     * @param nodeCapacity Maximum number of children per node
+     * @return The built tree
+     */
+    public static PlaceRTree build(PlaceTable table, int nodeCapacity) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("Node capacity must be at least 2");
+        }
+
+        int size = table.size();
+        List<Node> nodes = new ArrayList<>();
+        if (size > 0) {
+            List<Node> level = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                level.add(new Node(row, table.latitude(row), table.longitude(row)));
+            }
+            do {
+                level = packLevel(level, nodeCapacity);
+            } while (level.size() > 1);
+            nodes.add(level.get(0));
+        }
+
+        // Breadth-first numbering keeps the children of every node consecutive,
+        // and as all leaves of an STR tree are on the same level they come last
+        int firstLeafNode = 0;
+        List<Node> entries = new ArrayList<>(size);
+        for (int i = 0; i < nodes.size(); i++) {
+            for (Node child : nodes.get(i).children) {
+                if (child.children == null) {
+                    entries.add(child);
+                } else {
+                    nodes.add(child);
+                    firstLeafNode = i + 1;
+                }
+            }
+        }
+
+        int nodeCount = nodes.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) byteSize(size, nodeCount)).order(PlaceColumns.ORDER);
+        buffer.putInt(size).putInt(nodeCount).putInt(firstLeafNode).putInt(0);
+        for (Node entry : entries) {
+            buffer.putDouble(entry.minLat);
+        }
+        for (Node entry : entries) {
+            buffer.putDouble(entry.minLng);
+        }
+        for (Node node : nodes) {
+            buffer.putDouble(node.minLat);
+        }
+        for (Node node : nodes) {
+            buffer.putDouble(node.maxLat);
+        }
+        for (Node node : nodes) {
+            buffer.putDouble(node.minLng);
+        }
+        for (Node node : nodes) {
+            buffer.putDouble(node.maxLng);
+        }
+        for (Node entry : entries) {
+            buffer.putInt(entry.rowId);
+        }
+        int nextNode = 1;
+        int nextEntry = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            buffer.putInt(i < firstLeafNode ? nextNode : nextEntry);
+            if (i < firstLeafNode) {
+                nextNode += nodes.get(i).children.length;
+            } else {
+                nextEntry += nodes.get(i).children.length;
+            }
+        }
+        for (Node node : nodes) {
+            buffer.putInt(node.children.length);
+        }
+        return new PlaceRTree(table, buffer, 0);
+    }
+
+    /**
+     * Wraps a tree laid out as written by {@link #writeTo}
+     *
+     * @param table Table the tree was built over
+     */
+    static PlaceRTree wrap(ByteBuffer buffer, int offset, PlaceTable table) {
+        return new PlaceRTree(table, buffer, offset);
+    }
+
+    /**
+     * @return Number of bytes {@link #writeTo} produces
+     */
+    long byteSize() {
+        return byteSize(size, nodeCount);
+    }
+
+    /**
+     * Writes the tree into the target buffer at its current position. Nodes
+     * are numbered breadth-first from the root; the children of a node are
+     * the consecutive nodes, or for leaf nodes entries, starting at its first child.
+     */
+    void writeTo(ByteBuffer target) {
+        target.putInt(size).putInt(nodeCount).putInt(firstLeafNode).putInt(0);
+        for (ByteBuffer column : new ByteBuffer[] {entryLat, entryLng, minLat, maxLat, minLng, maxLng, entryRows,
+                firstChild, childCount}) {
+            target.put(column.duplicate().clear());
+        }
+    }
+
+    /**
+     * Finds the k places closest to the given point
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param k Maximum number of places to return
+     * @param filter Optional row filter, rows it rejects are never returned
+     * @return Up to k places ordered by increasing distance
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, IntPredicate filter) {
+        List<Neighbor> result = new ArrayList<>(Math.min(k, size));
+        if (nodeCount == 0 || k <= 0) {
+            return result;
+        }
+
+        PriorityQueue<QueueEntry> queue = new PriorityQueue<>(Comparator.comparingDouble(e -> e.distanceKm));
+        queue.add(new QueueEntry(0, -1, 0.0));
+
+        while (!queue.isEmpty() && result.size() < k) {
+            QueueEntry entry = queue.poll();
+            int node = entry.node;
+            if (node < 0) {
+                result.add(new Neighbor(entry.rowId, entry.distanceKm));
+                continue;
+            }
+
+            int first = firstChild(node);
+            int end = first + childCount(node);
+            if (node >= firstLeafNode) {
+                for (int e = first; e < end; e++) {
+                    int rowId = entryRow(e);
+                    if (filter == null || filter.test(rowId)) {
+                        queue.add(new QueueEntry(-1, rowId, entryDistanceKm(e, latitude, longitude)));
+                    }
+                }
+            } else {
+                for (int child = first; child < end; child++) {
+                    queue.add(new QueueEntry(child, -1, minDistanceKm(child, latitude, longitude)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Streams the places within the given distance in increasing order of
+     * (distance, placeId, rowId). Ties are broken by place id before row id, so
+     * the order only depends on the snapshot for places sharing a place id.
+     *
+     * The scan can resume after a previously returned place: places ordered at
+     * or before (afterDistanceKm, afterPlaceId, afterRowId) are dropped before they are
+     * queued, and so are nodes whose farthest point is closer than afterDistanceKm,
+     * so resuming only expands the nodes reaching past the cursor.
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param maxDistanceKm Places further away are never returned
+     * @param filter Optional row filter, rows it rejects are never returned
+     * @param afterDistanceKm Distance of the place to resume after, negative to start from the beginning
+     * @param afterPlaceId Place id of the place to resume after
+     * @param afterRowId Row id of the place to resume after
+     * @return Iterator over the places in distance order
+     */
+    public Iterator<Neighbor> scan(double latitude, double longitude, double maxDistanceKm, IntPredicate filter,
+                                   double afterDistanceKm, String afterPlaceId, int afterRowId) {
+        return new DistanceScan(latitude, longitude, maxDistanceKm, filter, afterDistanceKm, afterPlaceId, afterRowId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static long byteSize(int size, int nodeCount) {
+        return HEADER_BYTES + (long) size * (2 * Double.BYTES + Integer.BYTES)
+            + (long) nodeCount * (4 * Double.BYTES + 2 * Integer.BYTES);
+    }
+
+    private int firstChild(int node) {
+        return firstChild.getInt(node * Integer.BYTES);
+    }
+
+    private int childCount(int node) {
+        return childCount.getInt(node * Integer.BYTES);
+    }
+
+    private int entryRow(int entry) {
+        return entryRows.getInt(entry * Integer.BYTES);
+    }
+
+    private double entryDistanceKm(int entry, double latitude, double longitude) {
+        return GeoUtils.distanceKm(latitude, longitude,
+            entryLat.getDouble(entry * Double.BYTES), entryLng.getDouble(entry * Double.BYTES));
+    }
+
+    private double minDistanceKm(int node, double latitude, double longitude) {
+        int offset = node * Double.BYTES;
+        return GeoUtils.minDistanceToBoxKm(latitude, longitude, minLat.getDouble(offset), maxLat.getDouble(offset),
+            minLng.getDouble(offset), maxLng.getDouble(offset));
+    }
+
+    /**
+     * Upper bound of the distance to any point of the node's box. The farthest
+     * point is the one closest to the antipode of the query point.
+     */
+    private double maxDistanceKm(int node, double latitude, double longitude) {
+        return HALF_CIRCUMFERENCE_KM + BOUND_SLACK_KM
+            - minDistanceKm(node, -latitude, GeoUtils.normalizeLongitude(longitude + 180.0));
+    }
+
+    private static List<Node> packLevel(List<Node> nodes, int capacity) {
+        int nodeCount = (int) Math.ceil(nodes.size() / (double) capacity);
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * capacity;
+
+        Node[] sorted = nodes.toArray(new Node[0]);
+        Arrays.sort(sorted, Comparator.comparingDouble(Node::centerLng));
+
+        List<Node> parents = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < sorted.length; sliceStart += sliceSize) {
+            int sliceEnd = Math.min(sliceStart + sliceSize, sorted.length);
+            Arrays.sort(sorted, sliceStart, sliceEnd, Comparator.comparingDouble(Node::centerLat));
+
+            for (int start = sliceStart; start < sliceEnd; start += capacity) {
+                int end = Math.min(start + capacity, sliceEnd);
+                parents.add(new Node(Arrays.copyOfRange(sorted, start, end)));
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * A place returned by a nearest-neighbour query together with its distance
+     */
+    public static final class Neighbor {
+
+        private final int rowId;
+        private final double distanceKm;
+
+        Neighbor(int rowId, double distanceKm) {
+            this.rowId = rowId;
+            this.distanceKm = distanceKm;
+        }
+
+        public int getRowId() {
+            return rowId;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+    }
+
+    /**
+     * A queued node, or a place when node is -1
+     */
+    private static final class QueueEntry {
+
+        final int node;
+        final int rowId;
+        final double distanceKm;
+        final String placeId;
+
+        QueueEntry(int node, int rowId, double distanceKm) {
+            this(node, rowId, distanceKm, null);
+        }
+
+        QueueEntry(int node, int rowId, double distanceKm, String placeId) {
+            this.node = node;
+            this.rowId = rowId;
+            this.distanceKm = distanceKm;
+            this.placeId = placeId;
+        }
+    }
+
+    /**
+     * Best-first traversal ordered by (distance, node before place, placeId, rowId).
+     * Queuing nodes ahead of places at equal distance guarantees every place
+     * that ties with the head of the queue has been queued before it is returned.
+     */
+    private final class DistanceScan implements Iterator<Neighbor> {
+
+        private final double latitude;
+        private final double longitude;
+        private final double maxDistanceKm;
+        private final IntPredicate filter;
+        private final double afterDistanceKm;
+        private final String afterPlaceId;
+        private final int afterRowId;
+        private final PriorityQueue<QueueEntry> queue;
+
+        DistanceScan(double latitude, double longitude, double maxDistanceKm, IntPredicate filter,
+                     double afterDistanceKm, String afterPlaceId, int afterRowId) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.maxDistanceKm = maxDistanceKm;
+            this.filter = filter;
+            this.afterDistanceKm = afterDistanceKm;
+            this.afterPlaceId = afterPlaceId;
+            this.afterRowId = afterRowId;
+            this.queue = new PriorityQueue<>(Comparator.<QueueEntry>comparingDouble(e -> e.distanceKm)
+                .thenComparing(e -> e.node < 0)
+                .thenComparing(e -> e.placeId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(e -> e.rowId));
+            if (nodeCount > 0) {
+                queue.add(new QueueEntry(0, -1, 0.0));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!queue.isEmpty() && queue.peek().node >= 0) {
+                expand(queue.poll().node);
+            }
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Neighbor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            QueueEntry entry = queue.poll();
+            return new Neighbor(entry.rowId, entry.distanceKm);
+        }
+
+        private void expand(int node) {
+            int first = firstChild(node);
+            int end = first + childCount(node);
+            if (node < firstLeafNode) {
+                for (int child = first; child < end; child++) {
+                    double distanceKm = minDistanceKm(child, latitude, longitude);
+                    // A node entirely before the cursor only holds places returned on earlier pages
+                    if (distanceKm <= maxDistanceKm
+                            && (afterDistanceKm <= 0 || maxDistanceKm(child, latitude, longitude) >= afterDistanceKm)) {
+                        queue.add(new QueueEntry(child, -1, distanceKm));
+                    }
+                }
+                return;
+            }
+
+            for (int e = first; e < end; e++) {
+                int rowId = entryRow(e);
+                if (filter != null && !filter.test(rowId)) {
+                    continue;
+                }
+                double distanceKm = entryDistanceKm(e, latitude, longitude);
+                if (distanceKm > maxDistanceKm || distanceKm < afterDistanceKm) {
+                    continue;
+                }
+                String placeId = table.placeId(rowId);
+                if (distanceKm == afterDistanceKm) {
+                    int order = compare(placeId, afterPlaceId);
+                    if (order < 0 || (order == 0 && rowId <= afterRowId)) {
+                        continue;
+                    }
+                }
+                queue.add(new QueueEntry(-1, rowId, distanceKm, placeId));
+            }
+        }
+    }
+
+    private static int compare(String a, String b) {
+        return Comparator.nullsFirst(Comparator.<String>naturalOrder()).compare(a, b);
+    }
+
+    /**
+     * Either a leaf entry holding a single row or an inner node with children,
+     * only used while the tree is built
+     */
+    private static final class Node {
+
+        final double minLat;
+        final double maxLat;
+        final double minLng;
+        final double maxLng;
+        final Node[] children;
+        final int rowId;
+
+        Node(int rowId, double latitude, double longitude) {
+            this.rowId = rowId;
+            this.children = null;
+            this.minLat = this.maxLat = latitude;
+            this.minLng = this.maxLng = longitude;
+        }
+
+        Node(Node[] children) {
+            double minLat = Double.POSITIVE_INFINITY;
+            double maxLat = Double.NEGATIVE_INFINITY;
+            double minLng = Double.POSITIVE_INFINITY;
+            double maxLng = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                minLat = Math.min(minLat, child.minLat);
+                maxLat = Math.max(maxLat, child.maxLat);
+                minLng = Math.min(minLng, child.minLng);
+                maxLng = Math.max(maxLng, child.maxLng);
+            }
+            this.rowId = -1;
+            this.children = children;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLng = minLng;
+            this.maxLng = maxLng;
+        }
+
+        double centerLat() {
+            return (minLat + maxLat) / 2;
+        }
+
+        double centerLng() {
+            return (minLng + maxLng) / 2;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * Immutable read model of the place catalogue: the row table together with the
+ * spatial, type and text indexes built over it. Row ids returned by the indexes are
+ * only meaningful against the table of the same snapshot.
+ *
+ * A snapshot can be derived from another one with {@link #withChanges} without
+ * rebuilding any index. The indexes keep covering the rows they were built
+ * over (the base); rows of changed or deleted places are hidden from them, and
+ * the current versions of changed places are appended to the table as a small
+ * delta that queries scan directly. The delta is meant to stay small and to be
+ * folded into a freshly built base from time to time.
+ *
+ * The query methods of the snapshot merge base and delta; the index getters
+ * only see the base rows.
+ */
+public final class PlaceSnapshot {
+
+    private static final ImmutableRoaringBitmap NO_ROWS = new MutableRoaringBitmap();
+    private static final Comparator<String> PLACE_ID_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final PlaceTable table;
+    private final GeoGridIndex gridIndex;
+    private final PlaceRTree rTree;
+    private final TypeIndex typeIndex;
+    private final TextIndex textIndex;
+    private final BaseRows baseRows;
+    private final ImmutableRoaringBitmap hiddenRows;
+    private final ImmutableRoaringBitmap visibleRows;
+    private final EntityPlaceTable delta;
+    private final double[] deltaLatitudes;
+    private final double[] deltaLongitudes;
+    private final List<List<String>> deltaTypes;
+
+    public PlaceSnapshot(PlaceTable table, GeoGridIndex gridIndex, PlaceRTree rTree, TypeIndex typeIndex,
+                         TextIndex textIndex) {
+        this(gridIndex, rTree, typeIndex, textIndex, new BaseRows(table), NO_ROWS,
+            new EntityPlaceTable(Collections.emptyList()));
+    }
+
+    private PlaceSnapshot(GeoGridIndex gridIndex, PlaceRTree rTree, TypeIndex typeIndex, TextIndex textIndex,
+                          BaseRows baseRows, ImmutableRoaringBitmap hiddenRows, EntityPlaceTable delta) {
+        this.gridIndex = gridIndex;
+        this.rTree = rTree;
+        this.typeIndex = typeIndex;
+        this.textIndex = textIndex;
+        this.baseRows = baseRows;
+        this.hiddenRows = hiddenRows;
+        this.delta = delta;
+        this.table = delta.size() == 0 ? baseRows.table : new LayeredPlaceTable(baseRows.table, delta);
+
+        if (hiddenRows.isEmpty()) {
+            this.visibleRows = null;
+        } else {
+            MutableRoaringBitmap visible = new MutableRoaringBitmap();
+            visible.add(0L, baseRows.table.size());
+            visible.andNot(hiddenRows);
+            visible.runOptimize();
+            this.visibleRows = visible;
+        }
+
+        int deltaSize = delta.size();
+        this.deltaLatitudes = new double[deltaSize];
+        this.deltaLongitudes = new double[deltaSize];
+        this.deltaTypes = new ArrayList<>(deltaSize);
+        for (int i = 0; i < deltaSize; i++) {
+            deltaLatitudes[i] = delta.latitude(i);
+            deltaLongitudes[i] = delta.longitude(i);
+            List<String> types = new ArrayList<>();
+            for (String type : delta.types(i)) {
+                types.add(TypeIndex.normalize(type));
+            }
+            deltaTypes.add(types);
+        }
+    }
+
+    /**
+     * Builds all indexes over the given table. Rows are first put in grid cell
+     * order so type bitmaps and text postings can be intersected with grid
+     * ranges directly.
+     *
+     * @param table Places to index
+     * @param nodeCapacity R-tree node capacity
+     * @param kernel Kernel used for the exact distance checks
+     * @return The built snapshot
+     */
+    public static PlaceSnapshot build(EntityPlaceTable table, int nodeCapacity, DistanceKernel kernel) {
+        EntityPlaceTable ordered = table.reorder(GeoGridIndex.cellOrder(table));
+        return new PlaceSnapshot(ordered,
+            GeoGridIndex.build(ordered, kernel),
+            PlaceRTree.build(ordered, nodeCapacity),
+            TypeIndex.build(ordered),
+            TextIndex.build(ordered));
+    }
+
+    /**
+     * Derives a snapshot with a batch of place changes applied. Costs time in
+     * proportion to the delta and the batch, not to the size of the catalogue.
+     *
+     * @param upserts Current versions of created or updated places, which must not be modified afterwards
+     * @param deletedIds Ids of deleted places
+     * @return The new snapshot; this one is left unchanged
+     */
+    public PlaceSnapshot withChanges(Collection<Place> upserts, Collection<Long> deletedIds) {
+        Set<Long> changed = new HashSet<>(deletedIds);
+        for (Place place : upserts) {
+            changed.add(place.getId());
+        }
+
+        MutableRoaringBitmap hidden = hiddenRows.toMutableRoaringBitmap();
+        for (Long id : changed) {
+            int row = id == null ? -1 : baseRows.row(id);
+            if (row >= 0) {
+                hidden.add(row);
+            }
+        }
+
+        List<Place> places = new ArrayList<>(delta.size() + upserts.size());
+        for (int i = 0; i < delta.size(); i++) {
+            if (!changed.contains(delta.place(i).getId())) {
+                places.add(delta.place(i));
+            }
+        }
+        places.addAll(upserts);
+        return new PlaceSnapshot(gridIndex, rTree, typeIndex, textIndex, baseRows, hidden,
+            new EntityPlaceTable(places));
+    }
+
+    /**
+     * Finds the rows of all places within the given radius
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param typeFilter Optional type filter, may be null
+     * @return Row ids of the places within the radius, base rows in index order first
+     */
+    public int[] findRowsWithinRadius(double latitude, double longitude, double radiusKm, TypeFilter typeFilter) {
+        int[] rows = gridIndex.findRowsWithinRadius(latitude, longitude, radiusKm, baseFilter(typeFilter));
+        if (delta.size() == 0) {
+            return rows;
+        }
+        int count = rows.length;
+        rows = Arrays.copyOf(rows, count + delta.size());
+        for (int i = 0; i < delta.size(); i++) {
+            if (matches(i, typeFilter) && deltaDistanceKm(i, latitude, longitude, radiusKm) <= radiusKm) {
+                rows[count++] = baseSize() + i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Finds the places within the given radius together with their distances.
+     * Searches with many candidates are split over the partitions their
+     * covering touches and run in parallel, see {@link SearchPartitions}.
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param typeFilter Optional type filter, may be null
+     * @param limit Maximum number of places, ordered by distance; 0 for all places, base rows in index order first
+     * @param partitions Partitioning of the search
+     * @return The places within the radius
+     */
+    public NearbyMatches findNearby(double latitude, double longitude, double radiusKm, TypeFilter typeFilter,
+                                    int limit, SearchPartitions partitions) {
+        List<NearbyMatches> parts = new ArrayList<>();
+        ImmutableRoaringBitmap rowFilter = baseFilter(typeFilter);
+        if (gridIndex.size() > 0 && (rowFilter == null || !rowFilter.isEmpty())) {
+            CellCovering covering = CellCovering.ofCircle(latitude, longitude, radiusKm,
+                GeoGridIndex.MAX_COVERING_CELLS);
+            int[] ranges = gridIndex.positionRanges(covering);
+            DistanceKernel.Query query = new DistanceKernel.Query(latitude, longitude, radiusKm);
+            long candidates = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                candidates += ranges[i + 1] - ranges[i];
+            }
+
+            int count = candidates < SearchPartitions.MIN_PARALLEL_CANDIDATES ? 1 : partitions.count();
+            List<Callable<NearbyMatches>> tasks = new ArrayList<>(count);
+            for (int p = 0; p < count; p++) {
+                int lo = SearchPartitions.start(p, count, gridIndex.size());
+                int hi = SearchPartitions.start(p + 1, count, gridIndex.size());
+                if (touches(ranges, lo, hi)) {
+                    tasks.add(() -> {
+                        int[] rows = gridIndex.findRowsWithinRadius(covering, ranges, query, rowFilter, lo, hi);
+                        double[] distances = new double[rows.length];
+                        for (int i = 0; i < rows.length; i++) {
+                            distances[i] = GeoUtils.distanceKm(latitude, longitude,
+                                table.latitude(rows[i]), table.longitude(rows[i]));
+                        }
+                        NearbyMatches matches = new NearbyMatches(rows, distances);
+                        return limit > 0 ? matches.closest(limit) : matches;
+                    });
+                }
+            }
+            parts.addAll(partitions.invokeAll(tasks));
+        }
+
+        if (delta.size() > 0) {
+            NearbyMatches matches = findDeltaWithinRadius(latitude, longitude, radiusKm, typeFilter);
+            parts.add(limit > 0 ? matches.closest(limit) : matches);
+        }
+        return limit > 0 ? NearbyMatches.mergeClosest(parts, limit) : NearbyMatches.concat(parts);
+    }
+
+    /**
+     * Finds the base rows within the given radius, hidden rows included.
+     * Versions derived with {@link #withChanges} share their base and only ever
+     * hide more of its rows, so the result stays a superset of the visible base
+     * rows for as long as the base version is the same; callers drop the rows
+     * {@link #isHidden} and add {@link #findDeltaWithinRadius}.
+     *
+     * @return Base row ids within the radius, in index order
+     */
+    public int[] findBaseRowsWithinRadius(double latitude, double longitude, double radiusKm,
+                                          TypeFilter typeFilter) {
+        return gridIndex.findRowsWithinRadius(latitude, longitude, radiusKm,
+            typeFilter == null ? null : typeFilter.evaluate(typeIndex));
+    }
+
+    /**
+     * @return Whether the base row is hidden by a change applied on top of the indexes
+     */
+    public boolean isHidden(int row) {
+        return hiddenRows.contains(row);
+    }
+
+    /**
+     * Finds the changed places within the given radius, which the indexes do not cover
+     *
+     * @return Delta rows within the radius with their distances, in delta order
+     */
+    public NearbyMatches findDeltaWithinRadius(double latitude, double longitude, double radiusKm,
+                                               TypeFilter typeFilter) {
+        int[] rows = new int[delta.size()];
+        double[] distances = new double[delta.size()];
+        int count = 0;
+        for (int i = 0; i < delta.size(); i++) {
+            double distanceKm = deltaDistanceKm(i, latitude, longitude, radiusKm);
+            if (matches(i, typeFilter) && distanceKm <= radiusKm) {
+                rows[count] = baseSize() + i;
+                distances[count++] = distanceKm;
+            }
+        }
+        return new NearbyMatches(Arrays.copyOf(rows, count), Arrays.copyOf(distances, count));
+    }
+
+    /**
+     * Finds the rows of all places inside the given box
+     *
+     * @param box The box to search, crossing the antimeridian when minLng > maxLng
+     * @param typeFilter Optional type filter, may be null
+     * @return Row ids of the places inside the box, base rows in index order first
+     */
+    public int[] findRowsWithinBox(BoundingBox box, TypeFilter typeFilter) {
+        int[] rows = gridIndex.findRowsWithinBox(box, baseFilter(typeFilter));
+        if (delta.size() == 0) {
+            return rows;
+        }
+        int count = rows.length;
+        rows = Arrays.copyOf(rows, count + delta.size());
+        for (int i = 0; i < delta.size(); i++) {
+            if (matches(i, typeFilter) && box.contains(deltaLatitudes[i], deltaLongitudes[i])) {
+                rows[count++] = baseSize() + i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Finds the k places closest to the given point
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param k Maximum number of places to return
+     * @param typeFilter Optional type filter, may be null
+     * @return Up to k places ordered by increasing distance
+     */
+    public List<PlaceRTree.Neighbor> nearest(double latitude, double longitude, int k, TypeFilter typeFilter) {
+        List<PlaceRTree.Neighbor> nearest = rTree.nearest(latitude, longitude, k, predicate(baseFilter(typeFilter)));
+        if (delta.size() == 0) {
+            return nearest;
+        }
+        // Only delta places closer than the k-th base place can make it into the result
+        double maxDistanceKm = nearest.size() < k ? Double.POSITIVE_INFINITY
+            : nearest.get(nearest.size() - 1).getDistanceKm();
+        nearest.addAll(deltaNeighbors(latitude, longitude, maxDistanceKm, typeFilter));
+        nearest.sort(Comparator.comparingDouble(PlaceRTree.Neighbor::getDistanceKm));
+        return nearest.size() > k ? new ArrayList<>(nearest.subList(0, k)) : nearest;
+    }
+
+    /**
+     * Streams the places within the given distance in increasing order of
+     * (distance, placeId, rowId), optionally resuming after a previously
+     * returned place. See {@link PlaceRTree#scan}.
+     *
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param maxDistanceKm Places further away are never returned
+     * @param typeFilter Optional type filter, may be null
+     * @param afterDistanceKm Distance of the place to resume after, negative to start from the beginning
+     * @param afterPlaceId Place id of the place to resume after
+     * @param afterRowId Row id of the place to resume after
+     * @return Iterator over the places in distance order
+     */
+    public Iterator<PlaceRTree.Neighbor> scan(double latitude, double longitude, double maxDistanceKm,
+                                              TypeFilter typeFilter, double afterDistanceKm, String afterPlaceId,
+                                              int afterRowId) {
+        Iterator<PlaceRTree.Neighbor> base = rTree.scan(latitude, longitude, maxDistanceKm,
+            predicate(baseFilter(typeFilter)), afterDistanceKm, afterPlaceId, afterRowId);
+        if (delta.size() == 0) {
+            return base;
+        }
+
+        List<PlaceRTree.Neighbor> changed = deltaNeighbors(latitude, longitude, maxDistanceKm, typeFilter);
+        changed.sort(this::compare);
+        if (afterDistanceKm >= 0) {
+            PlaceRTree.Neighbor after = new PlaceRTree.Neighbor(afterRowId, afterDistanceKm);
+            changed.removeIf(neighbor -> compare(neighbor, after, afterPlaceId) <= 0);
+        }
+        return new MergedScan(base, changed.iterator());
+    }
+
+    /**
+     * Finds the places within the radius whose name or address matches the
+     * query. See {@link TextIndex#search}.
+     *
+     * @param query Free text query
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param limit Maximum number of hits
+     * @return Up to limit hits, best first
+     */
+    public List<TextIndex.Hit> search(String query, double latitude, double longitude, double radiusKm, int limit) {
+        List<TextIndex.Hit> hits = textIndex.search(query, gridIndex, table, latitude, longitude, radiusKm, limit,
+            hiddenRows.isEmpty() ? null : hiddenRows);
+        if (delta.size() == 0) {
+            return hits;
+        }
+        hits.addAll(TextIndex.searchRows(query, table, baseSize(), table.size(), latitude, longitude,
+            radiusKm, limit));
+        hits.sort(Comparator.comparingDouble(TextIndex.Hit::getScore).reversed());
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * @return Table of the base rows followed by the delta rows
+     */
+    public PlaceTable getTable() {
+        return table;
+    }
+
+    public GeoGridIndex getGridIndex() {
+        return gridIndex;
+    }
+
+    public PlaceRTree getRTree() {
+        return rTree;
+    }
+
+    public TypeIndex getTypeIndex() {
+        return typeIndex;
+    }
+
+    public TextIndex getTextIndex() {
+        return textIndex;
+    }
+
+    /**
+     * @return Number identifying the base rows and indexes, the same for all
+     *         snapshots derived from one another with {@link #withChanges}
+     */
+    public long getBaseVersion() {
+        return baseRows.version;
+    }
+
+    /**
+     * @return Number of places, not counting hidden base rows
+     */
+    public int size() {
+        return baseSize() - hiddenRows.getCardinality() + delta.size();
+    }
+
+    /**
+     * @return Number of places kept outside the indexes
+     */
+    public int deltaSize() {
+        return delta.size();
+    }
+
+    /**
+     * @return Whether changes have been applied since the indexes were built
+     */
+    public boolean hasChanges() {
+        return delta.size() > 0 || !hiddenRows.isEmpty();
+    }
+
+    private int baseSize() {
+        return baseRows.table.size();
+    }
+
+    /**
+     * @return Base rows allowed by the type filter and not hidden, null if every row is allowed
+     */
+    private ImmutableRoaringBitmap baseFilter(TypeFilter typeFilter) {
+        ImmutableRoaringBitmap typeRows = typeFilter == null ? null : typeFilter.evaluate(typeIndex);
+        if (visibleRows == null) {
+            return typeRows;
+        }
+        return typeRows == null ? visibleRows : ImmutableRoaringBitmap.and(typeRows, visibleRows);
+    }
+
+    /**
+     * @return Whether any of the position ranges overlaps [lo, hi)
+     */
+    private static boolean touches(int[] ranges, int lo, int hi) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] < hi && ranges[i + 1] > lo && ranges[i] < ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static IntPredicate predicate(ImmutableRoaringBitmap rows) {
+        return rows == null ? null : rows::contains;
+    }
+
+    private boolean matches(int deltaRow, TypeFilter typeFilter) {
+        return typeFilter == null || typeFilter.matches(deltaTypes.get(deltaRow));
+    }
+
+    private List<PlaceRTree.Neighbor> deltaNeighbors(double latitude, double longitude, double maxDistanceKm,
+                                                     TypeFilter typeFilter) {
+        List<PlaceRTree.Neighbor> neighbors = new ArrayList<>();
+        for (int i = 0; i < delta.size(); i++) {
+            if (!matches(i, typeFilter)) {
+                continue;
+            }
+            double distanceKm = deltaDistanceKm(i, latitude, longitude, maxDistanceKm);
+            if (distanceKm <= maxDistanceKm) {
+                neighbors.add(new PlaceRTree.Neighbor(baseSize() + i, distanceKm));
+            }
+        }
+        return neighbors;
+    }
+
+    /**
+     * @return Distance to the delta place, or infinity if its latitude alone puts it beyond maxDistanceKm
+     */
+    private double deltaDistanceKm(int deltaRow, double latitude, double longitude, double maxDistanceKm) {
+        // A great circle is never shorter than the meridian arc between its latitudes; the slack absorbs rounding
+        double meridianKm = Math.toRadians(Math.abs(latitude - deltaLatitudes[deltaRow])) * GeoUtils.EARTH_RADIUS_KM;
+        if (meridianKm > maxDistanceKm + 1e-6) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return GeoUtils.distanceKm(latitude, longitude, deltaLatitudes[deltaRow], deltaLongitudes[deltaRow]);
+    }
+
+    private int compare(PlaceRTree.Neighbor a, PlaceRTree.Neighbor b) {
+        return compare(a, b, table.placeId(b.getRowId()));
+    }
+
+    private int compare(PlaceRTree.Neighbor a, PlaceRTree.Neighbor b, String placeIdOfB) {
+        int order = Double.compare(a.getDistanceKm(), b.getDistanceKm());
+        if (order == 0) {
+            order = PLACE_ID_ORDER.compare(table.placeId(a.getRowId()), placeIdOfB);
+        }
+        return order != 0 ? order : Integer.compare(a.getRowId(), b.getRowId());
+    }
+
+    /**
+     * Merges the base scan with the sorted delta neighbours
+     */
+    private final class MergedScan implements Iterator<PlaceRTree.Neighbor> {
+
+        private final Iterator<PlaceRTree.Neighbor> base;
+        private final Iterator<PlaceRTree.Neighbor> changed;
+        private PlaceRTree.Neighbor nextBase;
+        private PlaceRTree.Neighbor nextChanged;
+
+        MergedScan(Iterator<PlaceRTree.Neighbor> base, Iterator<PlaceRTree.Neighbor> changed) {
+            this.base = base;
+            this.changed = changed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextBase == null && base.hasNext()) {
+                nextBase = base.next();
+            }
+            if (nextChanged == null && changed.hasNext()) {
+                nextChanged = changed.next();
+            }
+            return nextBase != null || nextChanged != null;
+        }
+
+        @Override
+        public PlaceRTree.Neighbor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PlaceRTree.Neighbor next;
+            if (nextChanged == null || (nextBase != null && compare(nextBase, nextChanged) < 0)) {
+                next = nextBase;
+                nextBase = null;
+            } else {
+                next = nextChanged;
+                nextChanged = null;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * The base table with a lookup of its rows by place id, built on the first
+     * change and shared by all snapshots derived from the same base
+     */
+    private static final class BaseRows {
+
+        private static final AtomicLong VERSIONS = new AtomicLong();
+
+        final PlaceTable table;
+        final long version = VERSIONS.incrementAndGet();
+        private long[] sortedIds;
+        private int[] rowsById;
+
+        BaseRows(PlaceTable table) {
+            this.table = table;
+        }
+
+        /**
+         * @return Row of the place with the given id, -1 if the base has none
+         */
+        synchronized int row(long id) {
+            if (sortedIds == null) {
+                index();
+            }
+            int index = Arrays.binarySearch(sortedIds, id);
+            return index < 0 ? -1 : rowsById[index];
+        }
+
+        private void index() {
+            int size = table.size();
+            long[] keys = new long[size];
+            for (int row = 0; row < size; row++) {
+                keys[row] = table.id(row);
+            }
+            Integer[] order = new Integer[size];
+            for (int row = 0; row < size; row++) {
+                order[row] = row;
+            }
+            Arrays.sort(order, Comparator.comparingLong(row -> keys[row]));
+            sortedIds = new long[size];
+            rowsById = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedIds[i] = keys[order[i]];
+                rowsById[i] = order[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.nearbyplaces.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of a {@link PlaceSnapshot} that can be memory-mapped at startup.
+ *
+ * Layout (little-endian, every section 8-byte aligned):
+ * <pre>
+ * header     magic, version, row count, flags, reserved, section offsets
+ * rows       latitude[n], longitude[n], rating[n] as doubles, id[n] as longs
+ * strings    (offset, length) int pairs for name, address, placeId and types of every row
+ * pool       UTF-8 bytes referenced by the string section
+ * grid       cell ids and coordinate columns of the {@link GeoGridIndex}
+ * types      serialized row bitmaps of the {@link TypeIndex}
+ * rtree      node boxes, child ranges and leaf entries of the {@link PlaceRTree}
+ * text       gram keys and serialized posting bitmaps of the {@link TextIndex}
+ * </pre>
+ * All of them are served directly from the mapped pages, so opening a file
+ * takes the same time and heap whatever the number of places. What is still
+ * built on the heap per place is outside the file: the place id lookup of the
+ * snapshot, created on the first lookup, the autocomplete trie and the
+ * cluster pyramids.
+ */
+public final class PlaceSnapshotFile {
+
+    private static final int MAGIC = 0x4E50534E;
+    private static final int VERSION = 5;
+    private static final int HEADER_BYTES = 128;
+    private static final int FLAG_ROWS_IN_CELL_ORDER = 1;
+
+    private PlaceSnapshotFile() {}
+
+    /**
+     * Writes the snapshot to the given path. The file is written next to the
+     * target first and then moved into place, so readers never see a partial file.
+     *
+     * @param snapshot Snapshot to write, without changes applied on top of its indexes
+     * @param path Target file
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the snapshot has changes applied
+     */
+    public static void write(PlaceSnapshot snapshot, Path path) throws IOException {
+        if (snapshot.hasChanges()) {
+            throw new IllegalArgumentException("Snapshot has changes that are not indexed yet");
+        }
+        PlaceTable table = snapshot.getTable();
+        int size = table.size();
+
+        byte[][] strings = new byte[size * MappedPlaceTable.STRING_FIELDS][];
+        long poolBytes = 0;
+        for (int row = 0; row < size; row++) {
+            strings[row * MappedPlaceTable.STRING_FIELDS + MappedPlaceTable.NAME] = encode(table.name(row));
+            strings[row * MappedPlaceTable.STRING_FIELDS + MappedPlaceTable.ADDRESS] = encode(table.address(row));
+            strings[row * MappedPlaceTable.STRING_FIELDS + MappedPlaceTable.PLACE_ID] = encode(table.placeId(row));
+            strings[row * MappedPlaceTable.STRING_FIELDS + MappedPlaceTable.TYPES] =
+                encode(String.join(MappedPlaceTable.TYPE_SEPARATOR, table.types(row)));
+        }
+        for (byte[] bytes : strings) {
+            poolBytes += bytes == null ? 0 : bytes.length;
+        }
+
+        long rowsOffset = HEADER_BYTES;
+        long stringRefsOffset = align(rowsOffset + MappedPlaceTable.rowsByteSize(size));
+        long poolOffset = align(stringRefsOffset + MappedPlaceTable.stringRefsByteSize(size));
+        long gridOffset = align(poolOffset + poolBytes);
+        long typesOffset = align(gridOffset + GeoGridIndex.byteSize(size));
+        long rTreeOffset = align(typesOffset + snapshot.getTypeIndex().byteSize());
+        long textOffset = align(rTreeOffset + snapshot.getRTree().byteSize());
+        long fileSize = textOffset + snapshot.getTextIndex().byteSize();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + fileSize + " bytes exceeds the 2GB mapping limit");
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(PlaceColumns.ORDER);
+
+            int flags = snapshot.getGridIndex().isRowsInCellOrder() ? FLAG_ROWS_IN_CELL_ORDER : 0;
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(flags)
+                .putLong(0)
+                .putLong(rowsOffset).putLong(stringRefsOffset).putLong(poolOffset)
+                .putLong(poolBytes).putLong(gridOffset).putLong(typesOffset)
+                .putLong(rTreeOffset).putLong(textOffset);
+
+            buffer.position((int) rowsOffset);
+            for (int row = 0; row < size; row++) {
+                buffer.putDouble(table.latitude(row));
+            }
+            for (int row = 0; row < size; row++) {
+                buffer.putDouble(table.longitude(row));
+            }
+            for (int row = 0; row < size; row++) {
+                buffer.putDouble(table.rating(row));
+            }
+            for (int row = 0; row < size; row++) {
+                buffer.putLong(table.id(row));
+            }
+
+            buffer.position((int) stringRefsOffset);
+            int poolPosition = 0;
+            for (byte[] bytes : strings) {
+                buffer.putInt(poolPosition).putInt(bytes == null ? -1 : bytes.length);
+                poolPosition += bytes == null ? 0 : bytes.length;
+            }
+
+            buffer.position((int) poolOffset);
+            for (byte[] bytes : strings) {
+                if (bytes != null) {
+                    buffer.put(bytes);
+                }
+            }
+
+            buffer.position((int) gridOffset);
+            snapshot.getGridIndex().writeTo(buffer);
+
+            buffer.position((int) typesOffset);
+            snapshot.getTypeIndex().writeTo(buffer);
+
+            buffer.position((int) rTreeOffset);
+            snapshot.getRTree().writeTo(buffer);
+
+            buffer.position((int) textOffset);
+            snapshot.getTextIndex().writeTo(buffer);
+            buffer.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot file into memory
+     *
+     * @param path Snapshot file
+     * @param kernel Kernel used for the exact distance checks
+     * @return Snapshot backed by the mapped file
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static PlaceSnapshot open(Path path, DistanceKernel kernel) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + channel.size());
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(PlaceColumns.ORDER);
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a place snapshot file: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        int size = buffer.getInt(8);
+        boolean rowsInCellOrder = (buffer.getInt(12) & FLAG_ROWS_IN_CELL_ORDER) != 0;
+        int rowsOffset = (int) buffer.getLong(24);
+        int stringRefsOffset = (int) buffer.getLong(32);
+        int poolOffset = (int) buffer.getLong(40);
+        int poolBytes = (int) buffer.getLong(48);
+        int gridOffset = (int) buffer.getLong(56);
+        int typesOffset = (int) buffer.getLong(64);
+        int rTreeOffset = (int) buffer.getLong(72);
+        int textOffset = (int) buffer.getLong(80);
+        if ((long) gridOffset + GeoGridIndex.byteSize(size) > typesOffset || typesOffset > rTreeOffset
+                || rTreeOffset > textOffset || textOffset > buffer.capacity()) {
+            throw new IOException("Truncated snapshot file: " + path);
+        }
+
+        MappedPlaceTable table = new MappedPlaceTable(size,
+            PlaceColumns.slice(buffer, rowsOffset, (int) MappedPlaceTable.rowsByteSize(size)),
+            PlaceColumns.slice(buffer, stringRefsOffset, (int) MappedPlaceTable.stringRefsByteSize(size)),
+            PlaceColumns.slice(buffer, poolOffset, poolBytes));
+        GeoGridIndex gridIndex = GeoGridIndex.wrap(buffer, gridOffset, size, rowsInCellOrder, kernel);
+        TypeIndex typeIndex = TypeIndex.read(PlaceColumns.slice(buffer, typesOffset, rTreeOffset - typesOffset));
+        PlaceRTree rTree = PlaceRTree.wrap(buffer, rTreeOffset, table);
+        TextIndex textIndex = TextIndex.wrap(buffer, textOffset);
+
+        return new PlaceSnapshot(table, gridIndex, rTree, typeIndex, textIndex);
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
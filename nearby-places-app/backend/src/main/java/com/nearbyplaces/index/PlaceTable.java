@@ -0,0 +1,37 @@
+package com.nearbyplaces.index;
+
+import java.util.List;
+
+/**
+ * Read-only row view of the place catalogue used by the spatial indexes.
+ * Rows are addressed by a dense int id in [0, size).
+ */
+public interface PlaceTable {
+
+    int size();
+
+    /**
+     * @return The primary key of the place, -1 if it has none
+     */
+    long id(int row);
+
+    double latitude(int row);
+
+    double longitude(int row);
+
+    /**
+     * @return The rating, or NaN if the place has none
+     */
+    double rating(int row);
+
+    String name(int row);
+
+    String address(int row);
+
+    String placeId(int row);
+
+    /**
+     * @return The place types, empty if the place has none
+     */
+    List<String> types(int row);
+}
@@ -0,0 +1,22 @@
+package com.nearbyplaces.index;
+
+/**
+ * Plain loop implementation, used when the Vector API is not available
+ */
+public final class ScalarDistanceKernel implements DistanceKernel {
+
+    @Override
+    public int collectWithin(PlaceColumns columns, int from, int to, Query query, int[] out, int count) {
+        for (int i = from; i < to; i++) {
+            int offset = i * Double.BYTES;
+            double cosDeltaLng = columns.cosLng.getDouble(offset) * query.cosLng
+                + columns.sinLng.getDouble(offset) * query.sinLng;
+            double cosAngle = columns.sinLat.getDouble(offset) * query.sinLat
+                + columns.cosLat.getDouble(offset) * query.cosLat * cosDeltaLng;
+            if (cosAngle >= query.minCos) {
+                out[count++] = columns.rowId(i);
+            }
+        }
+        return count;
+    }
+}
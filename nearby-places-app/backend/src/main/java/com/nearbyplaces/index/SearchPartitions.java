@@ -0,0 +1,84 @@
+package com.nearbyplaces.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits spatial searches into partitions that run in parallel.
+ *
+ * A partition is a slice of the {@link GeoGridIndex} positions. Positions are
+ * sorted along the Hilbert curve, so every partition is one contiguous curve
+ * range, i.e. a compact region, and all partitions hold the same number of
+ * places however unevenly the places are spread. A search only forks the
+ * partitions its covering touches, onto a work-stealing pool; the calling
+ * thread works one partition itself. Searches with fewer than
+ * {@link #MIN_PARALLEL_CANDIDATES} candidates are not split, as forking would
+ * cost more than it saves.
+ */
+public final class SearchPartitions {
+
+    /**
+     * Number of candidate places below which a search runs on the calling thread
+     */
+    public static final int MIN_PARALLEL_CANDIDATES = 16384;
+
+    /**
+     * Runs every search as a single partition on the calling thread
+     */
+    public static final SearchPartitions SEQUENTIAL = new SearchPartitions(1, null);
+
+    private final int count;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param count Number of partitions
+     * @param pool Pool running the partitions, may only be null for a single partition
+     */
+    public SearchPartitions(int count, ForkJoinPool pool) {
+        if (count < 1 || (count > 1 && pool == null)) {
+            throw new IllegalArgumentException("Partitions need a count of at least 1 and a pool if more than one");
+        }
+        this.count = count;
+        this.pool = pool;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * First position of a partition; partition p holds the positions
+     * [start(p, size), start(p + 1, size))
+     */
+    static int start(int partition, int partitions, int size) {
+        return (int) ((long) partition * size / partitions);
+    }
+
+    /**
+     * Runs the tasks, all but the first on the pool
+     *
+     * @return Their results in task order
+     */
+    <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<ForkJoinTask<T>> forked = new ArrayList<>(tasks.size());
+        for (int i = 1; i < tasks.size(); i++) {
+            forked.add(pool.submit(tasks.get(i)));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        if (!tasks.isEmpty()) {
+            try {
+                results.add(tasks.get(0).call());
+            } catch (Exception e) {
+                forked.forEach(task -> task.cancel(false));
+                throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+        }
+        for (ForkJoinTask<T> task : forked) {
+            results.add(task.join());
+        }
+        return results;
+    }
+}
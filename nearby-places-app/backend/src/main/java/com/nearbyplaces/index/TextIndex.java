@@ -0,0 +1,423 @@
+package com.nearbyplaces.index;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram inverted index over place names and addresses.
+ *
+ * Text is folded to lower case without diacritics and every word is padded with
+ * a space on both sides before it is cut into trigrams, so word starts and ends
+ * weigh in. Posting lists are row bitmaps; since {@link PlaceSnapshot} keeps its
+ * rows in grid cell order they are sorted by spatial cell as well, and a search
+ * only walks the postings inside the grid ranges of the search circle instead
+ * of materialising every text match first.
+ *
+ * Postings are kept in little-endian buffers, so an index written into a
+ * snapshot file is searched straight from the mapped pages.
+ */
+public final class TextIndex {
+
+    /**
+     * Share of the query trigrams a field must contain to match
+     */
+    public static final double MIN_GRAM_MATCH = 0.5;
+
+    private static final int GRAM = 3;
+    private static final double ADDRESS_WEIGHT = 0.8;
+    private static final double TEXT_WEIGHT = 0.7;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Postings nameGrams;
+    private final Postings addressGrams;
+
+    private TextIndex(Postings nameGrams, Postings addressGrams) {
+        this.nameGrams = nameGrams;
+        this.addressGrams = addressGrams;
+    }
+
+    /**
+     * Builds the index over the names and addresses of all rows of the table
+     */
+    public static TextIndex build(PlaceTable table) {
+        Map<String, MutableRoaringBitmap> names = new HashMap<>();
+        Map<String, MutableRoaringBitmap> addresses = new HashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            for (String gram : grams(table.name(row))) {
+                names.computeIfAbsent(gram, g -> new MutableRoaringBitmap()).add(row);
+            }
+            for (String gram : grams(table.address(row))) {
+                addresses.computeIfAbsent(gram, g -> new MutableRoaringBitmap()).add(row);
+            }
+        }
+        return new TextIndex(Postings.of(names), Postings.of(addresses));
+    }
+
+    /**
+     * Wraps an index laid out as written by {@link #writeTo}. The postings
+     * stay backed by the buffer.
+     */
+    static TextIndex wrap(ByteBuffer buffer, int offset) {
+        Postings names = Postings.wrap(buffer, offset);
+        return new TextIndex(names, Postings.wrap(buffer, offset + (int) names.byteSize()));
+    }
+
+    /**
+     * @return Number of bytes {@link #writeTo} produces
+     */
+    long byteSize() {
+        return nameGrams.byteSize() + addressGrams.byteSize();
+    }
+
+    /**
+     * Writes the name postings followed by the address postings into the
+     * target buffer at its current position
+     */
+    void writeTo(ByteBuffer target) {
+        nameGrams.writeTo(target);
+        addressGrams.writeTo(target);
+    }
+
+    /**
+     * Finds the places within the radius whose name or address matches the
+     * query, ranked by a combination of text relevance and distance
+     *
+     * @param query Free text query
+     * @param grid Grid index of the same snapshot
+     * @param table Table of the same snapshot
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param limit Maximum number of hits
+     * @param excludedRows Optional bitmap of rows never returned, may be null
+     * @return Up to limit hits, best first
+     */
+    public List<Hit> search(String query, GeoGridIndex grid, PlaceTable table, double latitude, double longitude,
+                            double radiusKm, int limit, ImmutableRoaringBitmap excludedRows) {
+        List<String> grams = new ArrayList<>(grams(query));
+        List<Hit> result = new ArrayList<>();
+        if (grams.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        List<PeekableIntIterator> postings = new ArrayList<>();
+        List<Boolean> namePostings = new ArrayList<>();
+        for (String gram : grams) {
+            addPosting(nameGrams.get(gram), true, postings, namePostings);
+            addPosting(addressGrams.get(gram), false, postings, namePostings);
+        }
+        if (postings.isEmpty()) {
+            return result;
+        }
+        boolean[] isName = new boolean[postings.size()];
+        for (int i = 0; i < isName.length; i++) {
+            isName[i] = namePostings.get(i);
+        }
+
+        int[] ranges = grid.isRowsInCellOrder()
+            ? grid.rangesWithinRadius(latitude, longitude, radiusKm)
+            : new int[] {0, table.size()};
+        int minMatches = (int) Math.ceil(grams.size() * MIN_GRAM_MATCH);
+
+        // Min-heap of the best hits so far, its head is the one to evict
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a.score, b.score));
+        for (int r = 0; r < ranges.length; r += 2) {
+            int to = ranges[r + 1];
+            for (PeekableIntIterator posting : postings) {
+                posting.advanceIfNeeded(ranges[r]);
+            }
+
+            while (true) {
+                int row = Integer.MAX_VALUE;
+                for (PeekableIntIterator posting : postings) {
+                    if (posting.hasNext() && posting.peekNext() < to) {
+                        row = Math.min(row, posting.peekNext());
+                    }
+                }
+                if (row == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                int nameMatches = 0;
+                int addressMatches = 0;
+                for (int i = 0; i < postings.size(); i++) {
+                    PeekableIntIterator posting = postings.get(i);
+                    if (posting.hasNext() && posting.peekNext() == row) {
+                        posting.next();
+                        if (isName[i]) {
+                            nameMatches++;
+                        } else {
+                            addressMatches++;
+                        }
+                    }
+                }
+                if (Math.max(nameMatches, addressMatches) < minMatches
+                        || (excludedRows != null && excludedRows.contains(row))) {
+                    continue;
+                }
+
+                double distanceKm = GeoUtils.distanceKm(latitude, longitude, table.latitude(row), table.longitude(row));
+                if (distanceKm > radiusKm) {
+                    continue;
+                }
+                offer(best, limit, new Hit(row, score(nameMatches, addressMatches, grams.size(), distanceKm, radiusKm),
+                    distanceKm));
+            }
+        }
+        return drain(best);
+    }
+
+    /**
+     * Matches the rows [from, to) of the table one by one, scored the same way
+     * as {@link #search}. Meant for the few rows not covered by an index yet.
+     */
+    static List<Hit> searchRows(String query, PlaceTable table, int from, int to, double latitude, double longitude,
+                                double radiusKm, int limit) {
+        Set<String> grams = grams(query);
+        if (grams.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int minMatches = (int) Math.ceil(grams.size() * MIN_GRAM_MATCH);
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a.score, b.score));
+        for (int row = from; row < to; row++) {
+            double distanceKm = GeoUtils.distanceKm(latitude, longitude, table.latitude(row), table.longitude(row));
+            if (distanceKm > radiusKm) {
+                continue;
+            }
+            int nameMatches = matches(grams, grams(table.name(row)));
+            int addressMatches = matches(grams, grams(table.address(row)));
+            if (Math.max(nameMatches, addressMatches) >= minMatches) {
+                offer(best, limit, new Hit(row, score(nameMatches, addressMatches, grams.size(), distanceKm, radiusKm),
+                    distanceKm));
+            }
+        }
+        return drain(best);
+    }
+
+    /**
+     * Folds the text and cuts it into distinct padded word trigrams
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (text == null) {
+            return grams;
+        }
+        for (String word : words(text)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = " " + word + " ";
+            for (int i = 0; i + GRAM <= padded.length(); i++) {
+                grams.add(padded.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Folds the text to lower case without diacritics and splits it into words
+     */
+    static String[] words(String text) {
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+            .toLowerCase(Locale.ROOT)
+            .replace('\u0131', 'i');
+        return SEPARATORS.split(folded.strip());
+    }
+
+    private static double score(int nameMatches, int addressMatches, int gramCount, double distanceKm,
+                                double radiusKm) {
+        double relevance = Math.max(nameMatches, ADDRESS_WEIGHT * addressMatches) / gramCount;
+        double proximity = radiusKm > 0 ? 1 - distanceKm / radiusKm : 1;
+        return TEXT_WEIGHT * relevance + (1 - TEXT_WEIGHT) * proximity;
+    }
+
+    private static int matches(Set<String> queryGrams, Set<String> fieldGrams) {
+        int count = 0;
+        for (String gram : queryGrams) {
+            if (fieldGrams.contains(gram)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the hit if it is among the best limit hits so far
+     */
+    private static void offer(PriorityQueue<Hit> best, int limit, Hit hit) {
+        if (best.size() < limit) {
+            best.add(hit);
+        } else if (hit.score > best.peek().score) {
+            best.poll();
+            best.add(hit);
+        }
+    }
+
+    private static List<Hit> drain(PriorityQueue<Hit> best) {
+        List<Hit> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static void addPosting(ImmutableRoaringBitmap rows, boolean name, List<PeekableIntIterator> postings,
+                                   List<Boolean> namePostings) {
+        if (rows != null) {
+            postings.add(rows.getIntIterator());
+            namePostings.add(name);
+        }
+    }
+
+    /**
+     * Posting lists of one field, stored as gram keys sorted for a binary
+     * search, the offsets of their bitmaps and the serialized bitmaps:
+     * <pre>
+     * gram count, bitmap bytes   ints
+     * keys[n]                    longs, the three chars of a gram
+     * offsets[n]                 ints, relative to the first bitmap
+     * bitmaps                    serialized row bitmaps, padded to 8 bytes
+     * </pre>
+     */
+    private static final class Postings {
+
+        private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+        private final int gramCount;
+        private final int bitmapBytes;
+        private final ByteBuffer keys;
+        private final ByteBuffer offsets;
+        private final ByteBuffer bitmaps;
+
+        private Postings(ByteBuffer buffer, int offset) {
+            this.gramCount = buffer.getInt(offset);
+            this.bitmapBytes = buffer.getInt(offset + Integer.BYTES);
+            int keysOffset = offset + HEADER_BYTES;
+            int offsetsOffset = keysOffset + gramCount * Long.BYTES;
+            this.keys = PlaceColumns.slice(buffer, keysOffset, gramCount * Long.BYTES);
+            this.offsets = PlaceColumns.slice(buffer, offsetsOffset, gramCount * Integer.BYTES);
+            this.bitmaps = PlaceColumns.slice(buffer, offsetsOffset + gramCount * Integer.BYTES, bitmapBytes);
+        }
+
+        static Postings of(Map<String, MutableRoaringBitmap> rowsByGram) {
+            TreeMap<Long, MutableRoaringBitmap> sorted = new TreeMap<>();
+            long bitmapBytes = 0;
+            for (Map.Entry<String, MutableRoaringBitmap> entry : rowsByGram.entrySet()) {
+                entry.getValue().runOptimize();
+                sorted.put(key(entry.getKey()), entry.getValue());
+                bitmapBytes += entry.getValue().serializedSizeInBytes();
+            }
+
+            int gramCount = sorted.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) byteSize(gramCount, bitmapBytes)).order(PlaceColumns.ORDER);
+            buffer.putInt(gramCount).putInt((int) bitmapBytes);
+            for (long key : sorted.keySet()) {
+                buffer.putLong(key);
+            }
+            int bitmapOffset = 0;
+            for (MutableRoaringBitmap rows : sorted.values()) {
+                buffer.putInt(bitmapOffset);
+                bitmapOffset += rows.serializedSizeInBytes();
+            }
+            for (MutableRoaringBitmap rows : sorted.values()) {
+                rows.serialize(buffer);
+            }
+            return new Postings(buffer, 0);
+        }
+
+        static Postings wrap(ByteBuffer buffer, int offset) {
+            return new Postings(buffer, offset);
+        }
+
+        long byteSize() {
+            return byteSize(gramCount, bitmapBytes);
+        }
+
+        void writeTo(ByteBuffer target) {
+            int start = target.position();
+            target.putInt(gramCount).putInt(bitmapBytes);
+            for (ByteBuffer column : new ByteBuffer[] {keys, offsets, bitmaps}) {
+                target.put(column.duplicate().clear());
+            }
+            target.position(start + (int) byteSize());
+        }
+
+        /**
+         * @return Rows containing the gram, null if no row does
+         */
+        ImmutableRoaringBitmap get(String gram) {
+            long key = key(gram);
+            int low = 0;
+            int high = gramCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long found = keys.getLong(middle * Long.BYTES);
+                if (found < key) {
+                    low = middle + 1;
+                } else if (found > key) {
+                    high = middle - 1;
+                } else {
+                    int from = offsets.getInt(middle * Integer.BYTES);
+                    int to = middle + 1 < gramCount ? offsets.getInt((middle + 1) * Integer.BYTES) : bitmapBytes;
+                    return new ImmutableRoaringBitmap(PlaceColumns.slice(bitmaps, from, to - from));
+                }
+            }
+            return null;
+        }
+
+        private static long byteSize(int gramCount, long bitmapBytes) {
+            long size = HEADER_BYTES + (long) gramCount * (Long.BYTES + Integer.BYTES) + bitmapBytes;
+            return (size + 7) & ~7L;
+        }
+
+        private static long key(String gram) {
+            return (long) gram.charAt(0) << 32 | (long) gram.charAt(1) << 16 | gram.charAt(2);
+        }
+    }
+
+    /**
+     * A matching row with its combined score and distance
+     */
+    public static final class Hit {
+
+        private final int rowId;
+        private final double score;
+        private final double distanceKm;
+
+        Hit(int rowId, double score, double distanceKm) {
+            this.rowId = rowId;
+            this.score = score;
+            this.distanceKm = distanceKm;
+        }
+
+        public int getRowId() {
+            return rowId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.nearbyplaces.index;
+
+/**
+ * Bounded selection of the k best of a stream of candidates.
+ *
+ * Candidates are ranked by score, higher first, then by distance, closer
+ * first, then by id. A min-heap of capacity k keeps the best candidates seen so
+ * far with the worst of them at the root, so selecting k of n candidates costs
+ * O(n log k) and O(k) memory instead of sorting all n.
+ */
+public final class TopK {
+
+    private final int[] ids;
+    private final double[] scores;
+    private final double[] distances;
+    private int size;
+
+    /**
+     * @param k Number of candidates to keep
+     */
+    public TopK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        this.ids = new int[k];
+        this.scores = new double[k];
+        this.distances = new double[k];
+    }
+
+    /**
+     * Offers a candidate, keeping it if it ranks among the best k so far
+     */
+    public void offer(int id, double score, double distance) {
+        if (size < ids.length) {
+            set(size, id, score, distance);
+            siftUp(size++);
+        } else if (size > 0 && isWorse(ids[0], scores[0], distances[0], id, score, distance)) {
+            set(0, id, score, distance);
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all kept candidates
+     *
+     * @return Their ids, best first
+     */
+    public int[] drain() {
+        int[] result = new int[size];
+        while (size > 0) {
+            result[size - 1] = ids[0];
+            size--;
+            set(0, ids[size], scores[size], distances[size]);
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(index, parent)) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && isWorse(left, worst)) {
+                worst = left;
+            }
+            if (right < size && isWorse(right, worst)) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private boolean isWorse(int a, int b) {
+        return isWorse(ids[a], scores[a], distances[a], ids[b], scores[b], distances[b]);
+    }
+
+    private static boolean isWorse(int idA, double scoreA, double distanceA, int idB, double scoreB, double distanceB) {
+        int byScore = Double.compare(scoreA, scoreB);
+        if (byScore != 0) {
+            return byScore < 0;
+        }
+        int byDistance = Double.compare(distanceA, distanceB);
+        if (byDistance != 0) {
+            return byDistance > 0;
+        }
+        return idA > idB;
+    }
+
+    private void set(int index, int id, double score, double distance) {
+        ids[index] = id;
+        scores[index] = score;
+        distances[index] = distance;
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        double score = scores[a];
+        double distance = distances[a];
+        set(a, ids[b], scores[b], distances[b]);
+        set(b, id, score, distance);
+    }
+}
@@ -0,0 +1,93 @@
+package com.nearbyplaces.index;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed type query. Comma separated terms are alternatives (union) and
+ * space or plus separated types inside a term must all match (intersection):
+ * "cafe,restaurant" matches either type, "cafe+food,bar" matches places that
+ * are both cafe and food, or are a bar.
+ */
+public final class TypeFilter {
+
+    private final List<List<String>> terms;
+
+    private TypeFilter(List<List<String>> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * @param expression Type expression from the request
+     * @return The parsed filter, or null if the expression is empty
+     */
+    public static TypeFilter parse(String expression) {
+        if (expression == null || expression.isBlank()) {
+            return null;
+        }
+        List<List<String>> terms = new ArrayList<>();
+        for (String term : expression.split(",")) {
+            List<String> types = new ArrayList<>();
+            for (String type : term.split("[+\\s]+")) {
+                if (!type.isBlank()) {
+                    types.add(TypeIndex.normalize(type));
+                }
+            }
+            if (!types.isEmpty()) {
+                terms.add(types);
+            }
+        }
+        return terms.isEmpty() ? null : new TypeFilter(terms);
+    }
+
+    /**
+     * Evaluates the filter as bitmap unions and intersections
+     *
+     * @return Rows matching the filter
+     */
+    public ImmutableRoaringBitmap evaluate(TypeIndex index) {
+        MutableRoaringBitmap result = new MutableRoaringBitmap();
+        for (List<String> term : terms) {
+            ImmutableRoaringBitmap matches = index.rows(term.get(0));
+            for (int i = 1; i < term.size() && !matches.isEmpty(); i++) {
+                matches = ImmutableRoaringBitmap.and(matches, index.rows(term.get(i)));
+            }
+            result.or(matches);
+        }
+        return result;
+    }
+
+    /**
+     * @return Normalised form of the expression, equal for equivalent filters
+     */
+    public String key() {
+        List<String> normalised = new ArrayList<>(terms.size());
+        for (List<String> term : terms) {
+            List<String> types = new ArrayList<>(term);
+            Collections.sort(types);
+            normalised.add(String.join("+", types));
+        }
+        Collections.sort(normalised);
+        return String.join(",", normalised);
+    }
+
+    /**
+     * Checks a single list of types against the filter
+     */
+    public boolean matches(Collection<String> types) {
+        if (types == null) {
+            return false;
+        }
+        for (List<String> term : terms) {
+            if (types.containsAll(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.nearbyplaces.index;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from place type to the compressed bitmap of table rows
+ * having that type. Types are matched case-insensitively.
+ */
+public final class TypeIndex {
+
+    private static final ImmutableRoaringBitmap EMPTY = new MutableRoaringBitmap();
+
+    private final Map<String, ImmutableRoaringBitmap> rowsByType;
+
+    private TypeIndex(Map<String, ImmutableRoaringBitmap> rowsByType) {
+        this.rowsByType = rowsByType;
+    }
+
+    /**
+     * Builds the index over all rows of the given table
+     */
+    public static TypeIndex build(PlaceTable table) {
+        Map<String, MutableRoaringBitmap> bitmaps = new HashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            for (String type : table.types(row)) {
+                bitmaps.computeIfAbsent(normalize(type), t -> new MutableRoaringBitmap()).add(row);
+            }
+        }
+
+        Map<String, ImmutableRoaringBitmap> rowsByType = new TreeMap<>();
+        for (Map.Entry<String, MutableRoaringBitmap> entry : bitmaps.entrySet()) {
+            entry.getValue().runOptimize();
+            rowsByType.put(entry.getKey(), entry.getValue());
+        }
+        return new TypeIndex(rowsByType);
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}. The bitmaps stay backed by the buffer.
+     */
+    static TypeIndex read(ByteBuffer buffer) {
+        ByteBuffer source = buffer.duplicate().order(PlaceColumns.ORDER);
+        int typeCount = source.getInt();
+        Map<String, ImmutableRoaringBitmap> rowsByType = new TreeMap<>();
+        for (int i = 0; i < typeCount; i++) {
+            byte[] name = new byte[source.getInt()];
+            source.get(name);
+            int length = source.getInt();
+            ByteBuffer bitmap = source.slice().limit(length);
+            rowsByType.put(new String(name, StandardCharsets.UTF_8), new ImmutableRoaringBitmap(bitmap));
+            source.position(source.position() + length);
+        }
+        return new TypeIndex(rowsByType);
+    }
+
+    /**
+     * @return Number of bytes {@link #writeTo} produces
+     */
+    long byteSize() {
+        long size = Integer.BYTES;
+        for (Map.Entry<String, ImmutableRoaringBitmap> entry : rowsByType.entrySet()) {
+            size += 2 * Integer.BYTES + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                + entry.getValue().serializedSizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Writes all bitmaps into the target buffer at its current position
+     */
+    void writeTo(ByteBuffer target) {
+        target.putInt(rowsByType.size());
+        for (Map.Entry<String, ImmutableRoaringBitmap> entry : rowsByType.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            target.putInt(name.length).put(name);
+            target.putInt(entry.getValue().serializedSizeInBytes());
+            entry.getValue().serialize(target);
+        }
+    }
+
+    /**
+     * @return Rows having the given type, empty if the type is unknown
+     */
+    public ImmutableRoaringBitmap rows(String type) {
+        return rowsByType.getOrDefault(normalize(type), EMPTY);
+    }
+
+    public Set<String> types() {
+        return Collections.unmodifiableSet(rowsByType.keySet());
+    }
+
+    static String normalize(String type) {
+        return type.trim().toLowerCase(Locale.ROOT);
+    }
+}
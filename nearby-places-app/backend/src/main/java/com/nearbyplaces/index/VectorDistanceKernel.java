@@ -0,0 +1,48 @@
+package com.nearbyplaces.index;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SIMD implementation on top of the incubating Vector API. Only loaded through
+ * {@link DistanceKernels} after checking that jdk.incubator.vector is present.
+ */
+final class VectorDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarDistanceKernel tail = new ScalarDistanceKernel();
+
+    @Override
+    public int collectWithin(PlaceColumns columns, int from, int to, Query query, int[] out, int count) {
+        int lanes = SPECIES.length();
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+
+        for (; i < upper; i += lanes) {
+            int offset = i * Double.BYTES;
+            DoubleVector cosDeltaLng = load(columns.cosLng, offset).mul(query.cosLng)
+                .add(load(columns.sinLng, offset).mul(query.sinLng));
+            DoubleVector cosAngle = load(columns.cosLat, offset).mul(query.cosLat)
+                .mul(cosDeltaLng)
+                .add(load(columns.sinLat, offset).mul(query.sinLat));
+            VectorMask<Double> inside = cosAngle.compare(VectorOperators.GE, query.minCos);
+
+            long bits = inside.toLong();
+            while (bits != 0) {
+                out[count++] = columns.rowId(i + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+
+        return tail.collectWithin(columns, i, to, query, out, count);
+    }
+
+    private static DoubleVector load(ByteBuffer column, int offset) {
+        return DoubleVector.fromByteBuffer(SPECIES, column, offset, PlaceColumns.ORDER);
+    }
+}
@@ -1,10 +1,15 @@
 package com.nearbyplaces.model;
 
+import com.nearbyplaces.event.PlaceEntityListener;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
+import java.util.List;
 
 @Entity
-@Table(name = "places")
+@Table(name = "places", indexes = {
+    @Index(name = "idx_places_lat_lng", columnList = "latitude, longitude")
+})
+@EntityListeners(PlaceEntityListener.class)
 public class Place {
     
     @Id
@@ -29,6 +34,11 @@ public class Place {
     @Column
     private String placeId;
     
+    @ElementCollection
+    @CollectionTable(name = "place_types", joinColumns = @JoinColumn(name = "place_row_id"))
+    @Column(name = "type")
+    private List<String> types;
+    
     // Constructors
     public Place() {}
     
@@ -41,6 +51,11 @@ public class Place {
         this.placeId = placeId;
     }
     
+    public Place(String name, String address, BigDecimal latitude, BigDecimal longitude, BigDecimal rating, String placeId, List<String> types) {
+        this(name, address, latitude, longitude, rating, placeId);
+        this.types = types;
+    }
+    
     // Getters and Setters
     public Long getId() {
         return id;
@@ -97,4 +112,12 @@ public class Place {
     public void setPlaceId(String placeId) {
         this.placeId = placeId;
     }
+    
+    public List<String> getTypes() {
+        return types;
+    }
+    
+    public void setTypes(List<String> types) {
+        this.types = types;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.nearbyplaces.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Refresh bookkeeping of the stored reviews of a place. A place has a status
+ * once its reviews have been fetched, even if it has no reviews.
+ */
+@Entity
+@Table(name = "place_review_status", indexes = {
+    @Index(name = "idx_place_review_status_attempted_at", columnList = "attemptedAt")
+})
+public class PlaceReviewStatus {
+    
+    @Id
+    private String placeId;
+    
+    // Last successful fetch
+    @Column(nullable = false)
+    private Instant fetchedAt;
+    
+    // Last fetch attempt, successful or not
+    @Column(nullable = false)
+    private Instant attemptedAt;
+    
+    // Review requests since the last successful fetch
+    @Column(nullable = false)
+    private long requestCount;
+    
+    // Constructors
+    public PlaceReviewStatus() {}
+    
+    public PlaceReviewStatus(String placeId, Instant fetchedAt) {
+        this.placeId = placeId;
+        this.fetchedAt = fetchedAt;
+        this.attemptedAt = fetchedAt;
+    }
+    
+    // Getters and Setters
+    public String getPlaceId() {
+        return placeId;
+    }
+    
+    public void setPlaceId(String placeId) {
+        this.placeId = placeId;
+    }
+    
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+    
+    public void setFetchedAt(Instant fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+    
+    public Instant getAttemptedAt() {
+        return attemptedAt;
+    }
+    
+    public void setAttemptedAt(Instant attemptedAt) {
+        this.attemptedAt = attemptedAt;
+    }
+    
+    public long getRequestCount() {
+        return requestCount;
+    }
+    
+    public void setRequestCount(long requestCount) {
+        this.requestCount = requestCount;
+    }
+}
@@ -0,0 +1,131 @@
+package com.nearbyplaces.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Entity
+@Table(name = "reviews", indexes = {
+    @Index(name = "idx_reviews_place_id", columnList = "placeId")
+})
+public class Review {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String placeId;
+    
+    // Position in the upstream response, reviews are served in this order
+    @Column(nullable = false)
+    private int position;
+    
+    @Column
+    private String authorName;
+    
+    @Column(precision = 3, scale = 1)
+    private BigDecimal rating;
+    
+    @Column
+    private String relativeTimeDescription;
+    
+    @Column(length = 10000)
+    private String text;
+    
+    // SHA-256 of author, rating and text, identifying the review across refreshes
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+    
+    // Last time the upstream returned this review
+    @Column(nullable = false)
+    private Instant fetchedAt;
+    
+    // Constructors
+    public Review() {}
+    
+    public Review(String placeId, int position, String authorName, BigDecimal rating, String relativeTimeDescription,
+                  String text, String contentHash, Instant fetchedAt) {
+        this.placeId = placeId;
+        this.position = position;
+        this.authorName = authorName;
+        this.rating = rating;
+        this.relativeTimeDescription = relativeTimeDescription;
+        this.text = text;
+        this.contentHash = contentHash;
+        this.fetchedAt = fetchedAt;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getPlaceId() {
+        return placeId;
+    }
+    
+    public void setPlaceId(String placeId) {
+        this.placeId = placeId;
+    }
+    
+    public int getPosition() {
+        return position;
+    }
+    
+    public void setPosition(int position) {
+        this.position = position;
+    }
+    
+    public String getAuthorName() {
+        return authorName;
+    }
+    
+    public void setAuthorName(String authorName) {
+        this.authorName = authorName;
+    }
+    
+    public BigDecimal getRating() {
+        return rating;
+    }
+    
+    public void setRating(BigDecimal rating) {
+        this.rating = rating;
+    }
+    
+    public String getRelativeTimeDescription() {
+        return relativeTimeDescription;
+    }
+    
+    public void setRelativeTimeDescription(String relativeTimeDescription) {
+        this.relativeTimeDescription = relativeTimeDescription;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+    
+    public void setFetchedAt(Instant fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+}
@@ -1,5 +1,7 @@
 package com.nearbyplaces.repository;
 
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.index.GeoUtils;
 import com.nearbyplaces.model.Place;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -21,5 +23,73 @@ public interface PlaceRepository extends JpaRepository<Place, Long> {
                                  @Param("longitude") BigDecimal longitude, 
                                  @Param("radius") BigDecimal radius);
     
+    /**
+     * Two-stage radius query. The bounding box predicate on the indexed
+     * latitude/longitude columns narrows the scan first, then the haversine
+     * check runs only on the rows inside the box. Crossing the antimeridian is
+     * expressed as a second longitude range. The index is only sought on the
+     * latitude range, so every row of the latitude band is read and the cost
+     * grows with the radius.
+     */
+    @Query(value = "SELECT * FROM places p WHERE " +
+            "p.latitude BETWEEN :minLat AND :maxLat AND " +
+            "(p.longitude BETWEEN :minLng AND :maxLng OR p.longitude BETWEEN :wrapMinLng AND :wrapMaxLng) AND " +
+            "(2 * 6371 * asin(least(1, sqrt(" +
+            "power(sin(radians(p.latitude - :latitude) / 2), 2) + " +
+            "cos(radians(:latitude)) * cos(radians(p.latitude)) * " +
+            "power(sin(radians(p.longitude - :longitude) / 2), 2))))) <= :radius",
+            nativeQuery = true)
+    List<Place> findWithinBoundingBox(@Param("latitude") double latitude,
+                                      @Param("longitude") double longitude,
+                                      @Param("radius") double radius,
+                                      @Param("minLat") double minLat,
+                                      @Param("maxLat") double maxLat,
+                                      @Param("minLng") double minLng,
+                                      @Param("maxLng") double maxLng,
+                                      @Param("wrapMinLng") double wrapMinLng,
+                                      @Param("wrapMaxLng") double wrapMaxLng);
+    
+    /**
+     * Finds places within the radius using the bounding box prefilter
+     */
+    default List<Place> findNearbyPlacesWithinBoundingBox(double latitude, double longitude, double radius) {
+        BoundingBox box = GeoUtils.boundingBox(latitude, longitude, radius);
+        if (box.crossesAntimeridian()) {
+            return findWithinBoundingBox(latitude, longitude, radius,
+                box.getMinLat(), box.getMaxLat(), box.getMinLng(), 180.0, -180.0, box.getMaxLng());
+        }
+        return findWithinBoundingBox(latitude, longitude, radius,
+            box.getMinLat(), box.getMaxLat(), box.getMinLng(), box.getMaxLng(), box.getMinLng(), box.getMaxLng());
+    }
+    
+    @Query("SELECT p FROM Place p WHERE p.latitude BETWEEN :minLat AND :maxLat AND " +
+            "(p.longitude BETWEEN :minLng AND :maxLng OR p.longitude BETWEEN :wrapMinLng AND :wrapMaxLng)")
+    List<Place> findWithinLatLngRanges(@Param("minLat") BigDecimal minLat,
+                                       @Param("maxLat") BigDecimal maxLat,
+                                       @Param("minLng") BigDecimal minLng,
+                                       @Param("maxLng") BigDecimal maxLng,
+                                       @Param("wrapMinLng") BigDecimal wrapMinLng,
+                                       @Param("wrapMaxLng") BigDecimal wrapMaxLng);
+    
+    /**
+     * Finds places inside the box, crossing the antimeridian when minLng > maxLng
+     */
+    default List<Place> findWithinViewport(BoundingBox box) {
+        BigDecimal minLat = BigDecimal.valueOf(box.getMinLat());
+        BigDecimal maxLat = BigDecimal.valueOf(box.getMaxLat());
+        BigDecimal minLng = BigDecimal.valueOf(box.getMinLng());
+        BigDecimal maxLng = BigDecimal.valueOf(box.getMaxLng());
+        if (box.crossesAntimeridian()) {
+            return findWithinLatLngRanges(minLat, maxLat, minLng, BigDecimal.valueOf(180), BigDecimal.valueOf(-180), maxLng);
+        }
+        return findWithinLatLngRanges(minLat, maxLat, minLng, maxLng, minLng, maxLng);
+    }
+    
+    /**
+     * Loads all places with their types in a single query
+     */
+    @Query("SELECT DISTINCT p FROM Place p LEFT JOIN FETCH p.types")
+    List<Place> findAllWithTypes();
+    
     List<Place> findByPlaceId(String placeId);
 } 
\ No newline at end of file
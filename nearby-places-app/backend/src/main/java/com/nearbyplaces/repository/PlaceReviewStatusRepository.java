@@ -0,0 +1,32 @@
+package com.nearbyplaces.repository;
+
+import com.nearbyplaces.model.PlaceReviewStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface PlaceReviewStatusRepository extends JpaRepository<PlaceReviewStatus, String> {
+    
+    /**
+     * Find places not attempted since the given time, the most requested and
+     * then the longest unattempted first
+     */
+    @Query("SELECT s FROM PlaceReviewStatus s WHERE s.attemptedAt < :staleBefore " +
+            "ORDER BY s.requestCount DESC, s.attemptedAt ASC")
+    List<PlaceReviewStatus> findStale(@Param("staleBefore") Instant staleBefore, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE PlaceReviewStatus s SET s.requestCount = s.requestCount + :count WHERE s.placeId = :placeId")
+    int addRequests(@Param("placeId") String placeId, @Param("count") long count);
+    
+    @Modifying
+    @Query("UPDATE PlaceReviewStatus s SET s.attemptedAt = :attemptedAt WHERE s.placeId = :placeId")
+    int markAttempted(@Param("placeId") String placeId, @Param("attemptedAt") Instant attemptedAt);
+}
@@ -0,0 +1,23 @@
+package com.nearbyplaces.repository;
+
+import com.nearbyplaces.model.Review;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReviewRepository extends JpaRepository<Review, Long> {
+    
+    /**
+     * Find the stored reviews of a place in upstream order
+     */
+    List<Review> findByPlaceIdOrderByPositionAsc(String placeId);
+    
+    @Modifying
+    @Query("DELETE FROM Review r WHERE r.placeId = :placeId")
+    int deleteByPlaceId(@Param("placeId") String placeId);
+}
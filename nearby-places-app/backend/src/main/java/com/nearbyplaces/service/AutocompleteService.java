@@ -0,0 +1,94 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.CompletionResponse;
+import com.nearbyplaces.event.SnapshotReplacedEvent;
+import com.nearbyplaces.index.AutocompleteTrie;
+import com.nearbyplaces.index.PlaceSnapshot;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers type-ahead requests from an in-memory {@link AutocompleteTrie}.
+ *
+ * The trie is rebuilt on a background thread whenever the place snapshot is
+ * replaced and swapped in atomically once complete; requests keep using the
+ * previous trie meanwhile. If snapshots are replaced faster than tries can be
+ * built, only the latest pending one is built.
+ */
+@Service
+public class AutocompleteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutocompleteService.class);
+
+    @Value("${places.autocomplete.region-size-degrees:1.0}")
+    private double regionSizeDegrees;
+
+    @Value("${places.autocomplete.completions-per-node:10}")
+    private int completionsPerNode;
+
+    private final AtomicReference<AutocompleteTrie> trie = new AtomicReference<>();
+    private final ThreadPoolExecutor builder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, "autocomplete-builder");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    @EventListener
+    public void onSnapshotReplaced(SnapshotReplacedEvent event) {
+        PlaceSnapshot snapshot = event.getSnapshot();
+        builder.execute(() -> rebuild(snapshot));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Completes a prefix, preferring completions popular around the given location
+     *
+     * @param prefix Text typed so far
+     * @param latitude Optional latitude coordinate
+     * @param longitude Optional longitude coordinate
+     * @param limit Maximum number of completions
+     * @return Completions, empty until the first trie is built
+     */
+    public List<CompletionResponse> complete(String prefix, Double latitude, Double longitude, int limit) {
+        AutocompleteTrie current = trie.get();
+        List<CompletionResponse> completions = new ArrayList<>();
+        if (current == null) {
+            return completions;
+        }
+        boolean located = latitude != null && longitude != null;
+        for (AutocompleteTrie.Completion completion : current.complete(prefix,
+                located ? latitude : Double.NaN, located ? longitude : Double.NaN,
+                Math.min(limit, completionsPerNode))) {
+            completions.add(new CompletionResponse(completion.getText(), completion.getKind()));
+        }
+        return completions;
+    }
+
+    private void rebuild(PlaceSnapshot snapshot) {
+        try {
+            long start = System.currentTimeMillis();
+            AutocompleteTrie built = AutocompleteTrie.build(snapshot.getTable(), regionSizeDegrees, completionsPerNode);
+            trie.set(built);
+            logger.info("Built autocomplete trie with {} terms in {}ms",
+                built.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("Failed to build autocomplete trie: {}", e.getMessage());
+        }
+    }
+}
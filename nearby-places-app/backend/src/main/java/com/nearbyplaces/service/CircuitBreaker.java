@@ -0,0 +1,152 @@
+package com.nearbyplaces.service;
+
+/**
+ * Circuit breaker over a count-based sliding window of call outcomes.
+ *
+ * While closed, the outcomes of the last window-size calls are kept; once at
+ * least minimum-calls are recorded and the failure rate reaches the threshold,
+ * the breaker opens and rejects all calls. After the open duration it lets
+ * half-open-calls probes through: if all of them succeed it closes with an
+ * empty window, a single failure opens it again.
+ *
+ * Every state change starts a new generation. Outcomes are reported with the
+ * generation their call was admitted in, so a slow call admitted while closed
+ * cannot be mistaken for a probe.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Returned by {@link #tryAcquire} when the call is rejected
+     */
+    static final long REJECTED = -1;
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    /**
+     * @param windowSize Number of most recent calls the failure rate is computed over
+     * @param minimumCalls Number of calls needed before the breaker can open
+     * @param failureRateThreshold Failure rate in percent at which the breaker opens
+     * @param openDurationNanos Time the breaker stays open before probing
+     * @param halfOpenCalls Number of probes that must succeed to close again
+     */
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openDurationNanos,
+                   int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || halfOpenCalls < 1 || failureRateThreshold <= 0) {
+            throw new IllegalArgumentException("Circuit breaker sizes and threshold must be positive");
+        }
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationNanos;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * @return Generation to report the outcome with, or {@link #REJECTED}
+     */
+    synchronized long tryAcquire(long now) {
+        if (state == State.OPEN) {
+            if (now - openedAt < openDurationNanos) {
+                return REJECTED;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted == halfOpenCalls) {
+                return REJECTED;
+            }
+            probesStarted++;
+        }
+        return generation;
+    }
+
+    synchronized void onSuccess(long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++probesSucceeded == halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(long generation, long now) {
+        if (generation != this.generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open(now);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+                open(now);
+            }
+        }
+    }
+
+    /**
+     * Releases a call that ended without an outcome, e.g. because it was cancelled
+     */
+    synchronized void onIgnored(long generation) {
+        if (generation == this.generation && state == State.HALF_OPEN) {
+            probesStarted--;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Failure rate of the calls in the window in percent, 0 while it is empty
+     */
+    synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : 100.0 * failures / recorded;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            failures -= window[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        failures += failure ? 1 : 0;
+        next = (next + 1) % window.length;
+    }
+
+    private void open(long now) {
+        transition(State.OPEN);
+        openedAt = now;
+    }
+
+    private void transition(State target) {
+        state = target;
+        generation++;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        probesStarted = 0;
+        probesSucceeded = 0;
+    }
+}
@@ -0,0 +1,247 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.ClusterResponse;
+import com.nearbyplaces.event.PlaceChangedEvent;
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.index.ClusterPyramid;
+import com.nearbyplaces.index.TypeFilter;
+import com.nearbyplaces.model.Place;
+import com.nearbyplaces.repository.PlaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serves map clusters from cluster pyramids kept up to date with the places table.
+ *
+ * The pyramid over all places is built once at startup and then maintained from
+ * the {@link PlaceChangedEvent}s of committed transactions. Pyramids for type
+ * filters are derived from it on first use and maintained the same way; the
+ * oldest ones are dropped once more than max-filtered-pyramids exist.
+ *
+ * Changes committed while a rebuild reads the repository are buffered and
+ * replayed onto the new pyramid before it replaces the old one, whether or not
+ * the read already saw them.
+ */
+@Service
+public class ClusterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterService.class);
+
+    @Autowired
+    private PlaceRepository placeRepository;
+
+    @Value("${places.clusters.max-zoom:16}")
+    private int maxZoom;
+
+    @Value("${places.clusters.cells-per-tile:4}")
+    private int cellsPerTile;
+
+    @Value("${places.clusters.max-filtered-pyramids:32}")
+    private int maxFilteredPyramids;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, FilteredPyramid> filtered = new LinkedHashMap<>();
+    private ClusterPyramid all;
+    // Changes committed while a rebuild runs, null otherwise
+    private List<Change> rebuildChanges;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds all cluster pyramids from the repository
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            rebuildChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        ClusterPyramid pyramid = new ClusterPyramid(maxZoom, cellsPerTile);
+        try {
+            for (Place place : placeRepository.findAllWithTypes()) {
+                add(pyramid, place);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                rebuildChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Change change : rebuildChanges) {
+                update(pyramid, change.place, change.present);
+            }
+            rebuildChanges = null;
+            all = pyramid;
+            filtered.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Built cluster pyramid with {} places (zoom 0-{}) in {}ms",
+            pyramid.size(), maxZoom, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Applies a committed place change to every pyramid
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPlaceChanged(PlaceChangedEvent event) {
+        Place place = event.getPlace();
+        if (place.getId() == null) {
+            return;
+        }
+        boolean present = event.getType() != PlaceChangedEvent.Type.DELETED
+            && place.getLatitude() != null && place.getLongitude() != null;
+
+        lock.writeLock().lock();
+        try {
+            if (rebuildChanges != null) {
+                rebuildChanges.add(new Change(copyOf(place), present));
+            }
+            if (all == null) {
+                return;
+            }
+            update(all, place, present);
+            for (FilteredPyramid pyramid : filtered.values()) {
+                update(pyramid.pyramid, place, present && pyramid.filter.matches(place.getTypes()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the clusters of a map viewport
+     *
+     * @param box The viewport, crossing the antimeridian when minLng > maxLng
+     * @param zoom Map zoom level
+     * @param type Optional place type filter
+     * @return Clusters in the viewport, empty until the pyramid is built
+     */
+    public List<ClusterResponse> findClusters(BoundingBox box, int zoom, String type) {
+        TypeFilter typeFilter = TypeFilter.parse(type);
+
+        lock.readLock().lock();
+        try {
+            if (all == null) {
+                return new ArrayList<>();
+            }
+            if (typeFilter == null) {
+                return toResponses(all.clusters(box, zoom));
+            }
+            FilteredPyramid pyramid = filtered.get(typeFilter.key());
+            if (pyramid != null) {
+                return toResponses(pyramid.pyramid.clusters(box, zoom));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            FilteredPyramid pyramid = filtered.get(typeFilter.key());
+            if (pyramid == null) {
+                pyramid = new FilteredPyramid(typeFilter, all.filtered(typeFilter));
+                filtered.put(typeFilter.key(), pyramid);
+                if (filtered.size() > maxFilteredPyramids) {
+                    Iterator<FilteredPyramid> oldest = filtered.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                logger.debug("Built cluster pyramid for type {} with {} places",
+                    typeFilter.key(), pyramid.pyramid.size());
+            }
+            return toResponses(pyramid.pyramid.clusters(box, zoom));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void update(ClusterPyramid pyramid, Place place, boolean present) {
+        if (present) {
+            add(pyramid, place);
+        } else {
+            pyramid.remove(place.getId());
+        }
+    }
+
+    private static void add(ClusterPyramid pyramid, Place place) {
+        pyramid.add(place.getId(),
+            place.getLatitude().doubleValue(),
+            place.getLongitude().doubleValue(),
+            place.getRating() == null ? Double.NaN : place.getRating().doubleValue(),
+            place.getPlaceId(),
+            place.getTypes());
+    }
+
+    private static Place copyOf(Place place) {
+        Place copy = new Place(place.getName(), place.getAddress(), place.getLatitude(), place.getLongitude(),
+            place.getRating(), place.getPlaceId(), place.getTypes() == null ? null : new ArrayList<>(place.getTypes()));
+        copy.setId(place.getId());
+        return copy;
+    }
+
+    private static List<ClusterResponse> toResponses(List<ClusterPyramid.Cluster> clusters) {
+        List<ClusterResponse> responses = new ArrayList<>(clusters.size());
+        for (ClusterPyramid.Cluster cluster : clusters) {
+            responses.add(new ClusterResponse(
+                cluster.getLatitude(),
+                cluster.getLongitude(),
+                cluster.getCount(),
+                cluster.getTopPlaceId()
+            ));
+        }
+        return responses;
+    }
+
+    /**
+     * A change buffered during a rebuild, present is false for removed places
+     */
+    private static final class Change {
+
+        final Place place;
+        final boolean present;
+
+        Change(Place place, boolean present) {
+            this.place = place;
+            this.present = present;
+        }
+    }
+
+    private static final class FilteredPyramid {
+
+        final TypeFilter filter;
+        final ClusterPyramid pyramid;
+
+        FilteredPyramid(TypeFilter filter, ClusterPyramid pyramid) {
+            this.filter = filter;
+            this.pyramid = pyramid;
+        }
+    }
+}
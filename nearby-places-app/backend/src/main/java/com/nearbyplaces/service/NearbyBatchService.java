@@ -0,0 +1,204 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.NearbyBatchResponse;
+import com.nearbyplaces.dto.NearbyBatchResult;
+import com.nearbyplaces.dto.NearbyPlacesRequest;
+import com.nearbyplaces.dto.PlaceResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs many nearby searches of one request in parallel on a bounded pool
+ */
+@Service
+public class NearbyBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearbyBatchService.class);
+
+    @Autowired
+    private PlaceService placeService;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${places.batch.max-queries:500}")
+    private int maxQueries;
+
+    @Value("${places.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${places.batch.query-timeout-ms:2000}")
+    private long queryTimeoutMs;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Finds nearby places for every query of the batch. Queries run in parallel
+     * and each one is given up once it has run for the query timeout, so a
+     * slow query only fails its own result; time spent waiting for a pool
+     * thread does not count. A query given up on is interrupted, which stops
+     * its index scan and frees its thread for the queries still waiting.
+     *
+     * @param requests The queries, results are returned in the same order
+     * @return Distinct places and the per-query results referring to them
+     * @throws IllegalArgumentException if the batch or any of its queries is invalid
+     */
+    public NearbyBatchResponse findNearbyPlaces(List<NearbyPlacesRequest> requests) {
+        validate(requests);
+        long start = System.currentTimeMillis();
+
+        List<CompletableFuture<List<PlaceResponse>>> futures = new ArrayList<>(requests.size());
+        for (NearbyPlacesRequest request : requests) {
+            BatchQuery query = new BatchQuery(request);
+            pool.execute(query);
+            futures.add(query.result);
+        }
+
+        // Places shared by several queries are returned once
+        List<PlaceResponse> places = new ArrayList<>();
+        Map<List<Object>, Integer> placeIndexes = new HashMap<>();
+        List<NearbyBatchResult> results = new ArrayList<>(requests.size());
+        int failed = 0;
+        for (CompletableFuture<List<PlaceResponse>> future : futures) {
+            List<PlaceResponse> found;
+            try {
+                found = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch search was interrupted", e);
+            } catch (ExecutionException e) {
+                failed++;
+                boolean timedOut = e.getCause() instanceof TimeoutException;
+                if (!timedOut) {
+                    logger.error("Batch query failed: {}", e.getCause().getMessage());
+                }
+                results.add(new NearbyBatchResult(null, null, timedOut ? "Query timed out" : "Query failed"));
+                continue;
+            }
+
+            List<Integer> indexes = new ArrayList<>(found.size());
+            List<Double> distances = new ArrayList<>(found.size());
+            for (PlaceResponse place : found) {
+                distances.add(place.getDistance());
+                List<Object> key = Arrays.asList(place.getPlaceId(), place.getLatitude(), place.getLongitude());
+                Integer index = placeIndexes.get(key);
+                if (index == null) {
+                    index = places.size();
+                    placeIndexes.put(key, index);
+                    // Shared by queries with different centers, so distances are kept per query
+                    place.setDistance(null);
+                    places.add(place);
+                }
+                indexes.add(index);
+            }
+            results.add(new NearbyBatchResult(indexes, distances, null));
+        }
+
+        logger.info("Batch of {} queries returned {} distinct places ({} failed) in {}ms",
+            requests.size(), places.size(), failed, System.currentTimeMillis() - start);
+        return new NearbyBatchResponse(places, results);
+    }
+
+    private void validate(List<NearbyPlacesRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one query");
+        }
+        if (requests.size() > maxQueries) {
+            throw new IllegalArgumentException("Batch must contain at most " + maxQueries + " queries");
+        }
+
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            NearbyPlacesRequest request = requests.get(i);
+            if (request == null) {
+                errors.add("[" + i + "]: Query is required");
+                continue;
+            }
+            for (ConstraintViolation<NearbyPlacesRequest> violation : validator.validate(request)) {
+                errors.add("[" + i + "]." + violation.getPropertyPath() + ": " + violation.getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", errors));
+        }
+    }
+
+    /**
+     * One query of a batch, run on the pool. Once its result times out, the
+     * thread still running the query is interrupted; the interrupt never
+     * outlives the query, so it cannot hit the next task of the thread.
+     */
+    private final class BatchQuery implements Runnable {
+
+        final CompletableFuture<List<PlaceResponse>> result = new CompletableFuture<>();
+        private final NearbyPlacesRequest request;
+        // Guarded by this
+        private Thread runner;
+
+        BatchQuery(NearbyPlacesRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            // Started here rather than on submission, as most queries of a large batch wait in the queue
+            result.orTimeout(queryTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((found, e) -> {
+                    if (e instanceof TimeoutException) {
+                        interrupt();
+                    }
+                });
+            try {
+                result.complete(placeService.findNearbyPlaces(
+                    request.getLatitude(), request.getLongitude(), request.getRadius(), request.getType(),
+                    request.getSort(), request.getLimit()));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // Clears an interrupt that arrived after the query was done
+                Thread.interrupted();
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.nearbyplaces.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor of a paginated nearby search: the (distance, placeId,
+ * rowId) of the last place of a page. The distance is encoded bit-exact, so the
+ * next page resumes exactly after that place. The row id only separates places
+ * sharing a place id and is -1 for places that do not come from the index.
+ */
+final class NearbyCursor {
+
+    private final double distanceKm;
+    private final String placeId;
+    private final int rowId;
+
+    NearbyCursor(double distanceKm, String placeId, int rowId) {
+        this.distanceKm = distanceKm;
+        this.placeId = placeId;
+        this.rowId = rowId;
+    }
+
+    /**
+     * @param cursor Encoded cursor
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static NearbyCursor decode(String cursor) {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        // distance bits:row id[:place id], the place id is absent when null
+        String[] parts = value.split(":", 3);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        double distanceKm;
+        int rowId;
+        try {
+            distanceKm = Double.longBitsToDouble(Long.parseUnsignedLong(parts[0], 16));
+            rowId = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!(distanceKm >= 0)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new NearbyCursor(distanceKm, parts.length == 3 ? parts[2] : null, rowId);
+    }
+
+    String encode() {
+        String value = Long.toHexString(Double.doubleToLongBits(distanceKm)) + ":" + rowId
+            + (placeId == null ? "" : ":" + placeId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    double getDistanceKm() {
+        return distanceKm;
+    }
+
+    String getPlaceId() {
+        return placeId;
+    }
+
+    int getRowId() {
+        return rowId;
+    }
+}
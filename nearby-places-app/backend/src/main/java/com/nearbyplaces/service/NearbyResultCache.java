@@ -0,0 +1,235 @@
+package com.nearbyplaces.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nearbyplaces.event.SnapshotReplacedEvent;
+import com.nearbyplaces.index.GeoUtils;
+import com.nearbyplaces.index.NearbyMatches;
+import com.nearbyplaces.index.PlaceSnapshot;
+import com.nearbyplaces.index.PlaceTable;
+import com.nearbyplaces.index.TypeFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Cache of nearby search candidates, bounded by the number of cached rows
+ * (max-rows) rather than entries, since an entry can hold anything from no
+ * row to every place of a downtown 50 km circle.
+ *
+ * Requests are keyed by the base version of the snapshot, the grid cell of
+ * their center (cell-size-degrees), the smallest configured radius bucket that
+ * covers their radius, and the type filter. An entry holds every base row
+ * within bucket + half a cell diagonal of the cell center, which is a superset
+ * of the base rows of any request mapping to the same key, so a hit only needs
+ * an exact distance check over the cached rows.
+ *
+ * Batches of place writes derive new snapshots from the same base, so entries
+ * survive them: a hit drops the base rows the current snapshot hides and adds
+ * its changed places within the radius, which are few. Only a compaction
+ * changes the base version, which turns every later lookup into a miss; the
+ * entries of the replaced base are dropped when the snapshot is replaced.
+ */
+@Service
+public class NearbyResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearbyResultCache.class);
+
+    private static final double KM_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_KM;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlaceIndexService placeIndexService;
+
+    @Value("${places.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${places.cache.cell-size-degrees:0.005}")
+    private double cellSizeDegrees;
+
+    @Value("${places.cache.radius-buckets:0.5,1,2,5,10,25,50}")
+    private double[] radiusBuckets;
+
+    @Value("${places.cache.max-rows:2000000}")
+    private long maxRows;
+
+    @Value("${places.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private Cache<Key, Entry> cache;
+    private double cellHalfDiagonalKm;
+
+    @PostConstruct
+    public void init() {
+        Arrays.sort(radiusBuckets);
+        // A degree of longitude is never longer than a degree of latitude
+        cellHalfDiagonalKm = cellSizeDegrees * KM_PER_DEGREE * Math.sqrt(2) / 2;
+        cache = Caffeine.newBuilder()
+            // Every entry weighs one more than its rows, so empty entries are bounded too
+            .maximumWeight(maxRows)
+            .weigher((Key key, Entry entry) -> entry.rows.length + 1)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "nearbyResults");
+        }
+    }
+
+    /**
+     * Finds the places within the radius, serving from the cache when possible.
+     * Radii beyond the largest bucket bypass the cache and are searched in
+     * partitions.
+     *
+     * @param snapshot The snapshot to query
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radiusKm The search radius in kilometers
+     * @param typeFilter Optional type filter, may be null
+     * @param limit Maximum number of places when only the closest are needed, 0 for all
+     * @return The places within the radius with their distances, at least the limit closest
+     */
+    public NearbyMatches findWithinRadius(PlaceSnapshot snapshot, double latitude, double longitude,
+                                          double radiusKm, TypeFilter typeFilter, int limit) {
+        double bucket = bucketFor(radiusKm);
+        if (!enabled || Double.isNaN(bucket)) {
+            return snapshot.findNearby(latitude, longitude, radiusKm, typeFilter, limit,
+                placeIndexService.getSearchPartitions());
+        }
+
+        Key key = new Key(snapshot.getBaseVersion(), cellIndex(latitude), cellIndex(longitude), bucket,
+            typeFilter == null ? "" : typeFilter.key());
+        Entry entry = cache.get(key, k -> load(snapshot, k, typeFilter));
+
+        PlaceTable table = snapshot.getTable();
+        NearbyMatches changed = snapshot.findDeltaWithinRadius(latitude, longitude, radiusKm, typeFilter);
+        boolean hiding = snapshot.hasChanges();
+        int[] rows = new int[entry.rows.length + changed.size()];
+        double[] distances = new double[rows.length];
+        int count = 0;
+        for (int row : entry.rows) {
+            if (hiding && snapshot.isHidden(row)) {
+                continue;
+            }
+            double distanceKm = GeoUtils.distanceKm(latitude, longitude, table.latitude(row), table.longitude(row));
+            if (distanceKm <= radiusKm) {
+                rows[count] = row;
+                distances[count++] = distanceKm;
+            }
+        }
+        System.arraycopy(changed.getRows(), 0, rows, count, changed.size());
+        System.arraycopy(changed.getDistances(), 0, distances, count, changed.size());
+        count += changed.size();
+        return new NearbyMatches(Arrays.copyOf(rows, count), Arrays.copyOf(distances, count));
+    }
+
+    /**
+     * Drops the entries of replaced bases, no later lookup can hit them
+     */
+    @EventListener
+    public void onSnapshotReplaced(SnapshotReplacedEvent event) {
+        if (cache == null) {
+            return;
+        }
+        long baseVersion = event.getSnapshot().getBaseVersion();
+        long before = cache.estimatedSize();
+        cache.asMap().keySet().removeIf(key -> key.baseVersion != baseVersion);
+        logger.debug("Dropped {} cached nearby results of replaced snapshots", before - cache.estimatedSize());
+    }
+
+    /**
+     * Drops all entries
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Entry load(PlaceSnapshot snapshot, Key key, TypeFilter typeFilter) {
+        double coverRadius = key.radiusBucket + cellHalfDiagonalKm;
+        return new Entry(snapshot.findBaseRowsWithinRadius(latitudeCenter(key.latCell),
+            longitudeCenter(key.lngCell), coverRadius, typeFilter));
+    }
+
+    /**
+     * @return Smallest bucket covering the radius, NaN if the radius is larger than every bucket
+     */
+    private double bucketFor(double radiusKm) {
+        for (double bucket : radiusBuckets) {
+            if (radiusKm <= bucket) {
+                return bucket;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private long cellIndex(double degrees) {
+        return (long) Math.floor(degrees / cellSizeDegrees);
+    }
+
+    private double latitudeCenter(long cellIndex) {
+        return Math.max(-90.0, Math.min(90.0, (cellIndex + 0.5) * cellSizeDegrees));
+    }
+
+    private double longitudeCenter(long cellIndex) {
+        return GeoUtils.normalizeLongitude((cellIndex + 0.5) * cellSizeDegrees);
+    }
+
+    private static final class Key {
+
+        final long baseVersion;
+        final long latCell;
+        final long lngCell;
+        final double radiusBucket;
+        final String type;
+
+        Key(long baseVersion, long latCell, long lngCell, double radiusBucket, String type) {
+            this.baseVersion = baseVersion;
+            this.latCell = latCell;
+            this.lngCell = lngCell;
+            this.radiusBucket = radiusBucket;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return baseVersion == other.baseVersion && latCell == other.latCell && lngCell == other.lngCell
+                && radiusBucket == other.radiusBucket && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseVersion, latCell, lngCell, radiusBucket, type);
+        }
+    }
+
+    /**
+     * Base rows around a cell, hidden ones included
+     */
+    private static final class Entry {
+
+        final int[] rows;
+
+        Entry(int[] rows) {
+            this.rows = rows;
+        }
+    }
+}
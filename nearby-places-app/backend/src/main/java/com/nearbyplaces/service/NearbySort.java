@@ -0,0 +1,40 @@
+package com.nearbyplaces.service;
+
+import java.util.Locale;
+
+/**
+ * Result order of a nearby search
+ */
+enum NearbySort {
+
+    /**
+     * Closest first
+     */
+    DISTANCE,
+
+    /**
+     * Highest rated first, unrated places last, ties closest first
+     */
+    RATING,
+
+    /**
+     * Best blend of distance decay and rating first
+     */
+    RELEVANCE;
+
+    /**
+     * @param value Sort parameter from the request
+     * @return The parsed order, or null if the value is empty
+     * @throws IllegalArgumentException if the value names no order
+     */
+    static NearbySort parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("sort must be distance, rating or relevance");
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.nearbyplaces.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.nearbyplaces.dto.ReviewResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Push parser of a Google Places details response. The body is fed buffer by
+ * buffer as it arrives to a non-blocking Jackson parser, and every buffer is
+ * released as soon as its tokens are read, so the response is never held in
+ * memory as a whole. Only the status and the fields of result.reviews[*] are
+ * read; everything else is skipped without being materialized.
+ */
+final class PlaceDetailsParser {
+
+    // Nesting the parser is in, outside of skipped values
+    private static final int BEFORE_ROOT = 0;
+    private static final int IN_ROOT = 1;
+    private static final int IN_RESULT = 2;
+    private static final int IN_REVIEWS = 3;
+    private static final int IN_REVIEW = 4;
+    private static final int DONE = 5;
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final long maxBytes;
+    private final List<ReviewResponse> reviews = new ArrayList<>();
+    private String status = "OK";
+    private long bytes;
+    // Fed bytes are copied here; the parser is drained before it is refilled
+    private byte[] chunk = new byte[0];
+
+    private int level = BEFORE_ROOT;
+    private int skipDepth;
+    private String field;
+    private ReviewResponse review;
+
+    /**
+     * @param factory Factory of the parser
+     * @param maxBytes Size beyond which the response is rejected
+     */
+    PlaceDetailsParser(JsonFactory factory, long maxBytes) {
+        try {
+            this.parser = factory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create reviews parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Parses the next part of the body and releases it
+     *
+     * @return This parser
+     * @throws IllegalStateException if the body read so far is malformed
+     * @throws DataBufferLimitException if the body grows beyond the maximum size
+     */
+    PlaceDetailsParser feed(DataBuffer buffer) {
+        try {
+            int length = buffer.readableByteCount();
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            buffer.read(chunk, 0, length);
+            return feed(chunk, 0, length);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Parses the next part of the body. The bytes may be reused once this returns.
+     *
+     * @return This parser
+     * @throws IllegalStateException if the body read so far is malformed
+     * @throws DataBufferLimitException if the body grows beyond the maximum size
+     */
+    PlaceDetailsParser feed(byte[] input, int offset, int length) {
+        bytes += length;
+        if (bytes > maxBytes) {
+            close();
+            throw new DataBufferLimitException("Reviews response exceeds " + maxBytes + " bytes");
+        }
+        try {
+            feeder.feedInput(input, offset, offset + length);
+            drain();
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Malformed reviews response", e);
+        }
+        return this;
+    }
+
+    /**
+     * Ends the body
+     *
+     * @return This parser
+     * @throws IllegalStateException if the body is malformed or truncated
+     */
+    PlaceDetailsParser finish() {
+        try {
+            feeder.endOfInput();
+            drain();
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed reviews response", e);
+        } finally {
+            close();
+        }
+        if (level != DONE) {
+            throw new IllegalStateException("Malformed reviews response");
+        }
+        return this;
+    }
+
+    /**
+     * @return The status of the response, OK if it carries none
+     */
+    String getStatus() {
+        return status;
+    }
+
+    List<ReviewResponse> getReviews() {
+        return reviews;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            return;
+        }
+        switch (level) {
+            case BEFORE_ROOT:
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Response is not an object");
+                }
+                level = IN_ROOT;
+                break;
+            case IN_ROOT:
+                if (token == JsonToken.END_OBJECT) {
+                    level = DONE;
+                } else if ("status".equals(field) && token == JsonToken.VALUE_STRING) {
+                    status = parser.getText();
+                } else if ("result".equals(field) && token == JsonToken.START_OBJECT) {
+                    level = IN_RESULT;
+                } else {
+                    skip(token);
+                }
+                break;
+            case IN_RESULT:
+                if (token == JsonToken.END_OBJECT) {
+                    level = IN_ROOT;
+                } else if ("reviews".equals(field) && token == JsonToken.START_ARRAY) {
+                    level = IN_REVIEWS;
+                } else {
+                    skip(token);
+                }
+                break;
+            case IN_REVIEWS:
+                if (token == JsonToken.END_ARRAY) {
+                    level = IN_RESULT;
+                } else if (token == JsonToken.START_OBJECT) {
+                    review = new ReviewResponse();
+                    level = IN_REVIEW;
+                } else {
+                    skip(token);
+                }
+                break;
+            case IN_REVIEW:
+                if (token == JsonToken.END_OBJECT) {
+                    reviews.add(review);
+                    level = IN_REVIEWS;
+                } else if (token.isStructStart()) {
+                    skip(token);
+                } else {
+                    readReviewField(token);
+                }
+                break;
+            default:
+                // Anything after the response object is ignored
+                skip(token);
+                break;
+        }
+    }
+
+    private void readReviewField(JsonToken value) throws IOException {
+        switch (field) {
+            case "author_name":
+                review.setAuthorName(parser.getValueAsString());
+                break;
+            case "rating":
+                // The decimal as written, without a detour through double
+                if (value.isNumeric()) {
+                    review.setRating(parser.getDecimalValue());
+                }
+                break;
+            case "relative_time_description":
+                review.setRelativeTimeDescription(parser.getValueAsString());
+                break;
+            case "text":
+                review.setText(parser.getValueAsString());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void skip(JsonToken token) {
+        if (token.isStructStart()) {
+            skipDepth = 1;
+        }
+    }
+
+    private void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // Nothing is left to release
+        }
+    }
+}
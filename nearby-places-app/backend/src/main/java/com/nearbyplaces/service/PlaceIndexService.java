@@ -0,0 +1,423 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.event.PlaceChangedEvent;
+import com.nearbyplaces.event.SnapshotReplacedEvent;
+import com.nearbyplaces.index.CellRange;
+import com.nearbyplaces.index.DistanceKernel;
+import com.nearbyplaces.index.DistanceKernels;
+import com.nearbyplaces.index.EntityPlaceTable;
+import com.nearbyplaces.index.PlaceSnapshot;
+import com.nearbyplaces.index.PlaceSnapshotFile;
+import com.nearbyplaces.index.SearchPartitions;
+import com.nearbyplaces.model.Place;
+import com.nearbyplaces.repository.PlaceRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Owns the current {@link PlaceSnapshot}.
+ *
+ * Snapshots are immutable and published through an atomic reference, so
+ * readers never lock and always see one consistent version. Writes to the
+ * places table are captured from {@link PlaceChangedEvent}s once their
+ * transaction has committed, so rolled back writes never reach a snapshot, and
+ * applied in batches every delta-interval-ms on a single writer thread, each
+ * batch producing a new version derived from the previous one. Once the
+ * changed places exceed max-delta-places, or changes are older than
+ * compaction-interval-seconds, the snapshot is compacted: rebuilt from the
+ * repository.
+ *
+ * {@link SnapshotReplacedEvent}s are only published for rebuilt and loaded
+ * snapshots, not for every batch of changes.
+ *
+ * When places.shard.cell-range is set, this instance is one shard of a
+ * sharded catalogue and only indexes the places inside that {@link CellRange};
+ * a place moving out of the range is removed like a deleted one.
+ */
+@Service
+public class PlaceIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaceIndexService.class);
+
+    @Autowired
+    private PlaceRepository placeRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${places.index.rtree-node-capacity:16}")
+    private int rTreeNodeCapacity;
+
+    @Value("${places.index.vector-kernel:true}")
+    private boolean vectorKernel;
+
+    @Value("${places.index.partitions:0}")
+    private int partitions;
+
+    @Value("${places.index.delta-interval-ms:1000}")
+    private long deltaIntervalMs;
+
+    @Value("${places.index.max-delta-places:1000}")
+    private int maxDeltaPlaces;
+
+    @Value("${places.index.compaction-interval-seconds:300}")
+    private long compactionIntervalSeconds;
+
+    @Value("${places.shard.cell-range:}")
+    private String shardCellRange;
+
+    @Value("${places.snapshot.path:}")
+    private String snapshotPath;
+
+    @Value("${places.snapshot.write-on-shutdown:false}")
+    private boolean writeSnapshotOnShutdown;
+
+    private final AtomicReference<PlaceSnapshot> snapshot = new AtomicReference<>();
+    private final Map<Long, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "place-index-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private DistanceKernel distanceKernel;
+    private CellRange shardRange = CellRange.WORLD;
+    private ForkJoinPool searchPool;
+    private SearchPartitions searchPartitions;
+    private Timer freshnessTimer;
+    private long baseBuiltAt;
+
+    @PostConstruct
+    public void init() {
+        shardRange = CellRange.parse(shardCellRange);
+        if (!shardRange.isWorld()) {
+            logger.info("Indexing the places of cell range {}", shardRange);
+        }
+
+        int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        if (count > 1) {
+            searchPool = new ForkJoinPool(Math.min(count, Runtime.getRuntime().availableProcessors()));
+            searchPartitions = new SearchPartitions(count, searchPool);
+        } else {
+            searchPartitions = SearchPartitions.SEQUENTIAL;
+        }
+        logger.info("Splitting large spatial searches into {} partitions", count);
+
+        if (meterRegistry != null) {
+            freshnessTimer = Timer.builder("places.index.freshness")
+                .description("Time from a place write until it is visible to index queries")
+                .register(meterRegistry);
+            Gauge.builder("places.index.freshness.lag", this, PlaceIndexService::getFreshnessLagMillis)
+                .description("Age of the oldest place write not yet visible to index queries")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+            Gauge.builder("places.index.delta.size", this, service -> {
+                PlaceSnapshot current = service.snapshot.get();
+                return current == null ? 0 : current.deltaSize();
+            }).description("Changed places served outside the spatial indexes").register(meterRegistry);
+        }
+    }
+
+    /**
+     * Opens the snapshot file if one exists, otherwise builds the spatial
+     * indexes from the repository once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Path path = getSnapshotPath();
+        if (path != null && Files.exists(path)) {
+            try {
+                loadSnapshot(path);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not open snapshot {}, rebuilding from repository: {}", path, e.getMessage());
+            }
+        }
+        if (snapshot.get() == null) {
+            rebuild();
+        }
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                applyPendingChanges();
+            } catch (RuntimeException e) {
+                // Changes stay pending and are retried with the next batch
+                logger.error("Failed to apply place changes: {}", e.getMessage());
+            }
+        }, deltaIntervalMs, deltaIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Captures a committed write to the places table. A copy of the place is
+     * kept, so later modifications of the entity do not leak into published snapshots.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPlaceChanged(PlaceChangedEvent event) {
+        Place place = event.getPlace();
+        if (place.getId() == null) {
+            return;
+        }
+        boolean removed = event.getType() == PlaceChangedEvent.Type.DELETED || !isOwned(place);
+        PendingChange change = new PendingChange(removed ? null : copyOf(place), System.nanoTime());
+        // A later change of the same place replaces the earlier one but keeps its capture time
+        pendingChanges.merge(place.getId(), change,
+            (earlier, later) -> new PendingChange(later.place, earlier.capturedAt));
+    }
+
+    /**
+     * Writes the current snapshot to disk on shutdown if enabled
+     */
+    @PreDestroy
+    public void onShutdown() {
+        writer.shutdownNow();
+        if (searchPool != null) {
+            searchPool.shutdownNow();
+        }
+        if (writeSnapshotOnShutdown && getSnapshotPath() != null && snapshot.get() != null) {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                logger.error("Failed to write snapshot on shutdown: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reloads all places from the repository and replaces the current snapshot.
+     * Changes captured meanwhile are applied on top, whether or not the reload
+     * already saw them.
+     */
+    public synchronized void rebuild() {
+        compact();
+        applyPendingChanges();
+    }
+
+    /**
+     * Applies the captured changes to the current snapshot as one new version,
+     * or compacts it if the changes have outgrown the delta
+     */
+    public synchronized void applyPendingChanges() {
+        PlaceSnapshot current = snapshot.get();
+        if (current == null) {
+            return;
+        }
+        if (current.hasChanges()
+                && (System.nanoTime() - baseBuiltAt > TimeUnit.SECONDS.toNanos(compactionIntervalSeconds)
+                    || current.deltaSize() + pendingChanges.size() > maxDeltaPlaces)) {
+            current = compact();
+        }
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+
+        List<Place> upserts = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        List<PendingChange> applied = new ArrayList<>();
+        for (Long id : pendingChanges.keySet()) {
+            PendingChange change = pendingChanges.remove(id);
+            if (change == null) {
+                continue;
+            }
+            if (change.place == null) {
+                deletedIds.add(id);
+            } else {
+                upserts.add(change.place);
+            }
+            applied.add(change);
+        }
+
+        try {
+            snapshot.set(current.withChanges(upserts, deletedIds));
+        } catch (RuntimeException e) {
+            logger.error("Failed to apply {} place changes, compacting: {}", applied.size(), e.getMessage());
+            compact();
+            return;
+        }
+        long now = System.nanoTime();
+        if (freshnessTimer != null) {
+            for (PendingChange change : applied) {
+                freshnessTimer.record(now - change.capturedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+        logger.debug("Applied {} place changes, {} places outside the indexes",
+            applied.size(), snapshot.get().deltaSize());
+    }
+
+    /**
+     * Replaces the current snapshot with a memory-mapped snapshot file
+     *
+     * @param path Snapshot file to map
+     * @throws IOException if the file cannot be opened
+     */
+    public synchronized void loadSnapshot(Path path) throws IOException {
+        long start = System.currentTimeMillis();
+        PlaceSnapshot opened = PlaceSnapshotFile.open(path, getDistanceKernel());
+        baseBuiltAt = System.nanoTime();
+        snapshot.set(opened);
+        logger.info("Mapped snapshot {} with {} places in {}ms",
+            path, opened.size(), System.currentTimeMillis() - start);
+        eventPublisher.publishEvent(new SnapshotReplacedEvent(opened));
+    }
+
+    /**
+     * Writes the current snapshot to the configured snapshot path, compacting
+     * it first if changes have been applied since it was built
+     *
+     * @return The written file
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if no path is configured or no snapshot is built yet
+     */
+    public synchronized Path writeSnapshot() throws IOException {
+        Path path = getSnapshotPath();
+        if (path == null) {
+            throw new IllegalStateException("Snapshot path is not configured");
+        }
+        PlaceSnapshot current = snapshot.get();
+        if (current == null) {
+            throw new IllegalStateException("Spatial index is not built yet");
+        }
+        if (current.hasChanges()) {
+            current = compact();
+        }
+        long start = System.currentTimeMillis();
+        PlaceSnapshotFile.write(current, path);
+        logger.info("Wrote snapshot of {} places to {} in {}ms",
+            current.size(), path, System.currentTimeMillis() - start);
+        return path;
+    }
+
+    /**
+     * @return The current snapshot, or null until the indexes have been built
+     */
+    public PlaceSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @return Partitioning of large spatial searches (places.index.partitions, 0 for one per CPU)
+     */
+    public SearchPartitions getSearchPartitions() {
+        return searchPartitions;
+    }
+
+    /**
+     * @return Range of the places this instance indexes (places.shard.cell-range, the world if unset)
+     */
+    public CellRange getShardRange() {
+        return shardRange;
+    }
+
+    /**
+     * @return true once the indexes have been built
+     */
+    public boolean isReady() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * @return Number of indexed places, 0 if the indexes are not built yet
+     */
+    public int size() {
+        PlaceSnapshot current = snapshot.get();
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * @return Age of the oldest captured change not yet applied, 0 if there is none
+     */
+    public double getFreshnessLagMillis() {
+        long now = System.nanoTime();
+        long oldest = now;
+        for (PendingChange change : pendingChanges.values()) {
+            oldest = Math.min(oldest, change.capturedAt);
+        }
+        return (now - oldest) / 1e6;
+    }
+
+    /**
+     * Builds a snapshot from the repository and publishes it, leaving captured changes pending
+     *
+     * @return The published snapshot
+     */
+    private synchronized PlaceSnapshot compact() {
+        long start = System.currentTimeMillis();
+        List<Place> places = placeRepository.findAllWithTypes();
+        if (!shardRange.isWorld()) {
+            places.removeIf(place -> !isOwned(place));
+        }
+        EntityPlaceTable table = new EntityPlaceTable(places);
+        PlaceSnapshot built = PlaceSnapshot.build(table, rTreeNodeCapacity, getDistanceKernel());
+        baseBuiltAt = System.nanoTime();
+        snapshot.set(built);
+        logger.info("Built spatial indexes with {} places in {}ms", table.size(), System.currentTimeMillis() - start);
+        eventPublisher.publishEvent(new SnapshotReplacedEvent(built));
+        return built;
+    }
+
+    private synchronized DistanceKernel getDistanceKernel() {
+        if (distanceKernel == null) {
+            distanceKernel = DistanceKernels.select(vectorKernel);
+        }
+        return distanceKernel;
+    }
+
+    /**
+     * @return Whether the place belongs to the shard range of this instance
+     */
+    private boolean isOwned(Place place) {
+        return shardRange.isWorld() || (place.getLatitude() != null && place.getLongitude() != null
+            && shardRange.contains(place.getLatitude().doubleValue(), place.getLongitude().doubleValue()));
+    }
+
+    private Path getSnapshotPath() {
+        return snapshotPath == null || snapshotPath.isBlank() ? null : Paths.get(snapshotPath);
+    }
+
+    private static Place copyOf(Place place) {
+        Place copy = new Place(place.getName(), place.getAddress(), place.getLatitude(), place.getLongitude(),
+            place.getRating(), place.getPlaceId(), place.getTypes() == null ? null : new ArrayList<>(place.getTypes()));
+        copy.setId(place.getId());
+        return copy;
+    }
+
+    /**
+     * A captured write, place is null for deletions
+     */
+    private static final class PendingChange {
+
+        final Place place;
+        final long capturedAt;
+
+        PendingChange(Place place, long capturedAt) {
+            this.place = place;
+            this.capturedAt = capturedAt;
+        }
+    }
+}
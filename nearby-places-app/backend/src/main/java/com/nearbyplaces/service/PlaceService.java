@@ -1,16 +1,32 @@
 package com.nearbyplaces.service;
 
+import com.nearbyplaces.dto.NearbyPageResponse;
 import com.nearbyplaces.dto.PlaceResponse;
+import com.nearbyplaces.dto.ViewportResponse;
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.index.CellRange;
+import com.nearbyplaces.index.GeoUtils;
+import com.nearbyplaces.index.NearbyMatches;
+import com.nearbyplaces.index.PlaceRTree;
+import com.nearbyplaces.index.PlaceSnapshot;
+import com.nearbyplaces.index.PlaceTable;
+import com.nearbyplaces.index.TextIndex;
+import com.nearbyplaces.index.TopK;
+import com.nearbyplaces.index.TypeFilter;
 import com.nearbyplaces.model.Place;
 import com.nearbyplaces.repository.PlaceRepository;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Service
@@ -21,45 +37,446 @@ public class PlaceService {
     @Autowired
     private PlaceRepository placeRepository;
     
+    @Autowired
+    private PlaceIndexService placeIndexService;
+    
+    @Autowired
+    private NearbyResultCache nearbyResultCache;
+    
+    @Value("${places.ranking.rating-weight:0.4}")
+    private double ratingWeight;
+    
+    @Value("${places.ranking.distance-decay-km:1.0}")
+    private double distanceDecayKm;
+    
     /**
-     * Finds nearby places using mock data for now
-     * Google Places API integration will be added later
+     * Finds nearby places from the in-memory spatial index.
+     * Falls back to mock data while the place catalogue is empty.
      * 
      * @param latitude The latitude coordinate
      * @param longitude The longitude coordinate
      * @param radius The search radius in kilometers
      * @return List of PlaceResponse objects
      */
-    public List<PlaceResponse> findNearbyPlaces(BigDecimal latitude, BigDecimal longitude, BigDecimal radius, String type) {
-        logger.info("Finding nearby places at lat: {}, lng: {}, radius: {}km, type: {}", latitude, longitude, radius, type);
+    public List<PlaceResponse> findNearbyPlaces(double latitude, double longitude, double radius, String type) {
+        return findNearbyPlaces(latitude, longitude, radius, type, null, null);
+    }
+    
+    /**
+     * Finds nearby places and ranks them. Only the places that make it into
+     * the limit are selected, with a bounded heap instead of a full sort.
+     * 
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radius The search radius in kilometers
+     * @param type Optional place type filter
+     * @param sort distance, rating or relevance; null keeps the index order
+     * @param limit Maximum number of places, null for all; without a sort the closest are kept
+     * @return List of PlaceResponse objects with their distance
+     * @throws IllegalArgumentException if the sort is unknown
+     */
+    public List<PlaceResponse> findNearbyPlaces(double latitude, double longitude, double radius, String type,
+                                                String sort, Integer limit) {
+        logger.info("Finding nearby places at lat: {}, lng: {}, radius: {}km, type: {}, sort: {}, limit: {}",
+            latitude, longitude, radius, type, sort, limit);
         
-        // For now, return mock data
-        // Google Places API integration will be added later
-        return generateMockPlaces(latitude, longitude, radius, type);
+        NearbySort order = NearbySort.parse(sort);
+        if (order == null && limit != null) {
+            order = NearbySort.DISTANCE;
+        }
+        TypeFilter typeFilter = TypeFilter.parse(type);
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        if (snapshot == null) {
+            logger.debug("Spatial index not built yet, querying repository");
+            List<Place> places = placeRepository.findNearbyPlacesWithinBoundingBox(latitude, longitude, radius);
+            if (typeFilter != null) {
+                places.removeIf(place -> !typeFilter.matches(place.getTypes()));
+            }
+            return rank(convertToResponseList(places), latitude, longitude, order, limit);
+        }
+        
+        // No stored catalogue yet, keep serving mock data
+        if (snapshot.size() == 0) {
+            return rank(generateMockPlaces(latitude, longitude, typeFilter), latitude, longitude, order, limit);
+        }
+        
+        // Only the closest places can make it into a limit by distance, so the search keeps just those
+        NearbyMatches matches = nearbyResultCache.findWithinRadius(snapshot, latitude, longitude, radius, typeFilter,
+            order == NearbySort.DISTANCE && limit != null ? limit : 0);
+        int[] rows = matches.getRows();
+        double[] distances = matches.getDistances();
+        logger.info("Found {} indexed places within {}km", rows.length, radius);
+        
+        PlaceTable table = snapshot.getTable();
+        double[] ratings = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            ratings[i] = table.rating(rows[i]);
+        }
+        
+        int[] selected = select(distances, ratings, order, limit);
+        List<PlaceResponse> responses = new ArrayList<>(selected.length);
+        for (int i : selected) {
+            PlaceResponse response = convertToResponse(table, rows[i]);
+            response.setDistance(distances[i]);
+            responses.add(response);
+        }
+        return responses;
     }
     
     /**
-     * Generates mock places for development and testing
+     * Ranks places that did not come from the index, like those gathered from shards
+     * 
+     * @param order Ranking, null to keep the places in their order
+     * @param limit Maximum number of places, null for all
+     */
+    List<PlaceResponse> rank(List<PlaceResponse> places, double latitude, double longitude,
+                                     NearbySort order, Integer limit) {
+        double[] distances = new double[places.size()];
+        double[] ratings = new double[places.size()];
+        for (int i = 0; i < distances.length; i++) {
+            PlaceResponse place = places.get(i);
+            distances[i] = GeoUtils.distanceKm(latitude, longitude, place.getLatitude(), place.getLongitude());
+            ratings[i] = place.getRating() == null ? Double.NaN : place.getRating();
+            place.setDistance(distances[i]);
+        }
+        
+        int[] selected = select(distances, ratings, order, limit);
+        List<PlaceResponse> ranked = new ArrayList<>(selected.length);
+        for (int i : selected) {
+            ranked.add(places.get(i));
+        }
+        return ranked;
+    }
+    
+    /**
+     * Selects the best candidates in order
+     * 
+     * @param distances Distance of every candidate in kilometers
+     * @param ratings Rating of every candidate, NaN if it has none
+     * @param order Ranking, null to keep the candidates in their order
+     * @param limit Maximum number of candidates, null for all
+     * @return Indexes of the selected candidates, best first
+     */
+    private int[] select(double[] distances, double[] ratings, NearbySort order, Integer limit) {
+        if (order == null) {
+            int[] all = new int[distances.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        
+        TopK top = new TopK(limit == null ? distances.length : Math.min(limit, distances.length));
+        for (int i = 0; i < distances.length; i++) {
+            top.offer(i, score(order, distances[i], ratings[i]), distances[i]);
+        }
+        return top.drain();
+    }
+    
+    /**
+     * Scores a candidate, higher first; equal scores rank the closer one first
+     */
+    private double score(NearbySort order, double distanceKm, double rating) {
+        switch (order) {
+            case RATING:
+                return Double.isNaN(rating) ? Double.NEGATIVE_INFINITY : rating;
+            case RELEVANCE:
+                double ratingScore = Double.isNaN(rating) ? 0 : rating / 5;
+                double distanceScore = Math.exp(-distanceKm / distanceDecayKm);
+                return ratingWeight * ratingScore + (1 - ratingWeight) * distanceScore;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * Finds the k places closest to the given coordinates
+     * 
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param k Maximum number of places to return
+     * @param type Optional place type filter
+     * @return List of PlaceResponse objects ordered by distance
+     */
+    public List<PlaceResponse> findNearestPlaces(double latitude, double longitude, int k, String type) {
+        logger.info("Finding {} nearest places at lat: {}, lng: {}, type: {}", k, latitude, longitude, type);
+        
+        TypeFilter typeFilter = TypeFilter.parse(type);
+        
+        // No stored catalogue yet, rank the mock places instead
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        if (snapshot == null || snapshot.size() == 0) {
+            List<PlaceResponse> mockPlaces = generateMockPlaces(latitude, longitude, typeFilter);
+            return rank(mockPlaces, latitude, longitude, NearbySort.DISTANCE, k);
+        }
+        
+        List<PlaceResponse> nearest = new ArrayList<>(k);
+        for (PlaceRTree.Neighbor neighbor : snapshot.nearest(latitude, longitude, k, typeFilter)) {
+            PlaceResponse response = convertToResponse(snapshot.getTable(), neighbor.getRowId());
+            response.setDistance(neighbor.getDistanceKm());
+            nearest.add(response);
+        }
+        return nearest;
+    }
+    
+    /**
+     * Finds one page of nearby places in (distance, placeId) order
+     * 
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radius The search radius in kilometers
+     * @param type Optional place type filter
+     * @param limit Maximum number of places on the page
+     * @param cursor Cursor returned with the previous page, null for the first page
+     * @return The page and the cursor of the next page, null on the last page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public NearbyPageResponse findNearbyPlacesPage(double latitude, double longitude, double radius,
+                                                   String type, int limit, String cursor) {
+        NearbyCursor after = cursor == null || cursor.isBlank() ? null : NearbyCursor.decode(cursor);
+        Iterator<RankedPlace> scan = scanNearbyPlaces(latitude, longitude, radius, TypeFilter.parse(type), after);
+        
+        List<PlaceResponse> page = new ArrayList<>(limit);
+        RankedPlace last = null;
+        while (page.size() < limit && scan.hasNext()) {
+            last = scan.next();
+            page.add(last.place);
+        }
+        String nextCursor = last != null && scan.hasNext()
+            ? new NearbyCursor(last.distanceKm, last.place.getPlaceId(), last.rowId).encode() : null;
+        return new NearbyPageResponse(page, nextCursor);
+    }
+    
+    /**
+     * Streams nearby places in (distance, placeId) order. Places are produced
+     * lazily while iterating, so the full result is never held in memory.
+     * 
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
+     * @param radius The search radius in kilometers
+     * @param type Optional place type filter
+     * @return Iterator over the places within the radius
+     */
+    public Iterator<PlaceResponse> streamNearbyPlaces(double latitude, double longitude, double radius,
+                                                      String type) {
+        Iterator<RankedPlace> scan = scanNearbyPlaces(latitude, longitude, radius, TypeFilter.parse(type), null);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return scan.hasNext();
+            }
+            
+            @Override
+            public PlaceResponse next() {
+                return scan.next().place;
+            }
+        };
+    }
+    
+    /**
+     * Finds places near the given coordinates whose name or address matches a
+     * free text query, ranked by text relevance and distance
      * 
+     * @param query Free text query
      * @param latitude The latitude coordinate
      * @param longitude The longitude coordinate
      * @param radius The search radius in kilometers
+     * @param limit Maximum number of places to return
+     * @return List of PlaceResponse objects, best match first
+     */
+    public List<PlaceResponse> searchPlaces(String query, double latitude, double longitude, double radius,
+                                            int limit) {
+        logger.info("Searching places for '{}' at lat: {}, lng: {}, radius: {}km", query, latitude, longitude, radius);
+        
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        if (snapshot != null && snapshot.size() > 0) {
+            List<PlaceResponse> responses = new ArrayList<>();
+            for (TextIndex.Hit hit : snapshot.search(query, latitude, longitude, radius, limit)) {
+                PlaceResponse response = convertToResponse(snapshot.getTable(), hit.getRowId());
+                response.setDistance(hit.getDistanceKm());
+                responses.add(response);
+            }
+            logger.info("Found {} places matching '{}'", responses.size(), query);
+            return responses;
+        }
+        
+        // Without an index the few candidates are matched by substring and ranked by distance
+        List<PlaceResponse> places = snapshot == null
+            ? convertToResponseList(placeRepository.findNearbyPlacesWithinBoundingBox(latitude, longitude, radius))
+            : generateMockPlaces(latitude, longitude, null);
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        places.removeIf(place -> !containsIgnoreCase(place.getName(), needle) && !containsIgnoreCase(place.getAddress(), needle));
+        return rank(places, latitude, longitude, NearbySort.DISTANCE, limit);
+    }
+    
+    private static boolean containsIgnoreCase(String text, String needle) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(needle);
+    }
+    
+    /**
+     * Finds the places inside a map viewport. With a previous viewport only the
+     * difference is returned: places that entered the viewport and the place
+     * ids of those that left it.
+     * 
+     * @param box The viewport, crossing the antimeridian when minLng > maxLng
+     * @param since The previously displayed viewport, null for the full result
+     * @param type Optional place type filter
+     * @param limit Maximum number of places to return
+     * @return Places of the viewport, or the difference to the previous viewport
+     */
+    public ViewportResponse findPlacesInViewport(BoundingBox box, BoundingBox since, String type, int limit) {
+        TypeFilter typeFilter = TypeFilter.parse(type);
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        
+        if (snapshot != null && snapshot.size() > 0) {
+            PlaceTable table = snapshot.getTable();
+            int[] rows = snapshot.findRowsWithinBox(box, typeFilter);
+            
+            List<String> left = null;
+            if (since != null) {
+                MutableRoaringBitmap current = MutableRoaringBitmap.bitmapOf(rows);
+                MutableRoaringBitmap previous = MutableRoaringBitmap.bitmapOf(snapshot.findRowsWithinBox(since, typeFilter));
+                left = new ArrayList<>();
+                for (int row : MutableRoaringBitmap.andNot(previous, current)) {
+                    left.add(table.placeId(row));
+                }
+                rows = MutableRoaringBitmap.andNot(current, previous).toArray();
+            }
+            
+            int count = Math.min(limit, rows.length);
+            List<PlaceResponse> places = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                places.add(convertToResponse(table, rows[i]));
+            }
+            logger.info("Found {} indexed places in viewport{}", rows.length, since == null ? "" : " diff");
+            return new ViewportResponse(places, left, rows.length > limit);
+        }
+        
+        List<PlaceResponse> current;
+        List<PlaceResponse> previous;
+        if (snapshot == null) {
+            current = findPlacesInBox(box, typeFilter);
+            previous = since == null ? null : findPlacesInBox(since, typeFilter);
+        } else {
+            // Mock places follow the viewport, so both viewports are diffed against the same set
+            double width = box.getMaxLng() - box.getMinLng() + (box.crossesAntimeridian() ? 360 : 0);
+            double centerLng = GeoUtils.normalizeLongitude(box.getMinLng() + width / 2);
+            List<PlaceResponse> mockPlaces = generateMockPlaces(
+                (box.getMinLat() + box.getMaxLat()) / 2, centerLng, typeFilter);
+            current = new ArrayList<>(mockPlaces);
+            current.removeIf(place -> !contains(box, place));
+            previous = since == null ? null : new ArrayList<>(mockPlaces);
+            if (previous != null) {
+                previous.removeIf(place -> !contains(since, place));
+            }
+        }
+        
+        List<String> left = null;
+        if (since != null) {
+            left = new ArrayList<>();
+            for (PlaceResponse place : previous) {
+                if (!contains(box, place)) {
+                    left.add(place.getPlaceId());
+                }
+            }
+            current.removeIf(place -> contains(since, place));
+        }
+        boolean truncated = current.size() > limit;
+        return new ViewportResponse(truncated ? new ArrayList<>(current.subList(0, limit)) : current, left, truncated);
+    }
+    
+    private List<PlaceResponse> findPlacesInBox(BoundingBox box, TypeFilter typeFilter) {
+        List<Place> places = placeRepository.findWithinViewport(box);
+        if (typeFilter != null) {
+            places.removeIf(place -> !typeFilter.matches(place.getTypes()));
+        }
+        return convertToResponseList(places);
+    }
+    
+    private static boolean contains(BoundingBox box, PlaceResponse place) {
+        return box.contains(place.getLatitude(), place.getLongitude());
+    }
+    
+    /**
+     * Distance-ordered scan behind pagination and streaming. The indexed path
+     * walks the R-tree incrementally; the repository and mock fallbacks are
+     * small enough to be sorted in memory.
+     */
+    private Iterator<RankedPlace> scanNearbyPlaces(double latitude, double longitude, double radius,
+                                                   TypeFilter typeFilter, NearbyCursor after) {
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        
+        if (snapshot != null && snapshot.size() > 0) {
+            Iterator<PlaceRTree.Neighbor> neighbors = snapshot.scan(latitude, longitude, radius, typeFilter,
+                after == null ? -1 : after.getDistanceKm(), after == null ? null : after.getPlaceId(),
+                after == null ? -1 : after.getRowId());
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return neighbors.hasNext();
+                }
+                
+                @Override
+                public RankedPlace next() {
+                    PlaceRTree.Neighbor neighbor = neighbors.next();
+                    PlaceResponse response = convertToResponse(snapshot.getTable(), neighbor.getRowId());
+                    response.setDistance(neighbor.getDistanceKm());
+                    return new RankedPlace(response, neighbor.getDistanceKm(), neighbor.getRowId());
+                }
+            };
+        }
+        
+        List<PlaceResponse> places;
+        if (snapshot == null) {
+            places = convertToResponseList(placeRepository.findNearbyPlacesWithinBoundingBox(latitude, longitude, radius));
+            if (typeFilter != null) {
+                places.removeIf(place -> !typeFilter.matches(place.getTypes()));
+            }
+        } else {
+            places = generateMockPlaces(latitude, longitude, typeFilter);
+        }
+        
+        Comparator<RankedPlace> order = Comparator.<RankedPlace>comparingDouble(ranked -> ranked.distanceKm)
+            .thenComparing(ranked -> ranked.place.getPlaceId(), Comparator.nullsFirst(Comparator.naturalOrder()));
+        List<RankedPlace> ranked = new ArrayList<>(places.size());
+        RankedPlace cursorPlace = after == null ? null
+            : new RankedPlace(new PlaceResponse(null, null, 0, 0, null, after.getPlaceId()), after.getDistanceKm(), -1);
+        for (PlaceResponse place : places) {
+            place.setDistance(GeoUtils.distanceKm(latitude, longitude, place.getLatitude(), place.getLongitude()));
+            RankedPlace candidate = new RankedPlace(place, place.getDistance(), -1);
+            if (cursorPlace == null || order.compare(candidate, cursorPlace) > 0) {
+                ranked.add(candidate);
+            }
+        }
+        ranked.sort(order);
+        return ranked.iterator();
+    }
+    
+    /**
+     * Generates mock places for development and testing
+     * 
+     * @param latitude The latitude coordinate
+     * @param longitude The longitude coordinate
      * @return List of PlaceResponse objects with mock data
      */
-    private List<PlaceResponse> generateMockPlaces(BigDecimal latitude, BigDecimal longitude, BigDecimal radius, String type) {
-        logger.info("Generating mock places for coordinates: {}, {}, type: {}", latitude, longitude, type);
+    private List<PlaceResponse> generateMockPlaces(double latitude, double longitude, TypeFilter typeFilter) {
+        logger.info("Generating mock places for coordinates: {}, {}", latitude, longitude);
         
         List<PlaceResponse> places = new ArrayList<>();
         
+        // Offsets are added in microdegrees so the mock coordinates stay exact decimals
+        long lat = GeoUtils.toMicrodegrees(latitude);
+        long lng = GeoUtils.toMicrodegrees(longitude);
+        
         // Generate some mock places around the given coordinates
         List<PlaceResponse> allPlaces = new ArrayList<>();
         
         allPlaces.add(new PlaceResponse(
             "Starbucks Coffee",
             "123 Main Street, Downtown",
-            latitude.add(new BigDecimal("0.001")),
-            longitude.add(new BigDecimal("0.001")),
-            new BigDecimal("4.2"),
+            GeoUtils.fromMicrodegrees(lat + 1000),
+            GeoUtils.fromMicrodegrees(lng + 1000),
+            4.2,
             "mock_place_1",
             List.of("cafe", "food", "establishment")
         ));
@@ -67,9 +484,9 @@ public class PlaceService {
         allPlaces.add(new PlaceResponse(
             "McDonald's",
             "456 Oak Avenue, Shopping District",
-            latitude.add(new BigDecimal("-0.002")),
-            longitude.add(new BigDecimal("0.003")),
-            new BigDecimal("3.8"),
+            GeoUtils.fromMicrodegrees(lat - 2000),
+            GeoUtils.fromMicrodegrees(lng + 3000),
+            3.8,
             "mock_place_2",
             List.of("restaurant", "food", "establishment")
         ));
@@ -77,9 +494,9 @@ public class PlaceService {
         allPlaces.add(new PlaceResponse(
             "Local Library",
             "789 Pine Street, Cultural District",
-            latitude.add(new BigDecimal("0.003")),
-            longitude.add(new BigDecimal("-0.001")),
-            new BigDecimal("4.5"),
+            GeoUtils.fromMicrodegrees(lat + 3000),
+            GeoUtils.fromMicrodegrees(lng - 1000),
+            4.5,
             "mock_place_3",
             List.of("library", "establishment", "point_of_interest")
         ));
@@ -87,9 +504,9 @@ public class PlaceService {
         allPlaces.add(new PlaceResponse(
             "City Park",
             "321 Elm Street, Recreation Area",
-            latitude.add(new BigDecimal("-0.001")),
-            longitude.add(new BigDecimal("-0.002")),
-            new BigDecimal("4.7"),
+            GeoUtils.fromMicrodegrees(lat - 1000),
+            GeoUtils.fromMicrodegrees(lng - 2000),
+            4.7,
             "mock_place_4",
             List.of("park", "establishment", "point_of_interest")
         ));
@@ -97,25 +514,31 @@ public class PlaceService {
         allPlaces.add(new PlaceResponse(
             "Gas Station",
             "654 Maple Drive, Highway Exit",
-            latitude.add(new BigDecimal("0.004")),
-            longitude.add(new BigDecimal("0.002")),
-            new BigDecimal("3.5"),
+            GeoUtils.fromMicrodegrees(lat + 4000),
+            GeoUtils.fromMicrodegrees(lng + 2000),
+            3.5,
             "mock_place_5",
             List.of("gas_station", "establishment", "point_of_interest")
         ));
         
         // Filter places by type if specified
-        if (type != null && !type.isEmpty()) {
+        if (typeFilter != null) {
             for (PlaceResponse place : allPlaces) {
-                if (place.getTypes().contains(type.toLowerCase())) {
+                if (typeFilter.matches(place.getTypes())) {
                     places.add(place);
                 }
             }
         } else {
             places.addAll(allPlaces);
         }
+        
+        // A shard serves only the mock places of its range, so shards together serve each one once
+        CellRange shardRange = placeIndexService.getShardRange();
+        if (!shardRange.isWorld()) {
+            places.removeIf(place -> !shardRange.contains(place.getLatitude(), place.getLongitude()));
+        }
 
-        logger.info("Generated {} mock places after filtering by type: {}", places.size(), type);
+        logger.info("Generated {} mock places after filtering by type", places.size());
         return places;
     }
     
@@ -126,20 +549,46 @@ public class PlaceService {
      * @return List of PlaceResponse objects
      */
     private List<PlaceResponse> convertToResponseList(List<Place> places) {
+        CellRange shardRange = placeIndexService.getShardRange();
         List<PlaceResponse> responses = new ArrayList<>();
         for (Place place : places) {
+            if (!shardRange.isWorld() && !shardRange.contains(place.getLatitude().doubleValue(),
+                    place.getLongitude().doubleValue())) {
+                continue;
+            }
             responses.add(new PlaceResponse(
                 place.getName(),
                 place.getAddress(),
-                place.getLatitude(),
-                place.getLongitude(),
-                place.getRating(),
-                place.getPlaceId()
+                place.getLatitude().doubleValue(),
+                place.getLongitude().doubleValue(),
+                place.getRating() == null ? null : place.getRating().doubleValue(),
+                place.getPlaceId(),
+                place.getTypes()
             ));
         }
         return responses;
     }
     
+    /**
+     * Converts an indexed row to a PlaceResponse object
+     * 
+     * @param table The table the row belongs to
+     * @param row The row id
+     * @return PlaceResponse for the row
+     */
+    private PlaceResponse convertToResponse(PlaceTable table, int row) {
+        double rating = table.rating(row);
+        return new PlaceResponse(
+            table.name(row),
+            table.address(row),
+            table.latitude(row),
+            table.longitude(row),
+            Double.isNaN(rating) ? null : rating,
+            table.placeId(row),
+            table.types(row)
+        );
+    }
+    
     /**
      * Finds a place by its Google Places ID
      * 
@@ -150,4 +599,21 @@ public class PlaceService {
         List<Place> places = placeRepository.findByPlaceId(placeId);
         return places.isEmpty() ? Optional.empty() : Optional.of(places.get(0));
     }
-} 
\ No newline at end of file
+    
+    /**
+     * A place together with its distance from the query point and its index
+     * row, -1 for places that do not come from the index
+     */
+    private static final class RankedPlace {
+        
+        final PlaceResponse place;
+        final double distanceKm;
+        final int rowId;
+        
+        RankedPlace(PlaceResponse place, double distanceKm, int rowId) {
+            this.place = place;
+            this.distanceKm = distanceKm;
+            this.rowId = rowId;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.PlaceResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms the review cache for the top results of nearby searches, as users
+ * mostly open the reviews of one of the first few places.
+ *
+ * Prefetches are queued on a single low-priority thread with a bounded queue
+ * and only start a cache load, so they never hold a request thread. A place
+ * whose reviews are cached, loading or already queued is skipped, and
+ * prefetches are dropped rather than delayed when the queue is full or the
+ * upstream is saturated.
+ */
+@Service
+public class ReviewPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewPrefetcher.class);
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${places.reviews.prefetch.top-n:3}")
+    private int topN;
+
+    @Value("${places.reviews.prefetch.queue-capacity:100}")
+    private int queueCapacity;
+
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor;
+    private Counter started;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        if (topN <= 0) {
+            return;
+        }
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "review-prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        if (meterRegistry != null) {
+            started = Counter.builder("places.reviews.prefetch")
+                .description("Review prefetches by outcome")
+                .tag("outcome", "started")
+                .register(meterRegistry);
+            dropped = Counter.builder("places.reviews.prefetch")
+                .description("Review prefetches by outcome")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues review prefetches for the first places of a search result
+     *
+     * @param places Search result, best ranked first
+     */
+    public void prefetchTopResults(List<PlaceResponse> places) {
+        if (executor == null) {
+            return;
+        }
+        for (PlaceResponse place : places.subList(0, Math.min(topN, places.size()))) {
+            String placeId = place.getPlaceId();
+            if (placeId == null || !queued.add(placeId)) {
+                continue;
+            }
+            if (reviewService.isUpstreamSaturated()) {
+                queued.remove(placeId);
+                count(dropped);
+                continue;
+            }
+            try {
+                executor.execute(() -> prefetch(placeId));
+            } catch (RejectedExecutionException e) {
+                queued.remove(placeId);
+                count(dropped);
+            }
+        }
+    }
+
+    private void prefetch(String placeId) {
+        try {
+            // Saturation is checked again, the upstream may have filled up while this waited in the queue
+            if (reviewService.isUpstreamSaturated()) {
+                count(dropped);
+            } else if (reviewService.prefetch(placeId)) {
+                count(started);
+                logger.debug("Prefetching reviews for place ID: {}", placeId);
+            }
+        } finally {
+            queued.remove(placeId);
+        }
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.nearbyplaces.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link ReviewStore} fresh by refetching the reviews of stale
+ * places in the background, so review requests are served from the store.
+ *
+ * Every run first adds the review requests counted since the last run to the
+ * stored places, then refetches a batch of the places not attempted for
+ * max-age-hours, the most requested first and among equally requested ones
+ * the oldest. Upstream calls are spent from a budget per minute and made one
+ * at a time; a run stops early when the budget is used up or the upstream is
+ * saturated, leaving the rest of the batch for later runs.
+ */
+@Service
+public class ReviewRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewRefresher.class);
+
+    private static final long BUDGET_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ReviewStore reviewStore;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${places.reviews.store.max-age-hours:24}")
+    private long maxAgeHours;
+
+    @Value("${places.reviews.store.refresh-interval-seconds:60}")
+    private long refreshIntervalSeconds;
+
+    @Value("${places.reviews.store.refresh-batch-size:20}")
+    private int batchSize;
+
+    @Value("${places.reviews.store.refresh-budget-per-minute:30}")
+    private int budgetPerMinute;
+
+    private ScheduledExecutorService scheduler;
+    // Only touched by the scheduler thread
+    private long budgetWindowStart;
+    private int budgetUsed;
+    private Counter refreshed;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        if (budgetPerMinute <= 0 || batchSize <= 0) {
+            logger.info("Scheduled review refresh is disabled");
+            return;
+        }
+        if (meterRegistry != null) {
+            refreshed = Counter.builder("places.reviews.refresh")
+                .description("Scheduled review refreshes by outcome")
+                .tag("outcome", "refreshed")
+                .register(meterRegistry);
+            failed = Counter.builder("places.reviews.refresh")
+                .description("Scheduled review refreshes by outcome")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        }
+        budgetWindowStart = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "review-refresher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshStale, refreshIntervalSeconds, refreshIntervalSeconds,
+            TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void refreshStale() {
+        // A scheduled task that throws is never run again
+        try {
+            reviewStore.addRequests(reviewService.drainRequestCounts());
+
+            long now = System.nanoTime();
+            if (now - budgetWindowStart >= BUDGET_WINDOW_NANOS) {
+                budgetWindowStart = now;
+                budgetUsed = 0;
+            }
+            int calls = Math.min(batchSize, budgetPerMinute - budgetUsed);
+            if (calls <= 0 || reviewService.isUpstreamSaturated()) {
+                return;
+            }
+
+            List<String> stale = reviewStore.findStale(Instant.now().minus(Duration.ofHours(maxAgeHours)), calls);
+            int succeeded = 0;
+            int attempted = 0;
+            for (String placeId : stale) {
+                if (reviewService.isUpstreamSaturated()) {
+                    break;
+                }
+                attempted++;
+                budgetUsed++;
+                reviewStore.markAttempted(placeId);
+                try {
+                    reviewService.refresh(placeId).block();
+                    succeeded++;
+                    count(refreshed);
+                } catch (RuntimeException e) {
+                    // The upstream error is logged by the review service
+                    count(failed);
+                }
+            }
+            if (attempted > 0) {
+                logger.info("Refreshed reviews of {} of {} stale places, {} upstream calls left this minute",
+                    succeeded, attempted, budgetPerMinute - budgetUsed);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error refreshing stored reviews: {}", e.toString());
+        }
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
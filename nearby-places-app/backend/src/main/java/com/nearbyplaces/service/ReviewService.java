@@ -1,23 +1,65 @@
 package com.nearbyplaces.service;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.nearbyplaces.dto.ReviewResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.web.reactive.function.client.WebClient;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Fetches place reviews from the Google Places API without blocking.
+ *
+ * Upstream calls go through a pooled, non-blocking client: at most
+ * max-connections requests are in flight and up to max-pending-requests more
+ * wait for a connection, beyond which requests fail fast instead of piling up.
+ * Connecting and waiting for the response are bounded by their timeouts. On
+ * top of that, every call passes the place-details {@link UpstreamGuard}, which
+ * bounds concurrent calls, enforces the deadline and stops calling a failing
+ * upstream while its circuit is open.
+ *
+ * Fetched reviews are persisted in the {@link ReviewStore}, which
+ * {@link ReviewRefresher} keeps up to date, and cached per place in front of
+ * it. Cache misses and refreshes read the store; only a place without stored
+ * reviews is fetched live, and concurrent requests for it share a single
+ * upstream call. Entries older than the soft TTL are still served while they
+ * are reloaded in the background, entries older than the hard TTL are
+ * dropped. A place that was never fetched fails until the upstream recovers.
+ */
 @Service
 public class ReviewService {
     
     private static final Logger logger = LoggerFactory.getLogger(ReviewService.class);
     
+    // Place details with many photos and reviews run to a few hundred KB; larger bodies are rejected
+    private static final int MAX_RESPONSE_BYTES = 4 * 1024 * 1024;
+    
     @Value("${google.places.api.key}")
     private String apiKey;
     
@@ -27,40 +69,202 @@ public class ReviewService {
     @Value("${google.places.api.place-details-path}")
     private String placeDetailsPath;
     
-    private final RestTemplate restTemplate;
+    @Value("${google.places.api.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+    
+    @Value("${google.places.api.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+    
+    @Value("${google.places.api.max-connections:50}")
+    private int maxConnections;
+    
+    @Value("${google.places.api.max-pending-requests:200}")
+    private int maxPendingRequests;
+    
+    @Value("${places.reviews.cache.max-entries:10000}")
+    private long cacheMaxEntries;
+    
+    @Value("${places.reviews.cache.soft-ttl-seconds:600}")
+    private long cacheSoftTtlSeconds;
+    
+    @Value("${places.reviews.cache.hard-ttl-seconds:86400}")
+    private long cacheHardTtlSeconds;
+    
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private UpstreamGuards upstreamGuards;
+    
+    @Autowired
+    private ReviewStore reviewStore;
+    
     private final ObjectMapper objectMapper;
+    // Review requests per place since the refresher last collected them
+    private final Map<String, Long> requestCounts = new ConcurrentHashMap<>();
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+    private AsyncLoadingCache<String, List<ReviewResponse>> cache;
+    private UpstreamGuard placeDetails;
     
     public ReviewService() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
     }
     
+    @PostConstruct
+    public void init() {
+        placeDetails = upstreamGuards.get("place-details");
+        connectionProvider = ConnectionProvider.builder("google-places")
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(maxPendingRequests)
+            .pendingAcquireTimeout(Duration.ofMillis(readTimeoutMs))
+            .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+            .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        webClient = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+        
+        // Loads and refreshes are asynchronous, so a cold miss is one future all concurrent callers wait on
+        cache = Caffeine.newBuilder()
+            .maximumSize(cacheMaxEntries)
+            .refreshAfterWrite(Duration.ofSeconds(cacheSoftTtlSeconds))
+            .expireAfterWrite(Duration.ofSeconds(cacheHardTtlSeconds))
+            .recordStats()
+            .buildAsync((placeId, executor) -> loadReviews(placeId).toFuture());
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "placeReviews");
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        connectionProvider.dispose();
+    }
+    
     /**
-     * Fetches reviews for a specific place from Google Places API
+     * Gets the reviews of a place, from the cache when possible
      * 
      * @param placeId The Google Places ID
-     * @return List of ReviewResponse objects
+     * @return The reviews, emitted once they are cached; fails if the place has
+     *         no stored reviews and the upstream call fails
      */
-    public List<ReviewResponse> getPlaceReviews(String placeId) {
-        logger.info("Fetching reviews for place ID: {}", placeId);
-        
+    public Mono<List<ReviewResponse>> getPlaceReviews(String placeId) {
         // For development, return mock reviews if API key is not configured
         if ("YOUR_API_KEY_HERE".equals(apiKey)) {
             logger.info("Using mock reviews for development");
-            return generateMockReviews(placeId);
+            return Mono.just(generateMockReviews(placeId));
         }
         
-        try {
-            String url = buildPlaceDetailsUrl(placeId);
-            logger.debug("Making request to Google Places API: {}", url);
-            
-            String response = restTemplate.getForObject(url, String.class);
-            return parseReviewsFromResponse(response);
-            
-        } catch (Exception e) {
-            logger.error("Error fetching reviews for place {}: {}", placeId, e.getMessage());
-            return generateMockReviews(placeId); // Fallback to mock data
+        requestCounts.merge(placeId, 1L, Long::sum);
+        // A caller going away must not cancel the upstream call other callers share
+        return Mono.fromFuture(cache.get(placeId), true);
+    }
+    
+    /**
+     * Starts loading the reviews of a place into the cache without waiting for them
+     * 
+     * @return false if there is nothing to load: the reviews are mocked, cached or already loading
+     */
+    boolean prefetch(String placeId) {
+        if ("YOUR_API_KEY_HERE".equals(apiKey) || cache.getIfPresent(placeId) != null) {
+            return false;
+        }
+        cache.get(placeId);
+        return true;
+    }
+    
+    /**
+     * @return Whether upstream calls that nobody waits for should be skipped
+     */
+    boolean isUpstreamSaturated() {
+        return placeDetails.isSaturated();
+    }
+    
+    /**
+     * Fetches the reviews of a place from the upstream, stores them and
+     * replaces the cached ones
+     * 
+     * @return The fresh reviews; fails if the upstream call fails
+     */
+    Mono<List<ReviewResponse>> refresh(String placeId) {
+        return fetchAndStore(placeId)
+            .doOnNext(reviews -> cache.put(placeId, CompletableFuture.completedFuture(reviews)));
+    }
+    
+    /**
+     * @return Review requests per place since the last call, which resets them
+     */
+    Map<String, Long> drainRequestCounts() {
+        Map<String, Long> drained = new HashMap<>();
+        for (String placeId : requestCounts.keySet()) {
+            Long count = requestCounts.remove(placeId);
+            if (count != null) {
+                drained.put(placeId, count);
+            }
         }
+        return drained;
+    }
+    
+    /**
+     * Loads the reviews of a place from the store, fetching them live only if
+     * the place was never stored
+     */
+    private Mono<List<ReviewResponse>> loadReviews(String placeId) {
+        // JPA blocks, so it must stay off the event loop the cache may complete on
+        return Mono.fromCallable(() -> reviewStore.find(placeId))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(stored -> stored.isPresent() ? Mono.just(stored.get()) : fetchAndStore(placeId));
+    }
+    
+    /**
+     * Fetches the reviews of a place and stores them. A place the upstream
+     * does not know has no reviews and is removed from the store rather than
+     * stored, so that made-up place ids are not refreshed forever. A failing
+     * store is only logged, the reviews are still served and stored by a
+     * later fetch.
+     */
+    private Mono<List<ReviewResponse>> fetchAndStore(String placeId) {
+        return fetchReviews(placeId)
+            .flatMap(found -> Mono.fromRunnable(() -> {
+                    if (found.isPresent()) {
+                        reviewStore.save(placeId, found.get());
+                    } else {
+                        reviewStore.delete(placeId);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error("Error storing reviews for place {}: {}", placeId, e.toString());
+                    return Mono.empty();
+                })
+                .thenReturn(found.orElseGet(List::of)));
+    }
+    
+    /**
+     * Fetches reviews for a specific place from Google Places API
+     * 
+     * @param placeId The Google Places ID
+     * @return The reviews, emitted once the upstream response has arrived;
+     *         empty if the upstream does not know the place
+     */
+    private Mono<Optional<List<ReviewResponse>>> fetchReviews(String placeId) {
+        logger.info("Fetching reviews for place ID: {}", placeId);
+        String url = buildPlaceDetailsUrl(placeId);
+        logger.debug("Making request to Google Places API: {}", url);
+        
+        // Every buffer is parsed and released as it arrives, the body is never held as a whole
+        return placeDetails.call(() -> webClient.get()
+                    .uri(url)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .reduceWith(() -> new PlaceDetailsParser(objectMapper.getFactory(), MAX_RESPONSE_BYTES),
+                        PlaceDetailsParser::feed)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .map(parser -> reviewsFromResponse(parser.finish())))
+            // Timeouts carry no message, so the exception itself is logged
+            .doOnError(e -> logger.error("Error fetching reviews for place {}: {}", placeId, e.toString()));
     }
     
     /**
@@ -72,46 +276,23 @@ public class ReviewService {
     }
     
     /**
-     * Parses reviews from Google Places API response
+     * Reads the reviews of a parsed Google Places API response
+     * 
+     * @return The reviews, empty if the response reports that the place does not exist
+     * @throws IllegalStateException if the response reports an error, so that
+     *         it does not replace cached reviews
      */
-    private List<ReviewResponse> parseReviewsFromResponse(String response) {
-        List<ReviewResponse> reviews = new ArrayList<>();
-        
-        try {
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode result = root.get("result");
-            
-            if (result != null && result.has("reviews")) {
-                JsonNode reviewsNode = result.get("reviews");
-                
-                for (JsonNode reviewNode : reviewsNode) {
-                    ReviewResponse review = new ReviewResponse();
-                    
-                    if (reviewNode.has("author_name")) {
-                        review.setAuthorName(reviewNode.get("author_name").asText());
-                    }
-                    
-                    if (reviewNode.has("rating")) {
-                        review.setRating(new BigDecimal(reviewNode.get("rating").asDouble()));
-                    }
-                    
-                    if (reviewNode.has("relative_time_description")) {
-                        review.setRelativeTimeDescription(reviewNode.get("relative_time_description").asText());
-                    }
-                    
-                    if (reviewNode.has("text")) {
-                        review.setText(reviewNode.get("text").asText());
-                    }
-                    
-                    reviews.add(review);
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Error parsing reviews response: {}", e.getMessage());
+    private Optional<List<ReviewResponse>> reviewsFromResponse(PlaceDetailsParser response) {
+        String status = response.getStatus();
+        if ("NOT_FOUND".equals(status)) {
+            logger.info("Place is unknown to the Google Places API");
+            return Optional.empty();
         }
-        
-        logger.info("Parsed {} reviews", reviews.size());
-        return reviews;
+        if (!"OK".equals(status) && !"ZERO_RESULTS".equals(status)) {
+            throw new IllegalStateException("Google Places API returned status " + status);
+        }
+        logger.info("Parsed {} reviews", response.getReviews().size());
+        return Optional.of(response.getReviews());
     }
     
     /**
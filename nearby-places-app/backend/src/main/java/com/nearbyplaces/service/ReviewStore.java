@@ -0,0 +1,164 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.ReviewResponse;
+import com.nearbyplaces.model.PlaceReviewStatus;
+import com.nearbyplaces.model.Review;
+import com.nearbyplaces.repository.PlaceReviewStatusRepository;
+import com.nearbyplaces.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persists the parsed reviews of places, so they survive restarts and cache
+ * evictions and are only fetched again when they are old.
+ *
+ * Saving is incremental: every review is identified by the hash of its
+ * author, rating and text, reviews the upstream still returns keep their row
+ * and only get their fetch time and position updated, new ones are inserted
+ * and those no longer returned are deleted.
+ */
+@Service
+public class ReviewStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReviewStore.class);
+    
+    @Autowired
+    private ReviewRepository reviewRepository;
+    
+    @Autowired
+    private PlaceReviewStatusRepository statusRepository;
+    
+    /**
+     * @return The stored reviews in upstream order, empty if the place was never fetched
+     */
+    @Transactional(readOnly = true)
+    public Optional<List<ReviewResponse>> find(String placeId) {
+        if (!statusRepository.existsById(placeId)) {
+            return Optional.empty();
+        }
+        List<ReviewResponse> reviews = new ArrayList<>();
+        for (Review review : reviewRepository.findByPlaceIdOrderByPositionAsc(placeId)) {
+            reviews.add(new ReviewResponse(review.getAuthorName(), review.getRating(),
+                review.getRelativeTimeDescription(), review.getText()));
+        }
+        return Optional.of(reviews);
+    }
+    
+    /**
+     * Replaces the stored reviews of a place with freshly fetched ones and
+     * resets its request count
+     */
+    @Transactional
+    public void save(String placeId, List<ReviewResponse> reviews) {
+        Instant now = Instant.now();
+        Map<String, ArrayDeque<Review>> stored = new HashMap<>();
+        for (Review review : reviewRepository.findByPlaceIdOrderByPositionAsc(placeId)) {
+            stored.computeIfAbsent(review.getContentHash(), hash -> new ArrayDeque<>()).add(review);
+        }
+        
+        int inserted = 0;
+        List<Review> rows = new ArrayList<>(reviews.size());
+        for (int i = 0; i < reviews.size(); i++) {
+            ReviewResponse review = reviews.get(i);
+            String hash = contentHash(review);
+            ArrayDeque<Review> same = stored.get(hash);
+            Review row = same == null ? null : same.poll();
+            if (row == null) {
+                row = new Review(placeId, i, review.getAuthorName(), review.getRating(),
+                    review.getRelativeTimeDescription(), review.getText(), hash, now);
+                inserted++;
+            } else {
+                // "2 weeks ago" moves on while the review stays the same
+                row.setPosition(i);
+                row.setRelativeTimeDescription(review.getRelativeTimeDescription());
+                row.setFetchedAt(now);
+            }
+            rows.add(row);
+        }
+        List<Review> removed = new ArrayList<>();
+        stored.values().forEach(removed::addAll);
+        reviewRepository.deleteAll(removed);
+        reviewRepository.saveAll(rows);
+        
+        PlaceReviewStatus status = statusRepository.findById(placeId)
+            .orElseGet(() -> new PlaceReviewStatus(placeId, now));
+        status.setFetchedAt(now);
+        status.setAttemptedAt(now);
+        status.setRequestCount(0);
+        statusRepository.save(status);
+        logger.debug("Stored reviews of place {}: {} new, {} unchanged, {} removed",
+            placeId, inserted, rows.size() - inserted, removed.size());
+    }
+    
+    /**
+     * Removes the stored reviews and status of a place, so that it is no
+     * longer refreshed
+     */
+    @Transactional
+    public void delete(String placeId) {
+        int reviews = reviewRepository.deleteByPlaceId(placeId);
+        if (statusRepository.existsById(placeId)) {
+            statusRepository.deleteById(placeId);
+            logger.debug("Removed place {} and its {} stored reviews", placeId, reviews);
+        }
+    }
+    
+    /**
+     * @param staleBefore Places not attempted since then are stale
+     * @return Up to limit stale places, the most requested and then the longest unattempted first
+     */
+    @Transactional(readOnly = true)
+    public List<String> findStale(Instant staleBefore, int limit) {
+        List<String> placeIds = new ArrayList<>();
+        for (PlaceReviewStatus status : statusRepository.findStale(staleBefore, PageRequest.of(0, limit))) {
+            placeIds.add(status.getPlaceId());
+        }
+        return placeIds;
+    }
+    
+    /**
+     * Records a fetch attempt, so that a failing place keeps its stored
+     * reviews and is not tried again before it is stale once more
+     */
+    @Transactional
+    public void markAttempted(String placeId) {
+        statusRepository.markAttempted(placeId, Instant.now());
+    }
+    
+    /**
+     * Adds review requests to the counts of stored places; places that are
+     * not stored are ignored
+     */
+    @Transactional
+    public void addRequests(Map<String, Long> requestCounts) {
+        requestCounts.forEach(statusRepository::addRequests);
+    }
+    
+    private static String contentHash(ReviewResponse review) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String content = review.getAuthorName() + '\0'
+                + (review.getRating() == null ? "" : review.getRating().stripTrailingZeros().toPlainString()) + '\0'
+                + review.getText();
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.PlaceResponse;
+import com.nearbyplaces.index.CellRange;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Answers nearby and k-NN searches by scattering them over the shards of a
+ * sharded catalogue and gathering their results.
+ *
+ * Every shard is a backend instance indexing the places of one
+ * {@link CellRange} (places.shard.cell-range), which it reports under
+ * /api/index/shard. A nearby search only goes to the shards whose range
+ * intersects the covering of the search circle; every shard applies sort and
+ * limit to its own places, so merging the partial results and ranking them
+ * again yields the global top k. A k-NN search first asks the shard holding
+ * the search center, then only the shards within the distance of its kth
+ * place.
+ *
+ * Shards not answering within shard-timeout-ms are left out and reported, so
+ * a slow or failed shard degrades a search to partial results instead of
+ * failing it. Shards whose range is not known yet are always asked.
+ *
+ * Streamed nearby searches are gathered as a whole before they are written.
+ * Paged nearby searches are not coordinated: their cursors hold row ids of a
+ * single index.
+ */
+@Service
+public class ShardCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    @Autowired
+    private PlaceService placeService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${places.coordinator.shards:}")
+    private String shardUrls;
+
+    @Value("${places.coordinator.shard-timeout-ms:2000}")
+    private long shardTimeoutMs;
+
+    @Value("${places.coordinator.range-refresh-seconds:30}")
+    private long rangeRefreshSeconds;
+
+    @Value("${places.coordinator.threads:0}")
+    private int threads;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private RestTemplate restTemplate;
+    private ExecutorService pool;
+    private ScheduledExecutorService rangeRefresher;
+
+    @PostConstruct
+    public void init() {
+        for (String url : shardUrls.split(",")) {
+            if (!url.isBlank()) {
+                shards.add(new Shard(url.trim().replaceAll("/+$", "")));
+            }
+        }
+        if (shards.isEmpty()) {
+            return;
+        }
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) shardTimeoutMs);
+        requestFactory.setReadTimeout((int) shardTimeoutMs);
+        restTemplate = new RestTemplate(requestFactory);
+        pool = Executors.newFixedThreadPool(threads > 0 ? threads : 8 * shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rangeRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-range-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rangeRefresher.scheduleWithFixedDelay(this::refreshRanges, 0, rangeRefreshSeconds, TimeUnit.SECONDS);
+        logger.info("Coordinating nearby searches over {} shards", shards.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            rangeRefresher.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if shards are configured (places.coordinator.shards) and searches should go to them
+     */
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    /**
+     * Finds nearby places on the shards whose range the search circle touches
+     *
+     * @param sort distance, rating or relevance; null keeps the shard order
+     * @param limit Maximum number of places, null for all; without a sort the closest are kept
+     * @return The merged places and the shards that did not answer
+     * @throws IllegalArgumentException if the sort is unknown or a shard rejects the search
+     */
+    public Result findNearbyPlaces(double latitude, double longitude, double radius, String type,
+                                   String sort, Integer limit) {
+        NearbySort order = NearbySort.parse(sort);
+        if (order == null && limit != null) {
+            order = NearbySort.DISTANCE;
+        }
+
+        List<Shard> targets = new ArrayList<>();
+        for (Shard shard : shards) {
+            CellRange range = shard.range;
+            if (range == null || range.intersectsCircle(latitude, longitude, radius)) {
+                targets.add(shard);
+            }
+        }
+
+        UriComponentsBuilder query = UriComponentsBuilder.fromPath("/api/nearby")
+            .queryParam("latitude", latitude)
+            .queryParam("longitude", longitude)
+            .queryParam("radius", radius);
+        if (type != null) {
+            query.queryParam("type", type);
+        }
+        if (sort != null) {
+            query.queryParam("sort", sort);
+        }
+        if (limit != null) {
+            query.queryParam("limit", limit);
+        }
+        Result gathered = gather(targets, query.encode().build().toUriString());
+        logger.debug("Nearby search went to {} of {} shards", targets.size(), shards.size());
+
+        List<PlaceResponse> places = order == null
+            ? gathered.places : placeService.rank(gathered.places, latitude, longitude, order, limit);
+        return new Result(places, gathered.failedShards);
+    }
+
+    /**
+     * Finds the k nearest places, asking the shard of the search center first
+     * and then only the shards that can hold places closer than its kth one
+     *
+     * @return The k nearest places by distance and the shards that did not answer
+     * @throws IllegalArgumentException if a shard rejects the search
+     */
+    public Result findNearestPlaces(double latitude, double longitude, int k, String type) {
+        UriComponentsBuilder query = UriComponentsBuilder.fromPath("/api/nearby/knn")
+            .queryParam("latitude", latitude)
+            .queryParam("longitude", longitude)
+            .queryParam("k", k);
+        if (type != null) {
+            query.queryParam("type", type);
+        }
+        String path = query.encode().build().toUriString();
+
+        List<Shard> home = new ArrayList<>();
+        List<Shard> others = new ArrayList<>();
+        for (Shard shard : shards) {
+            CellRange range = shard.range;
+            if (range != null && range.contains(latitude, longitude)) {
+                home.add(shard);
+            } else {
+                others.add(shard);
+            }
+        }
+
+        List<PlaceResponse> places = new ArrayList<>();
+        List<String> failedShards = new ArrayList<>();
+        if (!home.isEmpty()) {
+            Result first = gather(home, path);
+            places.addAll(placeService.rank(first.places, latitude, longitude, NearbySort.DISTANCE, k));
+            failedShards.addAll(first.failedShards);
+            // With k places at hand only shards closer than the kth one can improve the result
+            if (places.size() == k) {
+                double kthDistanceKm = places.get(k - 1).getDistance();
+                others.removeIf(shard -> shard.range != null
+                    && !shard.range.intersectsCircle(latitude, longitude, kthDistanceKm));
+            }
+        }
+        if (!others.isEmpty()) {
+            Result rest = gather(others, path);
+            places.addAll(rest.places);
+            failedShards.addAll(rest.failedShards);
+        }
+        logger.debug("k-NN search went to {} of {} shards", home.size() + others.size(), shards.size());
+        return new Result(placeService.rank(places, latitude, longitude, NearbySort.DISTANCE, k), failedShards);
+    }
+
+    /**
+     * Sends the request to all shards at once and waits for them until the
+     * shard timeout has passed
+     *
+     * @param path Path and query of the request
+     * @return Places of all answering shards, in shard order
+     */
+    private Result gather(List<Shard> targets, String path) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shardTimeoutMs);
+        List<Future<PlaceResponse[]>> futures = new ArrayList<>(targets.size());
+        for (Shard shard : targets) {
+            URI uri = URI.create(shard.url + path);
+            futures.add(pool.submit(() -> restTemplate.getForObject(uri, PlaceResponse[].class)));
+        }
+
+        List<PlaceResponse> places = new ArrayList<>();
+        List<String> failedShards = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            Shard shard = targets.get(i);
+            long start = System.nanoTime();
+            String outcome = "success";
+            try {
+                PlaceResponse[] found = futures.get(i).get(Math.max(0, deadline - start), TimeUnit.NANOSECONDS);
+                if (found != null) {
+                    places.addAll(Arrays.asList(found));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Sharded search was interrupted", e);
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                outcome = "timeout";
+                failedShards.add(shard.url);
+                logger.warn("Shard {} did not answer within {}ms", shard.url, shardTimeoutMs);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof HttpClientErrorException rejected) {
+                    throw new IllegalArgumentException("Shard rejected the search: " + rejected.getStatusText());
+                }
+                outcome = "error";
+                failedShards.add(shard.url);
+                logger.warn("Shard {} failed: {}", shard.url, e.getCause().getMessage());
+            }
+            if (meterRegistry != null) {
+                Timer.builder("places.coordinator.shard.requests")
+                    .description("Searches sent to shards, by outcome")
+                    .tag("shard", shard.url)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        return new Result(places, failedShards);
+    }
+
+    /**
+     * Asks every shard for its cell range; shards that do not answer keep the range they had
+     */
+    private void refreshRanges() {
+        for (Shard shard : shards) {
+            try {
+                Map<?, ?> info = restTemplate.getForObject(shard.url + "/api/index/shard", Map.class);
+                CellRange range = CellRange.parse(info == null ? null : (String) info.get("cellRange"));
+                if (!range.toString().equals(String.valueOf(shard.range))) {
+                    logger.info("Shard {} serves cell range {}", shard.url, range.isWorld() ? "world" : range);
+                }
+                shard.range = range;
+            } catch (RuntimeException e) {
+                logger.warn("Could not get the cell range of shard {}: {}", shard.url, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Shard {
+
+        final String url;
+        // Null until the shard reported its range
+        volatile CellRange range;
+
+        Shard(String url) {
+            this.url = url;
+        }
+    }
+
+    /**
+     * Places gathered from the shards
+     */
+    public static final class Result {
+
+        private final List<PlaceResponse> places;
+        private final List<String> failedShards;
+
+        Result(List<PlaceResponse> places, List<String> failedShards) {
+            this.places = places;
+            this.failedShards = failedShards;
+        }
+
+        public List<PlaceResponse> getPlaces() {
+            return places;
+        }
+
+        /**
+         * @return Urls of the shards left out after a timeout or error
+         */
+        public List<String> getFailedShards() {
+            return Collections.unmodifiableList(failedShards);
+        }
+
+        /**
+         * @return Whether shards were left out, so places may be missing
+         */
+        public boolean isPartial() {
+            return !failedShards.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.nearbyplaces.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Resilience wrapper of one upstream endpoint: a bulkhead limiting the calls
+ * in flight, a deadline per call and a {@link CircuitBreaker}.
+ *
+ * Calls that find the bulkhead full or the circuit open fail immediately with
+ * an {@link IllegalStateException} instead of waiting, so a slow upstream
+ * costs its callers no more than the deadline and stops being called at all
+ * once it keeps failing. Rejected calls do not count as failures.
+ */
+final class UpstreamGuard {
+
+    enum Outcome {
+        SUCCESS, FAILURE, TIMEOUT, BULKHEAD_FULL, CIRCUIT_OPEN
+    }
+
+    private final String endpoint;
+    private final int maxConcurrentCalls;
+    private final Duration timeout;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    UpstreamGuard(String endpoint, int maxConcurrentCalls, Duration timeout, CircuitBreaker circuitBreaker,
+                  MeterRegistry meterRegistry) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("An upstream endpoint needs at least one concurrent call");
+        }
+        this.endpoint = endpoint;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.timeout = timeout;
+        this.circuitBreaker = circuitBreaker;
+        if (meterRegistry != null) {
+            Gauge.builder("places.upstream.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+            Gauge.builder("places.upstream.circuit.failure.rate", circuitBreaker, CircuitBreaker::getFailureRate)
+                .description("Failure rate in percent of the calls in the circuit breaker window")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+            Gauge.builder("places.upstream.bulkhead.calls", inFlight, AtomicInteger::get)
+                .description("Upstream calls in flight")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+            for (Outcome outcome : Outcome.values()) {
+                outcomes.put(outcome, Counter.builder("places.upstream.calls")
+                    .description("Upstream calls by outcome")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Runs the call unless the bulkhead is full or the circuit is open
+     *
+     * @param call Creates the upstream call, only invoked if it is admitted
+     * @return The call's result, failing with a {@link TimeoutException} after
+     *         the deadline and with an {@link IllegalStateException} if rejected
+     */
+    <T> Mono<T> call(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            if (inFlight.incrementAndGet() > maxConcurrentCalls) {
+                inFlight.decrementAndGet();
+                count(Outcome.BULKHEAD_FULL);
+                return Mono.error(new IllegalStateException(
+                    "Too many concurrent calls to upstream endpoint " + endpoint));
+            }
+            long generation = circuitBreaker.tryAcquire(System.nanoTime());
+            if (generation == CircuitBreaker.REJECTED) {
+                inFlight.decrementAndGet();
+                count(Outcome.CIRCUIT_OPEN);
+                return Mono.error(new IllegalStateException("Circuit of upstream endpoint " + endpoint + " is open"));
+            }
+
+            AtomicBoolean completed = new AtomicBoolean();
+            return Mono.defer(call)
+                .timeout(timeout)
+                .doOnSuccess(result -> {
+                    completed.set(true);
+                    circuitBreaker.onSuccess(generation);
+                    count(Outcome.SUCCESS);
+                })
+                .doOnError(e -> {
+                    completed.set(true);
+                    circuitBreaker.onFailure(generation, System.nanoTime());
+                    count(e instanceof TimeoutException ? Outcome.TIMEOUT : Outcome.FAILURE);
+                })
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    if (signal == SignalType.CANCEL && !completed.get()) {
+                        circuitBreaker.onIgnored(generation);
+                    }
+                });
+        });
+    }
+
+    /**
+     * Background work only gets the lower half of the bulkhead, so it never
+     * takes the capacity needed by calls someone is waiting for
+     *
+     * @return Whether optional calls should be skipped: the circuit is not
+     *         closed or half the bulkhead is in use
+     */
+    boolean isSaturated() {
+        return circuitBreaker.getState() != CircuitBreaker.State.CLOSED || inFlight.get() * 2 >= maxConcurrentCalls;
+    }
+
+    private void count(Outcome outcome) {
+        Counter counter = outcomes.get(outcome);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.nearbyplaces.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resilience layer of the Google Places upstream, one {@link UpstreamGuard}
+ * per endpoint.
+ *
+ * Every setting is read from google.places.api.resilience.&lt;endpoint&gt;.&lt;setting&gt;
+ * and falls back to google.places.api.resilience.&lt;setting&gt;, so endpoints
+ * share defaults but can be tuned one by one.
+ */
+@Service
+public class UpstreamGuards {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamGuards.class);
+
+    private static final String PREFIX = "google.places.api.resilience.";
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * @param endpoint Name of the upstream endpoint, e.g. place-details
+     * @return The guard of the endpoint, created on first use
+     */
+    UpstreamGuard get(String endpoint) {
+        return guards.computeIfAbsent(endpoint, this::create);
+    }
+
+    private UpstreamGuard create(String endpoint) {
+        int maxConcurrentCalls = setting(endpoint, "max-concurrent-calls", Integer.class, 20);
+        long timeoutMs = setting(endpoint, "timeout-ms", Long.class, 3000L);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+            setting(endpoint, "sliding-window-size", Integer.class, 50),
+            setting(endpoint, "minimum-calls", Integer.class, 10),
+            setting(endpoint, "failure-rate-threshold", Double.class, 50.0),
+            TimeUnit.MILLISECONDS.toNanos(setting(endpoint, "open-duration-ms", Long.class, 30000L)),
+            setting(endpoint, "half-open-calls", Integer.class, 3));
+        logger.info("Guarding upstream endpoint {} with {} concurrent calls and a {}ms deadline",
+            endpoint, maxConcurrentCalls, timeoutMs);
+        return new UpstreamGuard(endpoint, maxConcurrentCalls, Duration.ofMillis(timeoutMs), circuitBreaker,
+            meterRegistry);
+    }
+
+    private <T> T setting(String endpoint, String name, Class<T> type, T defaultValue) {
+        return environment.getProperty(PREFIX + endpoint + "." + name, type,
+            environment.getProperty(PREFIX + name, type, defaultValue));
+    }
+}
@@ -0,0 +1,149 @@
+package com.nearbyplaces.controller;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the application as a coordinator of one stub shard and one shard that
+ * is down
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.datasource.url=jdbc:h2:mem:coordinator",
+    "places.reviews.prefetch.top-n=0",
+    "places.reviews.store.refresh-budget-per-minute=0"
+})
+class PlaceControllerCoordinatorTest {
+
+    // The farther place comes first, so the coordinator has to rank the shard's places
+    private static final String SHARD_PLACES = "["
+        + "{\"name\": \"Far\", \"latitude\": 48.8650, \"longitude\": 2.3500, \"placeId\": \"far\"},"
+        + "{\"name\": \"Near\", \"latitude\": 48.8570, \"longitude\": 2.3500, \"placeId\": \"near\"}]";
+
+    private static final AtomicInteger shardSearches = new AtomicInteger();
+    private static final DisposableServer shard = HttpServer.create()
+        .host("127.0.0.1")
+        .port(0)
+        .route(routes -> routes
+            .get("/api/index/shard", (request, response) -> json(response, "{\"cellRange\": \"\"}"))
+            .get("/api/nearby", (request, response) -> {
+                shardSearches.incrementAndGet();
+                return search(request, response);
+            })
+            .get("/api/nearby/knn", PlaceControllerCoordinatorTest::search))
+        .bindNow();
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .build();
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void shards(DynamicPropertyRegistry registry) throws Exception {
+        int downPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            downPort = socket.getLocalPort();
+        }
+        registry.add("places.coordinator.shards",
+            () -> "http://127.0.0.1:" + shard.port() + ",http://127.0.0.1:" + downPort);
+    }
+
+    @AfterAll
+    static void stopShard() {
+        shard.disposeNow();
+    }
+
+    @Test
+    void streamedSearchIsGatheredFromTheShards() throws Exception {
+        int searches = shardSearches.get();
+
+        HttpResponse<String> response = send("/api/nearby?latitude=48.8566&longitude=2.3522&radius=5",
+            "application/x-ndjson");
+
+        assertEquals(200, response.statusCode());
+        assertEquals(searches + 1, shardSearches.get());
+        String[] lines = response.body().split("\n");
+        assertEquals(2, lines.length, response.body());
+        assertTrue(lines[0].contains("\"placeId\":\"near\""), lines[0]);
+        assertTrue(lines[1].contains("\"placeId\":\"far\""), lines[1]);
+        assertEquals("true", response.headers().firstValue("X-Partial-Results").orElse(null));
+    }
+
+    @Test
+    void pagedSearchIsRejected() throws Exception {
+        int searches = shardSearches.get();
+
+        HttpResponse<String> response = send("/api/nearby/page?latitude=48.8566&longitude=2.3522&radius=5",
+            "application/json");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("Paging is not available on a coordinator"), response.body());
+        assertEquals(searches, shardSearches.get());
+    }
+
+    @Test
+    void searchesRejectedByAShardAreBadRequests() throws Exception {
+        HttpResponse<String> get = send("/api/nearby?latitude=48.8566&longitude=2.3522&radius=5&type=rejected",
+            "application/json");
+        HttpResponse<String> knn = send("/api/nearby/knn?latitude=48.8566&longitude=2.3522&k=5&type=rejected",
+            "application/json");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/nearby"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(
+                "{\"latitude\": 48.8566, \"longitude\": 2.3522, \"radius\": 5, \"type\": \"rejected\"}"))
+            .build();
+        HttpResponse<String> post = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        for (HttpResponse<String> response : List.of(get, knn, post)) {
+            assertEquals(400, response.statusCode(), response.uri() + " " + response.body());
+            assertTrue(response.body().contains("Shard rejected the search"), response.body());
+        }
+    }
+
+    private HttpResponse<String> send(String path, String accept) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+            .header("Accept", accept)
+            .GET()
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Answers with the shard places, or rejects searches for the type "rejected"
+     */
+    private static Mono<Void> search(HttpServerRequest request, HttpServerResponse response) {
+        if (request.uri().contains("type=rejected")) {
+            return response.status(HttpResponseStatus.BAD_REQUEST).send().then();
+        }
+        return json(response, SHARD_PLACES);
+    }
+
+    private static Mono<Void> json(HttpServerResponse response, String body) {
+        return response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+            .sendString(Mono.just(body))
+            .then();
+    }
+}
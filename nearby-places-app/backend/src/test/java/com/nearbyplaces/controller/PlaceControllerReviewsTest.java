@@ -0,0 +1,98 @@
+package com.nearbyplaces.controller;
+
+import com.nearbyplaces.service.StubPlacesServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the application with two request threads against a stub upstream, so
+ * a reviews request that held its thread while waiting would be noticed
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "server.tomcat.threads.max=2",
+    "server.tomcat.threads.min-spare=1",
+    "google.places.api.key=test-key",
+    "places.reviews.prefetch.top-n=0",
+    "places.reviews.store.refresh-budget-per-minute=0"
+})
+class PlaceControllerReviewsTest {
+
+    private static final StubPlacesServer stub = new StubPlacesServer();
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .build();
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("google.places.api.base-url", stub::getBaseUrl);
+        registry.add("google.places.api.place-details-path", () -> StubPlacesServer.PLACE_DETAILS_PATH);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void waitingForTheUpstreamHoldsNoRequestThread() throws Exception {
+        // The first request of the application initializes the dispatcher
+        assertEquals(200, send("/api/health").get(10, TimeUnit.SECONDS).statusCode());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            stub.respond("slow_" + i, Duration.ofSeconds(1), StubPlacesServer.reviews("Review of place " + i));
+            responses.add(send("/api/places/slow_" + i + "/reviews"));
+        }
+
+        // Both request threads would be blocked here if reviews requests held them
+        HttpResponse<String> health = send("/api/health").get(10, TimeUnit.SECONDS);
+        assertEquals(200, health.statusCode());
+        assertTrue(responses.stream().noneMatch(CompletableFuture::isDone), "Reviews were answered before health");
+
+        for (int i = 0; i < responses.size(); i++) {
+            HttpResponse<String> response = responses.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("Review of place " + i), response.body());
+        }
+        // Eight one second calls on two threads would take at least four seconds if they blocked
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs < 3000, "Took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void failingUpstreamAnswersServiceUnavailable() throws Exception {
+        stub.respond("denied", Duration.ZERO, StubPlacesServer.status("REQUEST_DENIED"));
+
+        HttpResponse<String> response = send("/api/places/denied/reviews").get(10, TimeUnit.SECONDS);
+
+        assertEquals(503, response.statusCode());
+        assertTrue(response.body().contains("Reviews are temporarily unavailable"), response.body());
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).GET().build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,74 @@
+package com.nearbyplaces.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class CellCoveringTest {
+
+    @Test
+    void circleCoveringMatchesBruteForce() {
+        Random random = new Random(160);
+        for (double[] centre : GeoSamples.CENTRES) {
+            for (double radiusKm : GeoSamples.RADII_KM) {
+                CellCovering covering = CellCovering.ofCircle(centre[0], centre[1], radiusKm,
+                    GeoGridIndex.MAX_COVERING_CELLS);
+                String query = radiusKm + " km around " + centre[0] + ", " + centre[1];
+
+                assertTrue(covering.size() > 0 && covering.size() <= GeoGridIndex.MAX_COVERING_CELLS,
+                    covering.size() + " cells for " + query);
+                for (int i = 0; i < covering.size(); i++) {
+                    assertTrue(covering.rangeMin(i) <= covering.rangeMax(i), query);
+                    assertTrue(i == 0 || covering.rangeMax(i - 1) < covering.rangeMin(i),
+                        "Ranges out of order for " + query);
+                }
+
+                double toleranceKm = GeoSamples.toleranceKm(radiusKm);
+                for (double[] point : GeoSamples.around(centre[0], centre[1], radiusKm, 2000, random)) {
+                    double distanceKm = GeoUtils.distanceKm(centre[0], centre[1], point[0], point[1]);
+                    int range = find(covering, CellId.fromLatLng(point[0], point[1]));
+                    if (distanceKm < radiusKm - toleranceKm && range < 0) {
+                        fail("Point " + point[0] + ", " + point[1] + " at " + distanceKm + " km is not covered by "
+                            + query);
+                    }
+                    if (range >= 0 && covering.isInterior(range) && distanceKm > radiusKm + toleranceKm) {
+                        fail("Point " + point[0] + ", " + point[1] + " at " + distanceKm + " km is in an interior"
+                            + " cell of " + query);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void boxCoveringAcrossTheAntimeridianMatchesBruteForce() {
+        Random random = new Random(161);
+        BoundingBox box = new BoundingBox(-20, 35, 170, -165);
+        CellCovering covering = CellCovering.ofBox(box, GeoGridIndex.MAX_COVERING_CELLS);
+
+        for (int i = 0; i < 20000; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            boolean inside = latitude >= -20 && latitude <= 35 && (longitude >= 170 || longitude <= -165);
+            int range = find(covering, CellId.fromLatLng(latitude, longitude));
+            assertTrue(!inside || range >= 0, latitude + ", " + longitude + " is not covered");
+            assertTrue(inside || range < 0 || !covering.isInterior(range),
+                latitude + ", " + longitude + " is in an interior cell");
+        }
+    }
+
+    /**
+     * @return Index of the range holding the leaf, -1 if none does
+     */
+    private static int find(CellCovering covering, long leaf) {
+        for (int i = 0; i < covering.size(); i++) {
+            if (covering.rangeMin(i) <= leaf && leaf <= covering.rangeMax(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,90 @@
+package com.nearbyplaces.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CellIdTest {
+
+    @Test
+    void leafCellLiesInsideEveryAncestor() {
+        Random random = new Random(16);
+        for (int i = 0; i < 1000; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            long leaf = CellId.fromLatLng(latitude, longitude);
+
+            assertEquals(CellId.MAX_LEVEL, CellId.level(leaf));
+            assertEquals(leaf, CellId.rangeMin(leaf));
+            assertEquals(leaf, CellId.rangeMax(leaf));
+            for (int level = 0; level < CellId.MAX_LEVEL; level++) {
+                long parent = CellId.parent(leaf, level);
+                assertEquals(level, CellId.level(parent));
+                assertEquals(CellId.fromCell(level, CellId.x(level, longitude), CellId.y(level, latitude)), parent);
+                assertTrue(CellId.rangeMin(parent) <= leaf && leaf <= CellId.rangeMax(parent));
+            }
+        }
+    }
+
+    @Test
+    void childrenSplitTheirParentIntoFourContiguousRanges() {
+        Random random = new Random(61);
+        for (int i = 0; i < 500; i++) {
+            int level = random.nextInt(CellId.MAX_LEVEL);
+            int x = random.nextInt(1 << level);
+            int y = random.nextInt(1 << level);
+            long parent = CellId.fromCell(level, x, y);
+
+            long[] children = new long[4];
+            for (int child = 0; child < 4; child++) {
+                children[child] = CellId.fromCell(level + 1, 2 * x + (child & 1), 2 * y + (child >> 1));
+                assertEquals(parent, CellId.parent(children[child], level));
+            }
+            Arrays.sort(children);
+            // Leaf ids are odd, so adjacent ranges are two apart
+            assertEquals(CellId.rangeMin(parent), CellId.rangeMin(children[0]));
+            for (int child = 1; child < 4; child++) {
+                assertEquals(CellId.rangeMax(children[child - 1]) + 2, CellId.rangeMin(children[child]));
+            }
+            assertEquals(CellId.rangeMax(parent), CellId.rangeMax(children[3]));
+        }
+    }
+
+    @Test
+    void polesAndAntimeridianMapToEdgeCells() {
+        int last = (1 << CellId.MAX_LEVEL) - 1;
+        assertEquals(0, CellId.x(CellId.MAX_LEVEL, -180));
+        assertEquals(last, CellId.x(CellId.MAX_LEVEL, 180));
+        assertEquals(0, CellId.y(CellId.MAX_LEVEL, -90));
+        assertEquals(last, CellId.y(CellId.MAX_LEVEL, 90));
+        assertEquals(CellId.fromCell(CellId.MAX_LEVEL, last, last), CellId.fromLatLng(90, 180));
+        assertEquals(CellId.fromCell(CellId.MAX_LEVEL, 0, 0), CellId.fromLatLng(-90, -180));
+
+        // Level 0 is the whole globe, holding every leaf
+        long globe = CellId.fromCell(0, 0, 0);
+        for (double[] corner : new double[][] {{-90, -180}, {-90, 180}, {90, -180}, {90, 180}, {0, 0}}) {
+            long leaf = CellId.fromLatLng(corner[0], corner[1]);
+            assertTrue(CellId.rangeMin(globe) <= leaf && leaf <= CellId.rangeMax(globe));
+            assertEquals(globe, CellId.parent(leaf, 0));
+        }
+    }
+
+    @Test
+    void tokensRoundTrip() {
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            long id = CellId.parent(CellId.fromLatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180),
+                random.nextInt(CellId.MAX_LEVEL + 1));
+            assertEquals(id, CellId.fromToken(CellId.toToken(id)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CellId.fromToken(""));
+        assertThrows(IllegalArgumentException.class, () -> CellId.fromToken("zz"));
+        assertThrows(IllegalArgumentException.class, () -> CellId.fromToken("2"));
+        assertThrows(IllegalArgumentException.class, () -> CellId.fromToken("0123456789abcdef0"));
+    }
+}
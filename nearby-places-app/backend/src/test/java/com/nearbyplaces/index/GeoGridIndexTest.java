@@ -0,0 +1,102 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoGridIndexTest {
+
+    @Test
+    void radiusSearchMatchesBruteForce() {
+        Random random = new Random(1600);
+        List<Place> places = new ArrayList<>();
+        for (double[] centre : GeoSamples.CENTRES) {
+            for (double scaleKm : new double[] {0.1, 10, 1000}) {
+                for (double[] point : GeoSamples.around(centre[0], centre[1], scaleKm, 300, random)) {
+                    places.add(place(places.size(), point[0], point[1]));
+                }
+            }
+        }
+        PlaceSnapshot snapshot = PlaceSnapshot.build(new EntityPlaceTable(places), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            new ScalarDistanceKernel());
+        GeoGridIndex index = snapshot.getGridIndex();
+        PlaceTable table = snapshot.getTable();
+        assertTrue(index.isRowsInCellOrder());
+
+        for (double[] centre : GeoSamples.CENTRES) {
+            for (double radiusKm : GeoSamples.RADII_KM) {
+                String query = radiusKm + " km around " + centre[0] + ", " + centre[1];
+                int[] ranges = index.rangesWithinRadius(centre[0], centre[1], radiusKm);
+                // Text search walks its postings along these ranges in one pass
+                for (int i = 0; i < ranges.length; i += 2) {
+                    assertTrue(ranges[i] < ranges[i + 1], "Empty range for " + query);
+                    assertTrue(i == 0 || ranges[i - 1] < ranges[i], "Ranges out of order for " + query);
+                }
+
+                Set<Integer> found = new HashSet<>();
+                for (int row : index.findRowsWithinRadius(centre[0], centre[1], radiusKm, null)) {
+                    found.add(row);
+                }
+                double toleranceKm = GeoSamples.toleranceKm(radiusKm);
+                for (int row = 0; row < table.size(); row++) {
+                    double distanceKm = GeoUtils.distanceKm(centre[0], centre[1], table.latitude(row),
+                        table.longitude(row));
+                    String place = "Place at " + table.latitude(row) + ", " + table.longitude(row) + ", "
+                        + distanceKm + " km";
+                    if (distanceKm < radiusKm - toleranceKm) {
+                        assertTrue(found.contains(row), place + " not found within " + query);
+                        assertTrue(inRanges(ranges, row), place + " outside the ranges of " + query);
+                    } else if (distanceKm > radiusKm + toleranceKm) {
+                        assertFalse(found.contains(row), place + " found within " + query);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void interruptedSearchStopsScanning() {
+        Random random = new Random(8);
+        List<Place> places = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            places.add(place(i, 48 + random.nextDouble(), 2 + random.nextDouble()));
+        }
+        GeoGridIndex index = GeoGridIndex.build(new EntityPlaceTable(places), new ScalarDistanceKernel());
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> index.findRowsWithinRadius(48.5, 2.5, 100, null));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1000, index.findRowsWithinRadius(48.5, 2.5, 100, null).length);
+    }
+
+    private static boolean inRanges(int[] ranges, int position) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] <= position && position < ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Place place(int i, double latitude, double longitude) {
+        Place place = new Place("Place " + i, "Address " + i, BigDecimal.valueOf(latitude),
+            BigDecimal.valueOf(longitude), null, "place_" + i, List.of("point_of_interest"));
+        place.setId((long) i + 1);
+        return place;
+    }
+}
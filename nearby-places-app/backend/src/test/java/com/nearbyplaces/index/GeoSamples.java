@@ -0,0 +1,66 @@
+package com.nearbyplaces.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Query centres, radii and sample points for checking spatial searches
+ * against a brute-force haversine scan, with an emphasis on the antimeridian
+ * and the poles where latitude/longitude cells degenerate.
+ */
+final class GeoSamples {
+
+    static final double[][] CENTRES = {
+        {0, 0}, {0, 179.99}, {0, -179.99}, {45, 180}, {-45, -180}, {60, 179.9}, {-33.9, -179.95},
+        {89.99, 0}, {-89.99, 120}, {90, 0}, {-90, 45}, {-89.5, -179.5}, {88, 179}
+    };
+
+    static final double[] RADII_KM = {0.1, 1, 10, 100, 1000, 5000, 20000, 50000};
+
+    private GeoSamples() {}
+
+    /**
+     * @return Points at random bearings up to 1.5 radii from the centre, random
+     *         points on the whole globe, the poles and points on both sides of
+     *         the antimeridian; every point as a {latitude, longitude} pair
+     */
+    static List<double[]> around(double latitude, double longitude, double radiusKm, int count, Random random) {
+        List<double[]> points = new ArrayList<>(count + 16);
+        for (int i = 0; i < count; i++) {
+            points.add(destination(latitude, longitude, random.nextDouble() * 360,
+                Math.min(random.nextDouble() * 1.5 * radiusKm, Math.PI * GeoUtils.EARTH_RADIUS_KM)));
+        }
+        for (int i = 0; i < count / 4; i++) {
+            points.add(new double[] {Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)),
+                random.nextDouble() * 360 - 180});
+        }
+        for (double lat : new double[] {-90, -89.999, latitude, 89.999, 90}) {
+            for (double lng : new double[] {-180, -179.9999, 179.9999, 180}) {
+                points.add(new double[] {lat, lng});
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return The point reached from the start along a great circle, as a {latitude, longitude} pair
+     */
+    static double[] destination(double latitude, double longitude, double bearingDegrees, double distanceKm) {
+        double lat = Math.toRadians(latitude);
+        double bearing = Math.toRadians(bearingDegrees);
+        double angle = distanceKm / GeoUtils.EARTH_RADIUS_KM;
+        double endLat = Math.asin(Math.sin(lat) * Math.cos(angle)
+            + Math.cos(lat) * Math.sin(angle) * Math.cos(bearing));
+        double endLng = Math.toRadians(longitude) + Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(lat),
+            Math.cos(angle) - Math.sin(lat) * Math.sin(endLat));
+        return new double[] {Math.toDegrees(endLat), GeoUtils.normalizeLongitude(Math.toDegrees(endLng))};
+    }
+
+    /**
+     * @return Distance around the radius within which float rounding may decide either way
+     */
+    static double toleranceKm(double radiusKm) {
+        return Math.max(1e-3, radiusKm * 1e-9);
+    }
+}
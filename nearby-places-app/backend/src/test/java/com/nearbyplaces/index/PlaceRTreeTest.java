@@ -0,0 +1,112 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaceRTreeTest {
+
+    private static final int SIZE = 2000;
+
+    private PlaceTable table;
+    private PlaceRTree tree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        List<Place> places = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            // Every tenth place repeats the previous one, so the scan has to break ties
+            boolean duplicate = i % 10 == 9;
+            Place previous = duplicate ? places.get(i - 1) : null;
+            Place place = new Place("Place " + i, "Address " + i,
+                duplicate ? previous.getLatitude() : BigDecimal.valueOf(48.0 + random.nextDouble()),
+                duplicate ? previous.getLongitude() : BigDecimal.valueOf(2.0 + random.nextDouble()),
+                null, duplicate ? previous.getPlaceId() : "place_" + i, List.of("point_of_interest"));
+            place.setId((long) i + 1);
+            places.add(place);
+        }
+        table = new EntityPlaceTable(places);
+        tree = PlaceRTree.build(table, PlaceRTree.DEFAULT_NODE_CAPACITY);
+    }
+
+    @Test
+    void nearestMatchesExhaustiveSearch() {
+        List<PlaceRTree.Neighbor> nearest = tree.nearest(48.3, 2.7, 40, row -> row % 3 != 0);
+
+        List<Double> expected = new ArrayList<>();
+        for (int row = 0; row < SIZE; row++) {
+            if (row % 3 != 0) {
+                expected.add(GeoUtils.distanceKm(48.3, 2.7, table.latitude(row), table.longitude(row)));
+            }
+        }
+        expected.sort(null);
+        assertEquals(40, nearest.size());
+        for (int i = 0; i < nearest.size(); i++) {
+            assertTrue(nearest.get(i).getRowId() % 3 != 0);
+            assertEquals(expected.get(i), nearest.get(i).getDistanceKm());
+        }
+    }
+
+    @Test
+    void pagedScanMatchesFullScan() {
+        List<PlaceRTree.Neighbor> full = drain(tree.scan(48.5, 2.5, 40, null, -1, null, -1), Integer.MAX_VALUE);
+
+        List<PlaceRTree.Neighbor> paged = new ArrayList<>();
+        PlaceRTree.Neighbor last = null;
+        while (true) {
+            Iterator<PlaceRTree.Neighbor> page = last == null
+                ? tree.scan(48.5, 2.5, 40, null, -1, null, -1)
+                : tree.scan(48.5, 2.5, 40, null, last.getDistanceKm(), table.placeId(last.getRowId()), last.getRowId());
+            List<PlaceRTree.Neighbor> neighbors = drain(page, 37);
+            if (neighbors.isEmpty()) {
+                break;
+            }
+            paged.addAll(neighbors);
+            last = neighbors.get(neighbors.size() - 1);
+        }
+
+        assertEquals(full.size(), paged.size());
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.get(i).getRowId(), paged.get(i).getRowId());
+            assertEquals(full.get(i).getDistanceKm(), paged.get(i).getDistanceKm());
+        }
+        for (int i = 1; i < full.size(); i++) {
+            assertTrue(full.get(i - 1).getDistanceKm() <= full.get(i).getDistanceKm());
+        }
+    }
+
+    @Test
+    void resumedScanSkipsNodesBeforeTheCursor() {
+        List<PlaceRTree.Neighbor> full = drain(tree.scan(48.5, 2.5, 200, null, -1, null, -1), Integer.MAX_VALUE);
+        assertEquals(SIZE, full.size());
+        PlaceRTree.Neighbor cursor = full.get(SIZE - 100);
+
+        // The filter is only consulted for the places of expanded leaves
+        AtomicInteger tested = new AtomicInteger();
+        List<PlaceRTree.Neighbor> rest = drain(tree.scan(48.5, 2.5, 200, row -> tested.incrementAndGet() > 0,
+            cursor.getDistanceKm(), table.placeId(cursor.getRowId()), cursor.getRowId()), Integer.MAX_VALUE);
+
+        assertEquals(99, rest.size());
+        assertEquals(full.get(SIZE - 99).getRowId(), rest.get(0).getRowId());
+        assertTrue(tested.get() < SIZE / 2, "Expanded leaves held " + tested.get() + " places");
+    }
+
+    private static List<PlaceRTree.Neighbor> drain(Iterator<PlaceRTree.Neighbor> scan, int limit) {
+        List<PlaceRTree.Neighbor> neighbors = new ArrayList<>();
+        while (neighbors.size() < limit && scan.hasNext()) {
+            neighbors.add(scan.next());
+        }
+        return neighbors;
+    }
+}
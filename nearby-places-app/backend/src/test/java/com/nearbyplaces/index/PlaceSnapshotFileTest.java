@@ -0,0 +1,98 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PlaceSnapshotFileTest {
+
+    private static final int SIZE = 3000;
+    private static final String[] WORDS = {"Cafe", "Bakery", "Museum", "Garden", "Bistro", "Église", "Market"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mappedSnapshotAnswersLikeTheBuiltOne() throws IOException {
+        PlaceSnapshot built = PlaceSnapshot.build(new EntityPlaceTable(places()), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            new ScalarDistanceKernel());
+        Path path = directory.resolve("places.snapshot");
+        PlaceSnapshotFile.write(built, path);
+
+        PlaceSnapshot mapped = PlaceSnapshotFile.open(path, new ScalarDistanceKernel());
+
+        assertEquals(built.size(), mapped.size());
+        TypeFilter cafes = TypeFilter.parse("cafe");
+        assertNeighborsEqual(built.nearest(48.5, 2.5, 50, null), mapped.nearest(48.5, 2.5, 50, null));
+        assertNeighborsEqual(built.nearest(48.1, 2.9, 20, cafes), mapped.nearest(48.1, 2.9, 20, cafes));
+        assertNeighborsEqual(drain(built.scan(48.5, 2.5, 15, null, -1, null, -1)),
+            drain(mapped.scan(48.5, 2.5, 15, null, -1, null, -1)));
+
+        for (String query : List.of("cafe", "eglise garden", "bakry", "zzz")) {
+            List<TextIndex.Hit> expected = built.search(query, 48.5, 2.5, 30, 25);
+            List<TextIndex.Hit> actual = mapped.search(query, 48.5, 2.5, 30, 25);
+            assertEquals(expected.size(), actual.size(), query);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getRowId(), actual.get(i).getRowId(), query);
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), query);
+            }
+        }
+        assertFalse(mapped.search("cafe", 48.5, 2.5, 30, 25).isEmpty());
+    }
+
+    @Test
+    void emptySnapshotCanBeWrittenAndOpened() throws IOException {
+        PlaceSnapshot built = PlaceSnapshot.build(new EntityPlaceTable(List.of()), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            new ScalarDistanceKernel());
+        Path path = directory.resolve("empty.snapshot");
+        PlaceSnapshotFile.write(built, path);
+
+        PlaceSnapshot mapped = PlaceSnapshotFile.open(path, new ScalarDistanceKernel());
+
+        assertEquals(0, mapped.size());
+        assertEquals(0, mapped.nearest(48.5, 2.5, 10, null).size());
+        assertEquals(0, mapped.search("cafe", 48.5, 2.5, 30, 10).size());
+    }
+
+    private static List<Place> places() {
+        Random random = new Random(7);
+        List<Place> places = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            Place place = new Place(word + " " + WORDS[random.nextInt(WORDS.length)] + " " + i,
+                i + " Rue " + WORDS[random.nextInt(WORDS.length)],
+                BigDecimal.valueOf(48.0 + random.nextDouble()), BigDecimal.valueOf(2.0 + random.nextDouble()),
+                null, "place_" + i, List.of(word.toLowerCase(), "point_of_interest"));
+            place.setId((long) i + 1);
+            places.add(place);
+        }
+        return places;
+    }
+
+    private static void assertNeighborsEqual(List<PlaceRTree.Neighbor> expected, List<PlaceRTree.Neighbor> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRowId(), actual.get(i).getRowId());
+            assertEquals(expected.get(i).getDistanceKm(), actual.get(i).getDistanceKm());
+        }
+    }
+
+    private static List<PlaceRTree.Neighbor> drain(Iterator<PlaceRTree.Neighbor> scan) {
+        List<PlaceRTree.Neighbor> neighbors = new ArrayList<>();
+        while (scan.hasNext()) {
+            neighbors.add(scan.next());
+        }
+        return neighbors;
+    }
+}
@@ -0,0 +1,135 @@
+package com.nearbyplaces.index;
+
+import com.nearbyplaces.model.Place;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Measures how partitioned radius searches scale with the number of partitions
+ * and pool threads. Not part of the default test run, as the class name does
+ * not match the surefire includes; run it on the target host with
+ * <pre>
+ * mvn -B test -Dtest=SearchPartitionsBenchmark -Dbenchmark.partitions=1,2,4,8,16,32
+ * </pre>
+ * Settings, all optional:
+ * <ul>
+ *   <li>benchmark.places: number of indexed places, default 200000</li>
+ *   <li>benchmark.radius-km: search radius, default 150</li>
+ *   <li>benchmark.limit: closest places to keep, 0 for all matches, default 0</li>
+ *   <li>benchmark.partitions: comma separated partition counts, default 1,2,4,8,16,32</li>
+ *   <li>benchmark.pool-size: threads of the search pool, 0 for one per partition, default 0</li>
+ *   <li>benchmark.warmup: untimed rounds per partition count, default 5</li>
+ *   <li>benchmark.rounds: timed rounds per partition count, default 20</li>
+ * </ul>
+ * Every partitioned result is checked against the sequential search, so a
+ * run also fails when partitioning changes the rows or distances.
+ */
+@Tag("benchmark")
+class SearchPartitionsBenchmark {
+
+    private static final int QUERIES = 8;
+
+    private static PlaceSnapshot snapshot;
+    private static double[][] queries;
+    private static double radiusKm;
+    private static int limit;
+
+    @BeforeAll
+    static void setUp() {
+        int size = Integer.getInteger("benchmark.places", 200_000);
+        radiusKm = Double.parseDouble(System.getProperty("benchmark.radius-km", "150"));
+        limit = Integer.getInteger("benchmark.limit", 0);
+
+        Random random = new Random(18);
+        List<Place> places = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Place place = new Place("Place " + i, "Address " + i,
+                BigDecimal.valueOf(46.5 + random.nextDouble() * 4), BigDecimal.valueOf(random.nextDouble() * 5),
+                null, "place_" + i, List.of("point_of_interest"));
+            place.setId((long) i + 1);
+            places.add(place);
+        }
+        snapshot = PlaceSnapshot.build(new EntityPlaceTable(places), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            DistanceKernels.select(true));
+
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new double[] {47.5 + random.nextDouble() * 2, 1.5 + random.nextDouble() * 2};
+        }
+        System.out.printf("%d places, %.1f km radius, limit %d, %d cores%n",
+            size, radiusKm, limit, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    void scaling() {
+        int poolSize = Integer.getInteger("benchmark.pool-size", 0);
+        int warmup = Integer.getInteger("benchmark.warmup", 5);
+        int rounds = Integer.getInteger("benchmark.rounds", 20);
+
+        NearbyMatches[] expected = new NearbyMatches[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            expected[q] = search(q, SearchPartitions.SEQUENTIAL);
+        }
+
+        double baselineMs = Double.NaN;
+        System.out.printf("%10s %6s %10s %10s %10s %8s%n", "partitions", "pool", "matches", "median ms",
+            "p90 ms", "speedup");
+        for (String value : System.getProperty("benchmark.partitions", "1,2,4,8,16,32").split(",")) {
+            int count = Integer.parseInt(value.trim());
+            int threads = poolSize > 0 ? poolSize : count;
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                SearchPartitions partitions = new SearchPartitions(count, pool);
+                for (int q = 0; q < QUERIES; q++) {
+                    assertSameMatches(expected[q], search(q, partitions));
+                }
+                for (int round = 0; round < warmup; round++) {
+                    searchAll(partitions);
+                }
+                double[] timesMs = new double[rounds];
+                long matches = 0;
+                for (int round = 0; round < rounds; round++) {
+                    long start = System.nanoTime();
+                    matches = searchAll(partitions);
+                    timesMs[round] = (System.nanoTime() - start) / 1e6 / QUERIES;
+                }
+                Arrays.sort(timesMs);
+                double medianMs = timesMs[rounds / 2];
+                if (Double.isNaN(baselineMs)) {
+                    baselineMs = medianMs;
+                }
+                System.out.printf("%10d %6d %10d %10.2f %10.2f %7.2fx%n", count, threads, matches / QUERIES,
+                    medianMs, timesMs[Math.min(rounds - 1, (int) (rounds * 0.9))], baselineMs / medianMs);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static NearbyMatches search(int query, SearchPartitions partitions) {
+        return snapshot.findNearby(queries[query][0], queries[query][1], radiusKm, null, limit, partitions);
+    }
+
+    private static long searchAll(SearchPartitions partitions) {
+        long matches = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            matches += search(q, partitions).size();
+        }
+        return matches;
+    }
+
+    private static void assertSameMatches(NearbyMatches expected, NearbyMatches actual) {
+        assertArrayEquals(expected.getRows(), actual.getRows());
+        assertArrayEquals(expected.getDistances(), actual.getDistances());
+    }
+}
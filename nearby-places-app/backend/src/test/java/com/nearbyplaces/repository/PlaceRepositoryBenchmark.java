@@ -0,0 +1,197 @@
+package com.nearbyplaces.repository;
+
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.index.GeoUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the full-scan radius query of {@link PlaceRepository} with its
+ * bounding-box prefiltered one on H2 over plain JDBC. Both run the SQL of the
+ * repository annotations against the table and index Hibernate creates for
+ * {@link com.nearbyplaces.model.Place}. Not part of the default test run, as
+ * the class name does not match the surefire includes; run it with
+ * <pre>
+ * mvn -B test -Dtest=PlaceRepositoryBenchmark -Dbenchmark.rows=100000,1000000
+ * </pre>
+ * Settings, all optional:
+ * <ul>
+ *   <li>benchmark.rows: comma separated table sizes, default 100000,1000000</li>
+ *   <li>benchmark.radii-km: comma separated radii, default 1,5,50</li>
+ *   <li>benchmark.index: whether to create the coordinate index, default true</li>
+ *   <li>benchmark.rounds: timed rounds of the bounding-box query, default 200</li>
+ *   <li>benchmark.full-scan-rounds: timed rounds of the full scan, default 5</li>
+ * </ul>
+ * Rows are spread uniformly over a 10 x 10 degree area and every round queries
+ * a random centre inside it. Both queries must return the same rows.
+ */
+@Tag("benchmark")
+class PlaceRepositoryBenchmark {
+
+    private static final Pattern PARAMETER = Pattern.compile(":(\\w+)");
+    private static final int CENTRES = 20;
+
+    @Test
+    void boundingBoxAgainstFullScan() throws Exception {
+        double[] radii = Arrays.stream(System.getProperty("benchmark.radii-km", "1,5,50").split(","))
+            .mapToDouble(value -> Double.parseDouble(value.trim())).toArray();
+        boolean index = Boolean.parseBoolean(System.getProperty("benchmark.index", "true"));
+        int rounds = Integer.getInteger("benchmark.rounds", 200);
+        int fullScanRounds = Integer.getInteger("benchmark.full-scan-rounds", 5);
+
+        String fullScan = query("findNearbyPlaces");
+        String boundingBox = query("findWithinBoundingBox");
+
+        System.out.printf("%10s %8s %14s %14s %8s%n", "rows", "radius", "full scan ms", "bbox ms", "matches");
+        for (String value : System.getProperty("benchmark.rows", "100000,1000000").split(",")) {
+            int rows = Integer.parseInt(value.trim());
+            try (Connection connection = DriverManager.getConnection(
+                    "jdbc:h2:mem:bbox_benchmark_" + rows, "sa", "")) {
+                createTable(connection, rows, index);
+                Random random = new Random(3);
+                double[][] centres = new double[CENTRES][];
+                for (int i = 0; i < CENTRES; i++) {
+                    centres[i] = new double[] {45 + random.nextDouble() * 10, random.nextDouble() * 10};
+                }
+
+                for (double radius : radii) {
+                    long matches = 0;
+                    try (PreparedStatement full = prepare(connection, fullScan);
+                         PreparedStatement box = prepare(connection, boundingBox)) {
+                        for (double[] centre : centres) {
+                            Set<Long> expected = ids(full, fullScan, centre, radius);
+                            assertEquals(expected, ids(box, boundingBox, centre, radius),
+                                "Rows differ at " + Arrays.toString(centre) + " within " + radius + " km");
+                            matches += expected.size();
+                        }
+                        double fullScanMs = medianMs(full, fullScan, centres, radius, fullScanRounds);
+                        double boundingBoxMs = medianMs(box, boundingBox, centres, radius, rounds);
+                        System.out.printf("%10d %8.1f %14.2f %14.2f %8d%n", rows, radius, fullScanMs,
+                            boundingBoxMs, matches / CENTRES);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The native SQL of the repository method
+     */
+    private static String query(String methodName) {
+        for (Method method : PlaceRepository.class.getMethods()) {
+            if (method.getName().equals(methodName) && method.isAnnotationPresent(Query.class)) {
+                return method.getAnnotation(Query.class).value();
+            }
+        }
+        throw new IllegalArgumentException("No query method " + methodName);
+    }
+
+    /**
+     * Table and index as generated by Hibernate for the place entity
+     */
+    private static void createTable(Connection connection, int rows, boolean index) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE places (id BIGINT GENERATED BY DEFAULT AS IDENTITY, "
+                + "address VARCHAR(255) NOT NULL, latitude NUMERIC(10,8) NOT NULL, "
+                + "longitude NUMERIC(11,8) NOT NULL, name VARCHAR(255) NOT NULL, place_id VARCHAR(255), "
+                + "rating NUMERIC(3,1), PRIMARY KEY (id))");
+            if (index) {
+                statement.execute("CREATE INDEX idx_places_lat_lng ON places (latitude, longitude)");
+            }
+        }
+        Random random = new Random(rows);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO places (address, latitude, longitude, name, place_id, rating) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setString(1, "Address " + i);
+                insert.setDouble(2, 45 + random.nextDouble() * 10);
+                insert.setDouble(3, random.nextDouble() * 10);
+                insert.setString(4, "Place " + i);
+                insert.setString(5, "place_" + i);
+                insert.setDouble(6, 1 + random.nextInt(41) / 10.0);
+                insert.addBatch();
+                if (i % 10_000 == 9_999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return connection.prepareStatement(PARAMETER.matcher(sql).replaceAll("?"));
+    }
+
+    /**
+     * Binds the named parameters of the repository query in order of appearance
+     */
+    private static void bind(PreparedStatement statement, String sql, double[] centre, double radius)
+            throws SQLException {
+        BoundingBox box = GeoUtils.boundingBox(centre[0], centre[1], radius);
+        boolean wraps = box.crossesAntimeridian();
+        Map<String, Double> values = new HashMap<>();
+        values.put("latitude", centre[0]);
+        values.put("longitude", centre[1]);
+        values.put("radius", radius);
+        values.put("minLat", box.getMinLat());
+        values.put("maxLat", box.getMaxLat());
+        values.put("minLng", box.getMinLng());
+        values.put("maxLng", wraps ? 180.0 : box.getMaxLng());
+        values.put("wrapMinLng", wraps ? -180.0 : box.getMinLng());
+        values.put("wrapMaxLng", box.getMaxLng());
+
+        Matcher matcher = PARAMETER.matcher(sql);
+        int position = 1;
+        while (matcher.find()) {
+            statement.setDouble(position++, values.get(matcher.group(1)));
+        }
+    }
+
+    private static Set<Long> ids(PreparedStatement statement, String sql, double[] centre, double radius)
+            throws SQLException {
+        bind(statement, sql, centre, radius);
+        Set<Long> ids = new HashSet<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong("id"));
+            }
+        }
+        return ids;
+    }
+
+    private static double medianMs(PreparedStatement statement, String sql, double[][] centres, double radius,
+                                   int rounds) throws SQLException {
+        List<Double> timesMs = new ArrayList<>(rounds);
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            ids(statement, sql, centres[round % centres.length], radius);
+            timesMs.add((System.nanoTime() - start) / 1e6);
+        }
+        timesMs.sort(null);
+        return timesMs.get(rounds / 2);
+    }
+}
@@ -0,0 +1,119 @@
+package com.nearbyplaces.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_NANOS = 1000;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, OPEN_NANOS, 2);
+
+    @Test
+    void opensOnceTheWindowReachesTheFailureRate() {
+        fail(0);
+        fail(0);
+        succeed();
+        // Above the threshold, but fewer calls than the minimum
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(200.0 / 3, breaker.getFailureRate(), 1e-9);
+
+        fail(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(OPEN_NANOS - 1));
+    }
+
+    @Test
+    void failuresThatSlideOutOfTheWindowNoLongerCount() {
+        fail(0);
+        succeed();
+        succeed();
+        succeed();
+        // The window now holds three successes and this failure
+        fail(0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(25.0, breaker.getFailureRate());
+    }
+
+    @Test
+    void rejectsWhileOpenAndClosesAfterSuccessfulProbes() {
+        open(100);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(100 + OPEN_NANOS - 1));
+
+        long first = breaker.tryAcquire(100 + OPEN_NANOS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        long second = breaker.tryAcquire(100 + OPEN_NANOS);
+        assertNotEquals(CircuitBreaker.REJECTED, first);
+        assertNotEquals(CircuitBreaker.REJECTED, second);
+        // Only half-open-calls probes are let through
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(100 + OPEN_NANOS));
+
+        breaker.onSuccess(first);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(second);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+    }
+
+    @Test
+    void failedProbeOpensAgain() {
+        open(100);
+        long probe = breaker.tryAcquire(100 + OPEN_NANOS);
+
+        breaker.onFailure(probe, 2000);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(2000 + OPEN_NANOS - 1));
+        assertNotEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(2000 + OPEN_NANOS));
+    }
+
+    @Test
+    void callsAdmittedBeforeAStateChangeAreNotTakenForProbes() {
+        long slow = breaker.tryAcquire(0);
+        open(100);
+        long probe = breaker.tryAcquire(100 + OPEN_NANOS);
+
+        // Completing while half-open, the slow call must neither close nor reopen the breaker
+        breaker.onSuccess(slow);
+        breaker.onFailure(slow, 100 + OPEN_NANOS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(probe);
+        breaker.onSuccess(breaker.tryAcquire(100 + OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void cancelledProbeFreesItsSlot() {
+        open(100);
+        long cancelled = breaker.tryAcquire(100 + OPEN_NANOS);
+        long probe = breaker.tryAcquire(100 + OPEN_NANOS);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(100 + OPEN_NANOS));
+
+        breaker.onIgnored(cancelled);
+        long retry = breaker.tryAcquire(100 + OPEN_NANOS);
+        assertNotEquals(CircuitBreaker.REJECTED, retry);
+
+        breaker.onSuccess(probe);
+        breaker.onSuccess(retry);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void open(long now) {
+        for (int i = 0; i < 4; i++) {
+            fail(now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void succeed() {
+        breaker.onSuccess(breaker.tryAcquire(0));
+    }
+
+    private void fail(long now) {
+        breaker.onFailure(breaker.tryAcquire(now), now);
+    }
+}
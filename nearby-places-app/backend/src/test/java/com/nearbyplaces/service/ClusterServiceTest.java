@@ -0,0 +1,119 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.ClusterResponse;
+import com.nearbyplaces.event.PlaceChangedEvent;
+import com.nearbyplaces.index.BoundingBox;
+import com.nearbyplaces.model.Place;
+import com.nearbyplaces.repository.PlaceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Shares the application context of {@link PlaceIndexServiceTest}
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:placeindex",
+    "places.index.delta-interval-ms=3600000",
+    "places.index.max-delta-places=5",
+    "places.reviews.prefetch.top-n=0",
+    "places.reviews.store.refresh-budget-per-minute=0"
+})
+class ClusterServiceTest {
+
+    private static final BoundingBox WORLD = new BoundingBox(-85, 85, -180, 180);
+
+    @Autowired
+    private ClusterService clusterService;
+
+    @Autowired
+    private PlaceRepository placeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        placeRepository.deleteAll();
+        clusterService.rebuild();
+    }
+
+    @Test
+    void rolledBackWritesNeverChangeTheClusters() {
+        Place kept = placeRepository.save(place("kept", 48.8566, 2.3522, "4.0"));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            placeRepository.saveAndFlush(place("rolled_back", 48.8570, 2.3525, "5.0"));
+            Place moved = placeRepository.findById(kept.getId()).orElseThrow();
+            moved.setLatitude(new BigDecimal("-33.86880000"));
+            placeRepository.flush();
+            placeRepository.deleteById(kept.getId());
+            placeRepository.flush();
+            status.setRollbackOnly();
+        });
+
+        List<ClusterResponse> clusters = clusterService.findClusters(WORLD, 0, null);
+        assertEquals(1, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals("kept", clusters.get(0).getTopPlaceId());
+        assertEquals(48.8566, clusters.get(0).getLatitude(), 1e-9);
+    }
+
+    @Test
+    void changesCommittedDuringARebuildAreKept() {
+        ClusterService service = new ClusterService();
+        PlaceRepository repository = Mockito.mock(PlaceRepository.class);
+        ReflectionTestUtils.setField(service, "placeRepository", repository);
+        ReflectionTestUtils.setField(service, "maxZoom", 16);
+        ReflectionTestUtils.setField(service, "cellsPerTile", 4);
+        ReflectionTestUtils.setField(service, "maxFilteredPyramids", 32);
+
+        Place first = place("first", 48.8566, 2.3522, "4.0");
+        first.setId(1L);
+        Place second = place("second", 48.8570, 2.3525, "3.0");
+        second.setId(2L);
+        Place late = place("late", 48.8575, 2.3530, "5.0");
+        late.setId(3L);
+
+        // Committed while the repository is read at startup, after the read passed them
+        Mockito.when(repository.findAllWithTypes()).thenAnswer(invocation -> {
+            service.onPlaceChanged(new PlaceChangedEvent(PlaceChangedEvent.Type.CREATED, late));
+            service.onPlaceChanged(new PlaceChangedEvent(PlaceChangedEvent.Type.DELETED, second));
+            return new ArrayList<>(List.of(first, second));
+        });
+        service.rebuild();
+
+        List<ClusterResponse> clusters = service.findClusters(WORLD, 0, null);
+        assertEquals(2, clusters.get(0).getCount());
+        assertEquals("late", clusters.get(0).getTopPlaceId());
+
+        // Committed while a later rebuild swaps pyramids
+        Place moved = place("first", -33.8688, 151.2093, "4.0");
+        moved.setId(1L);
+        Mockito.when(repository.findAllWithTypes()).thenAnswer(invocation -> {
+            service.onPlaceChanged(new PlaceChangedEvent(PlaceChangedEvent.Type.UPDATED, moved));
+            return new ArrayList<>(List.of(first, late));
+        });
+        service.rebuild();
+
+        clusters = service.findClusters(WORLD, 0, null);
+        assertEquals(2, clusters.stream().mapToInt(ClusterResponse::getCount).sum());
+        assertEquals(1, service.findClusters(new BoundingBox(-40, -30, 150, 152), 4, null).size());
+        assertEquals(1, service.findClusters(new BoundingBox(48, 49, 2, 3), 4, null).get(0).getCount());
+    }
+
+    private static Place place(String placeId, double latitude, double longitude, String rating) {
+        return new Place("Place " + placeId, "Address " + placeId, BigDecimal.valueOf(latitude),
+            BigDecimal.valueOf(longitude), new BigDecimal(rating), placeId, List.of("point_of_interest"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.NearbyBatchResponse;
+import com.nearbyplaces.dto.NearbyBatchResult;
+import com.nearbyplaces.dto.NearbyPlacesRequest;
+import com.nearbyplaces.dto.PlaceResponse;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NearbyBatchServiceTest {
+
+    private PlaceService placeService;
+    private NearbyBatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        placeService = mock(PlaceService.class);
+        Validator validator = mock(Validator.class);
+
+        batchService = new NearbyBatchService();
+        ReflectionTestUtils.setField(batchService, "placeService", placeService);
+        ReflectionTestUtils.setField(batchService, "validator", validator);
+        ReflectionTestUtils.setField(batchService, "maxQueries", 500);
+        ReflectionTestUtils.setField(batchService, "parallelism", 1);
+        ReflectionTestUtils.setField(batchService, "queryTimeoutMs", 300L);
+        batchService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    void timeoutExcludesTimeWaitingForAThread() {
+        when(placeService.findNearbyPlaces(anyDouble(), anyDouble(), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                Thread.sleep(150);
+                return List.of(new PlaceResponse("Cafe", "1 Main St", 1.0, 1.0, 4.0, "cafe"));
+            });
+
+        // On a single thread the last query waits 600ms before it starts, twice the timeout
+        List<NearbyPlacesRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new NearbyPlacesRequest(1.0, 1.0 + i, 5.0));
+        }
+        NearbyBatchResponse response = batchService.findNearbyPlaces(requests);
+
+        for (NearbyBatchResult result : response.getResults()) {
+            assertNull(result.getError());
+            assertEquals(List.of(0), result.getPlaces());
+        }
+    }
+
+    @Test
+    void slowQueryOnlyFailsItsOwnResult() {
+        when(placeService.findNearbyPlaces(anyDouble(), eq(1.0), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                Thread.sleep(1000);
+                return List.of();
+            });
+        when(placeService.findNearbyPlaces(anyDouble(), eq(2.0), anyDouble(), any(), any(), any()))
+            .thenReturn(List.of(new PlaceResponse("Cafe", "1 Main St", 1.0, 2.0, 4.0, "cafe")));
+
+        NearbyBatchResponse response = batchService.findNearbyPlaces(List.of(
+            new NearbyPlacesRequest(1.0, 1.0, 5.0), new NearbyPlacesRequest(1.0, 2.0, 5.0)));
+
+        assertEquals("Query timed out", response.getResults().get(0).getError());
+        assertNull(response.getResults().get(1).getError());
+        assertEquals(List.of(0), response.getResults().get(1).getPlaces());
+    }
+
+    @Test
+    void timedOutQueryIsInterruptedAndFreesItsThread() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        when(placeService.findNearbyPlaces(anyDouble(), eq(1.0), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                // Scans like the index does, until it is interrupted
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (System.nanoTime() < deadline) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        interrupted.set(true);
+                        throw new CancellationException("Search was interrupted");
+                    }
+                }
+                return List.of();
+            });
+        when(placeService.findNearbyPlaces(anyDouble(), eq(2.0), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                // Fails if the interrupt of the previous query leaked into this one
+                Thread.sleep(50);
+                return List.of(new PlaceResponse("Cafe", "1 Main St", 1.0, 2.0, 4.0, "cafe"));
+            });
+
+        // On a single thread the second query only starts once the first one let go of it
+        long start = System.nanoTime();
+        NearbyBatchResponse response = batchService.findNearbyPlaces(List.of(
+            new NearbyPlacesRequest(1.0, 1.0, 5.0), new NearbyPlacesRequest(1.0, 2.0, 5.0)));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("Query timed out", response.getResults().get(0).getError());
+        assertNull(response.getResults().get(1).getError());
+        assertEquals(List.of(0), response.getResults().get(1).getPlaces());
+        assertTrue(interrupted.get());
+        assertTrue(elapsedMs < 2000, "Took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void sharedPlaceKeepsTheDistanceOfEachQuery() {
+        when(placeService.findNearbyPlaces(eq(1.0), anyDouble(), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> List.of(place("cafe", 1.2), place("park", 2.5)));
+        when(placeService.findNearbyPlaces(eq(2.0), anyDouble(), anyDouble(), any(), any(), any()))
+            .thenAnswer(invocation -> List.of(place("park", 0.4)));
+
+        NearbyBatchResponse response = batchService.findNearbyPlaces(List.of(
+            new NearbyPlacesRequest(1.0, 1.0, 5.0), new NearbyPlacesRequest(2.0, 1.0, 5.0)));
+
+        assertEquals(2, response.getPlaces().size());
+        assertNull(response.getPlaces().get(1).getDistance());
+        NearbyBatchResult first = response.getResults().get(0);
+        assertEquals(List.of(0, 1), first.getPlaces());
+        assertEquals(List.of(1.2, 2.5), first.getDistances());
+        NearbyBatchResult second = response.getResults().get(1);
+        assertEquals(List.of(1), second.getPlaces());
+        assertEquals(List.of(0.4), second.getDistances());
+    }
+
+    private static PlaceResponse place(String placeId, double distanceKm) {
+        PlaceResponse place = new PlaceResponse(placeId, "1 Main St", 1.5, 1.5, 4.0, placeId);
+        place.setDistance(distanceKm);
+        return place;
+    }
+}
@@ -0,0 +1,135 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.event.SnapshotReplacedEvent;
+import com.nearbyplaces.index.DistanceKernels;
+import com.nearbyplaces.index.EntityPlaceTable;
+import com.nearbyplaces.index.NearbyMatches;
+import com.nearbyplaces.index.PlaceRTree;
+import com.nearbyplaces.index.PlaceSnapshot;
+import com.nearbyplaces.index.SearchPartitions;
+import com.nearbyplaces.model.Place;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NearbyResultCacheTest {
+
+    private List<Place> places;
+    private PlaceSnapshot snapshot;
+    private NearbyResultCache cache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        places = new ArrayList<>();
+        addPlace(places, "Tokyo Station", 35.6812, 139.7671);
+        addPlace(places, "Sydney Opera House", -33.8568, 151.2153);
+        addPlace(places, "Times Square", 40.7580, -73.9855);
+        addPlace(places, "Louvre", 48.8606, 2.3376);
+        addPlace(places, "Waikiki Beach", 21.2766, -157.8278);
+        addPlace(places, "Fiji Parliament", -18.1416, 178.4419);
+        snapshot = PlaceSnapshot.build(new EntityPlaceTable(places), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            DistanceKernels.select(false));
+
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new NearbyResultCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cellSizeDegrees", 0.005);
+        ReflectionTestUtils.setField(cache, "radiusBuckets", new double[] {0.5, 1, 2, 5, 10, 25, 50});
+        ReflectionTestUtils.setField(cache, "maxRows", 10000L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        cache.init();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "35.6800, 139.7650",
+        "-33.8570, 151.2150",
+        "40.7590, -73.9850",
+        "48.8600, 2.3380",
+        "21.2770, -157.8280",
+        "-18.1400, 178.4400"
+    })
+    void cachedSearchMatchesUncachedSearchOnEveryMeridian(double latitude, double longitude) {
+        NearbyMatches expected = snapshot.findNearby(latitude, longitude, 5, null, 0, SearchPartitions.SEQUENTIAL);
+        assertEquals(1, expected.size());
+
+        NearbyMatches cold = cache.findWithinRadius(snapshot, latitude, longitude, 5, null, 0);
+        NearbyMatches warm = cache.findWithinRadius(snapshot, latitude, longitude, 5, null, 0);
+
+        assertArrayEquals(expected.getRows(), cold.getRows());
+        assertArrayEquals(expected.getRows(), warm.getRows());
+    }
+
+    @Test
+    void entriesSurviveBatchesOfChanges() {
+        cache.findWithinRadius(snapshot, 48.8600, 2.3380, 5, null, 0);
+        cache.findWithinRadius(snapshot, 48.8600, 2.3380, 5, null, 0);
+
+        // Moves Tokyo Station next to the Louvre, deletes the Louvre and adds a place
+        Place moved = place(1, "Tokyo Station", 48.8610, 2.3390);
+        Place added = place(7, "Musee d'Orsay", 48.8600, 2.3266);
+        PlaceSnapshot changed = snapshot.withChanges(List.of(moved, added), List.of(4L));
+        NearbyMatches expected = changed.findNearby(48.8600, 2.3380, 5, null, 0, SearchPartitions.SEQUENTIAL);
+        NearbyMatches cached = cache.findWithinRadius(changed, 48.8600, 2.3380, 5, null, 0);
+
+        assertEquals(2, expected.size());
+        assertEquals(placeIds(changed, expected), placeIds(changed, cached));
+        assertEquals(2.0, gets("hit"));
+        assertEquals(1.0, gets("miss"));
+    }
+
+    @Test
+    void lookupsAfterACompactionAreMisses() {
+        cache.findWithinRadius(snapshot, 48.8600, 2.3380, 5, null, 0);
+
+        PlaceSnapshot rebuilt = PlaceSnapshot.build(new EntityPlaceTable(places), PlaceRTree.DEFAULT_NODE_CAPACITY,
+            DistanceKernels.select(false));
+        cache.onSnapshotReplaced(new SnapshotReplacedEvent(rebuilt));
+        NearbyMatches matches = cache.findWithinRadius(rebuilt, 48.8600, 2.3380, 5, null, 0);
+
+        assertEquals(1, matches.size());
+        assertEquals(0.0, gets("hit"));
+        assertEquals(2.0, gets("miss"));
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("result", result).functionCounter().count();
+    }
+
+    private static Set<String> placeIds(PlaceSnapshot snapshot, NearbyMatches matches) {
+        Set<String> placeIds = new HashSet<>();
+        for (int row : matches.getRows()) {
+            placeIds.add(snapshot.getTable().placeId(row));
+        }
+        return placeIds;
+    }
+
+    private static Place place(long id, String name, double latitude, double longitude) {
+        Place place = new Place(name, name, BigDecimal.valueOf(latitude), BigDecimal.valueOf(longitude),
+            null, "place_" + (id - 1), Arrays.asList("point_of_interest"));
+        place.setId(id);
+        return place;
+    }
+
+    private static void addPlace(List<Place> places, String name, double latitude, double longitude) {
+        Place place = new Place(name, name, BigDecimal.valueOf(latitude), BigDecimal.valueOf(longitude),
+            null, "place_" + places.size(), Arrays.asList("point_of_interest"));
+        place.setId((long) places.size() + 1);
+        places.add(place);
+    }
+}
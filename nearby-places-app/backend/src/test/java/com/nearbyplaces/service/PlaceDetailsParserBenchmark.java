@@ -0,0 +1,190 @@
+package com.nearbyplaces.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nearbyplaces.dto.ReviewResponse;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares parsing Place Details responses buffer by buffer with
+ * {@link PlaceDetailsParser} against joining the buffers first and running a
+ * blocking parser over the joined body, as ReviewService did before. Both read
+ * the same fields. Not part of the default test run, as the class name does
+ * not match the surefire includes; run it with
+ * <pre>
+ * mvn -B test -Dtest=PlaceDetailsParserBenchmark
+ * </pre>
+ * Settings, all optional:
+ * <ul>
+ *   <li>benchmark.payload-kb: comma separated response sizes, default 50,100,200</li>
+ *   <li>benchmark.chunk-bytes: size of the buffers the body arrives in, default 8192</li>
+ *   <li>benchmark.warmup: untimed iterations per case, default 2000</li>
+ *   <li>benchmark.iterations: timed iterations per case, default 2000</li>
+ * </ul>
+ * Prints the median time and the bytes allocated per parsed response.
+ */
+@Tag("benchmark")
+class PlaceDetailsParserBenchmark {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+    private static final int REVIEWS = 5;
+
+    private final DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+
+    @Test
+    void streamedAgainstJoined() {
+        int chunkBytes = Integer.getInteger("benchmark.chunk-bytes", 8192);
+        int warmup = Integer.getInteger("benchmark.warmup", 2000);
+        int iterations = Integer.getInteger("benchmark.iterations", 2000);
+
+        System.out.printf("%8s %10s %12s %16s%n", "payload", "parser", "median us", "allocated KB/op");
+        for (String value : System.getProperty("benchmark.payload-kb", "50,100,200").split(",")) {
+            byte[] body = response(Integer.parseInt(value.trim()) * 1024);
+            assertEquals(REVIEWS, streamed(body, chunkBytes).size());
+            assertEquals(REVIEWS, joined(body, chunkBytes).size());
+
+            for (boolean streaming : new boolean[] {false, true}) {
+                for (int i = 0; i < warmup; i++) {
+                    parse(streaming, body, chunkBytes);
+                }
+                long[] timesNanos = new long[iterations];
+                long allocatedBefore = allocatedBytes();
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    parse(streaming, body, chunkBytes);
+                    timesNanos[i] = System.nanoTime() - start;
+                }
+                long allocated = (allocatedBytes() - allocatedBefore) / iterations;
+                Arrays.sort(timesNanos);
+                System.out.printf("%6dKB %10s %12.1f %16.1f%n", body.length / 1024,
+                    streaming ? "streamed" : "joined", timesNanos[iterations / 2] / 1e3, allocated / 1024.0);
+            }
+        }
+    }
+
+    private List<ReviewResponse> parse(boolean streaming, byte[] body, int chunkBytes) {
+        return streaming ? streamed(body, chunkBytes) : joined(body, chunkBytes);
+    }
+
+    private List<ReviewResponse> streamed(byte[] body, int chunkBytes) {
+        return chunks(body, chunkBytes)
+            .reduceWith(() -> new PlaceDetailsParser(FACTORY, MAX_BYTES), PlaceDetailsParser::feed)
+            .map(parser -> parser.finish().getReviews())
+            .block();
+    }
+
+    private List<ReviewResponse> joined(byte[] body, int chunkBytes) {
+        return DataBufferUtils.join(chunks(body, chunkBytes), MAX_BYTES)
+            .map(joined -> {
+                try (InputStream in = joined.asInputStream(true); JsonParser parser = FACTORY.createParser(in)) {
+                    return readReviews(parser);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            })
+            .block();
+    }
+
+    /**
+     * The body as it arrives from the connection, without copying it
+     */
+    private Flux<DataBuffer> chunks(byte[] body, int chunkBytes) {
+        return Flux.range(0, (body.length + chunkBytes - 1) / chunkBytes)
+            .map(i -> buffers.wrap(ByteBuffer.wrap(body, i * chunkBytes,
+                Math.min(chunkBytes, body.length - i * chunkBytes)).slice()));
+    }
+
+    /**
+     * Token loop of the blocking parse ReviewService ran over joined bodies
+     */
+    private static List<ReviewResponse> readReviews(JsonParser parser) throws IOException {
+        List<ReviewResponse> reviews = new ArrayList<>();
+        parser.nextToken();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "result".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String resultField = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && "reviews".equals(resultField)) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            ReviewResponse review = new ReviewResponse();
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String reviewField = parser.currentName();
+                                JsonToken value = parser.nextToken();
+                                if ("author_name".equals(reviewField)) {
+                                    review.setAuthorName(parser.getValueAsString());
+                                } else if ("rating".equals(reviewField) && value.isNumeric()) {
+                                    review.setRating(parser.getDecimalValue());
+                                } else if ("relative_time_description".equals(reviewField)) {
+                                    review.setRelativeTimeDescription(parser.getValueAsString());
+                                } else if ("text".equals(reviewField)) {
+                                    review.setText(parser.getValueAsString());
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                            reviews.add(review);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * A details response of about the given size: a few reviews after the
+     * photos, address components and opening hours that make up most of it
+     */
+    private static byte[] response(int bytes) {
+        Random random = new Random(bytes);
+        StringBuilder body = new StringBuilder("{\"html_attributions\": [], \"result\": {\"photos\": [");
+        for (int i = 0; body.length() < bytes - 4000; i++) {
+            body.append(i == 0 ? "" : ", ")
+                .append("{\"height\": ").append(2000 + random.nextInt(2000))
+                .append(", \"html_attributions\": [\"<a href=\\\"https://maps.google.com/maps/contrib/")
+                .append(random.nextLong() & Long.MAX_VALUE).append("\\\">Contributor ").append(i).append("</a>\"]")
+                .append(", \"photo_reference\": \"").append(Long.toHexString(random.nextLong()).repeat(12))
+                .append("\", \"width\": ").append(2000 + random.nextInt(2000)).append("}");
+        }
+        body.append("], \"reviews\": [");
+        for (int i = 0; i < REVIEWS; i++) {
+            body.append(i == 0 ? "" : ", ")
+                .append("{\"author_name\": \"Author ").append(i)
+                .append("\", \"author_url\": \"https://www.google.com/maps/contrib/").append(i)
+                .append("/reviews\", \"language\": \"en\", \"rating\": ").append(1 + random.nextInt(5))
+                .append(", \"relative_time_description\": \"").append(i + 1).append(" weeks ago\", \"text\": \"")
+                .append("Lovely place with friendly staff. ".repeat(10))
+                .append("\", \"time\": ").append(1_700_000_000 + i).append("}");
+        }
+        return body.append("], \"name\": \"Cafe\"}, \"status\": \"OK\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
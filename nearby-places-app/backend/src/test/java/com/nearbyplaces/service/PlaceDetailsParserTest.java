@@ -0,0 +1,88 @@
+package com.nearbyplaces.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.nearbyplaces.dto.ReviewResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlaceDetailsParserTest {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String RESPONSE = "{\"html_attributions\": [], \"result\": {"
+        + "\"photos\": [{\"height\": 3024, \"html_attributions\": [\"<a href=\\\"x\\\">A</a>\"], \"width\": 4032}], "
+        + "\"reviews\": [{\"author_name\": \"Zoë \\u00c9lise\", \"author_url\": \"https://example.com/1\", "
+        + "\"profile\": {\"photos\": [[1, 2], {\"text\": \"not a review field\"}]}, \"rating\": 4.5, "
+        + "\"relative_time_description\": \"a week ago\", \"text\": \"Great \\\"coffee\\\",\\nslow service\", "
+        + "\"time\": 1700000000}, "
+        + "{\"author_name\": \"Bob\", \"rating\": 2, \"text\": \"" + "long text ".repeat(200) + "\"}], "
+        + "\"name\": \"Cafe\"}, \"status\": \"OK\"}";
+
+    @Test
+    void readsReviewsWhereverTheBodyIsSplit() {
+        byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize : new int[] {1, 2, 7, 64, 1000, body.length}) {
+            PlaceDetailsParser parser = new PlaceDetailsParser(FACTORY, body.length);
+            for (int offset = 0; offset < body.length; offset += chunkSize) {
+                parser.feed(body, offset, Math.min(chunkSize, body.length - offset));
+            }
+            parser.finish();
+
+            assertEquals("OK", parser.getStatus());
+            List<ReviewResponse> reviews = parser.getReviews();
+            assertEquals(2, reviews.size(), "Chunks of " + chunkSize);
+            assertEquals("Zoë Élise", reviews.get(0).getAuthorName());
+            assertEquals(new BigDecimal("4.5"), reviews.get(0).getRating());
+            assertEquals("a week ago", reviews.get(0).getRelativeTimeDescription());
+            assertEquals("Great \"coffee\",\nslow service", reviews.get(0).getText());
+            assertEquals("Bob", reviews.get(1).getAuthorName());
+            assertEquals(new BigDecimal("2"), reviews.get(1).getRating());
+            assertEquals("long text ".repeat(200), reviews.get(1).getText());
+        }
+    }
+
+    @Test
+    void releasesEveryBufferItParses() {
+        DefaultDataBufferFactory buffers = new DefaultDataBufferFactory();
+        PlaceDetailsParser parser = new PlaceDetailsParser(FACTORY, 1024);
+
+        parser.feed(buffers.wrap("{\"status\": \"NOT_".getBytes(StandardCharsets.UTF_8)));
+        parser.feed(buffers.wrap("FOUND\"}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("NOT_FOUND", parser.finish().getStatus());
+        assertEquals(0, parser.getReviews().size());
+    }
+
+    @Test
+    void rejectsTruncatedAndMalformedBodies() {
+        assertThrows(IllegalStateException.class, () -> parse("{\"status\": \"OK\", \"result\": {\"reviews\": ["));
+        assertThrows(IllegalStateException.class, () -> parse("[\"status\"]"));
+        assertThrows(IllegalStateException.class, () -> parse("{\"status\": OK}"));
+        assertThrows(IllegalStateException.class, () -> parse(""));
+    }
+
+    @Test
+    void rejectsBodiesBeyondTheMaximumSize() {
+        byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        PlaceDetailsParser parser = new PlaceDetailsParser(FACTORY, body.length - 1);
+
+        assertThrows(DataBufferLimitException.class, () -> {
+            for (int offset = 0; offset < body.length; offset += 100) {
+                parser.feed(body, offset, Math.min(100, body.length - offset));
+            }
+        });
+    }
+
+    private static PlaceDetailsParser parse(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new PlaceDetailsParser(FACTORY, 1024).feed(bytes, 0, bytes.length).finish();
+    }
+}
@@ -0,0 +1,167 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.index.PlaceSnapshot;
+import com.nearbyplaces.index.PlaceTable;
+import com.nearbyplaces.model.Place;
+import com.nearbyplaces.repository.PlaceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The scheduled writer is slowed down so every test applies its changes itself
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:placeindex",
+    "places.index.delta-interval-ms=3600000",
+    "places.index.max-delta-places=5",
+    "places.reviews.prefetch.top-n=0",
+    "places.reviews.store.refresh-budget-per-minute=0"
+})
+class PlaceIndexServiceTest {
+
+    private static final double LATITUDE = 48.8566;
+    private static final double LONGITUDE = 2.3522;
+
+    @Autowired
+    private PlaceIndexService placeIndexService;
+
+    @Autowired
+    private PlaceRepository placeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        placeRepository.deleteAll();
+        placeIndexService.rebuild();
+    }
+
+    @Test
+    void rolledBackWritesNeverReachTheIndex() {
+        Place kept = placeRepository.save(place("kept", LATITUDE, LONGITUDE));
+        placeIndexService.applyPendingChanges();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            placeRepository.saveAndFlush(place("rolled_back", LATITUDE, LONGITUDE));
+            placeRepository.deleteById(kept.getId());
+            placeRepository.flush();
+            status.setRollbackOnly();
+        });
+        placeRepository.save(place("committed", LATITUDE, LONGITUDE));
+        placeIndexService.applyPendingChanges();
+
+        assertEquals(Set.of("kept", "committed"), placeIdsAround(placeIndexService.getSnapshot()));
+    }
+
+    @Test
+    void readersSeeConsistentSnapshotsAcrossDeltasAndCompaction() throws InterruptedException {
+        int size = 20;
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ids.add(placeRepository.save(place("place_" + i, LATITUDE, LONGITUDE)).getId());
+        }
+        placeIndexService.rebuild();
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<String> failures = new CopyOnWriteArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            Thread reader = new Thread(() -> {
+                while (writing.get()) {
+                    PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+                    Set<String> first = placeIdsAround(snapshot);
+                    Set<String> second = placeIdsAround(snapshot);
+                    if (first.size() != size || !first.equals(second)) {
+                        failures.add("Snapshot returned " + first + " then " + second);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // Moves a few places per transaction; every fifth change outgrows the delta and compacts
+        Random random = new Random(11);
+        int batches = 0;
+        int compactions = 0;
+        int deltaSize = 0;
+        for (int i = 0; i < 40; i++) {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int j = 0; j < 2; j++) {
+                    Place place = placeRepository.findById(ids.get(random.nextInt(size))).orElseThrow();
+                    place.setLatitude(coordinate(LATITUDE + (random.nextDouble() - 0.5) / 100));
+                    place.setLongitude(coordinate(LONGITUDE + (random.nextDouble() - 0.5) / 100));
+                }
+            });
+            placeIndexService.applyPendingChanges();
+            // A compaction folds the delta into the base before the batch is applied on top
+            int applied = placeIndexService.getSnapshot().deltaSize();
+            if (applied < deltaSize) {
+                compactions++;
+            } else {
+                batches++;
+            }
+            deltaSize = applied;
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.isEmpty(), failures.isEmpty() ? "" : failures.get(0));
+        assertTrue(batches > 0, "No delta batch was applied");
+        assertTrue(compactions > 0, "No compaction happened");
+
+        PlaceSnapshot snapshot = placeIndexService.getSnapshot();
+        PlaceTable table = snapshot.getTable();
+        for (int row : snapshot.findRowsWithinRadius(LATITUDE, LONGITUDE, 5, null)) {
+            Place stored = placeRepository.findById(table.id(row)).orElseThrow();
+            assertEquals(stored.getLatitude().doubleValue(), table.latitude(row), 1e-9);
+            assertEquals(stored.getLongitude().doubleValue(), table.longitude(row), 1e-9);
+        }
+        assertFalse(placeIdsAround(snapshot).isEmpty());
+    }
+
+    private static Set<String> placeIdsAround(PlaceSnapshot snapshot) {
+        PlaceTable table = snapshot.getTable();
+        int[] rows = snapshot.findRowsWithinRadius(LATITUDE, LONGITUDE, 5, null);
+        Set<String> placeIds = new HashSet<>();
+        for (int row : rows) {
+            if (!placeIds.add(table.placeId(row))) {
+                // Reported as a size mismatch by the callers
+                placeIds.add("duplicate_" + table.placeId(row));
+            }
+        }
+        return placeIds;
+    }
+
+    /**
+     * @return The coordinate at the scale of the places table
+     */
+    private static BigDecimal coordinate(double value) {
+        return BigDecimal.valueOf(value).setScale(8, RoundingMode.HALF_UP);
+    }
+
+    private static Place place(String placeId, double latitude, double longitude) {
+        return new Place("Place " + placeId, "Address " + placeId, BigDecimal.valueOf(latitude),
+            BigDecimal.valueOf(longitude), null, placeId, List.of("point_of_interest"));
+    }
+}
@@ -0,0 +1,271 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.ReviewResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewServiceTest {
+
+    private StubPlacesServer stub;
+    private MockEnvironment environment;
+    private ReviewStore reviewStore;
+    private ReviewService reviewService;
+    private boolean started;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubPlacesServer();
+        // The deadline of the guard is kept out of the way of the client timeouts
+        environment = new MockEnvironment()
+            .withProperty("google.places.api.resilience.timeout-ms", "10000");
+        reviewStore = mock(ReviewStore.class);
+        when(reviewStore.find(anyString())).thenReturn(Optional.empty());
+
+        reviewService = new ReviewService();
+        ReflectionTestUtils.setField(reviewService, "apiKey", "test-key");
+        ReflectionTestUtils.setField(reviewService, "baseUrl", stub.getBaseUrl());
+        ReflectionTestUtils.setField(reviewService, "placeDetailsPath", StubPlacesServer.PLACE_DETAILS_PATH);
+        ReflectionTestUtils.setField(reviewService, "connectTimeoutMs", 2000);
+        ReflectionTestUtils.setField(reviewService, "readTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(reviewService, "maxConnections", 50);
+        ReflectionTestUtils.setField(reviewService, "maxPendingRequests", 200);
+        ReflectionTestUtils.setField(reviewService, "cacheMaxEntries", 100L);
+        ReflectionTestUtils.setField(reviewService, "cacheSoftTtlSeconds", 600L);
+        ReflectionTestUtils.setField(reviewService, "cacheHardTtlSeconds", 3600L);
+        ReflectionTestUtils.setField(reviewService, "reviewStore", reviewStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (started) {
+            reviewService.shutdown();
+        }
+        stub.close();
+    }
+
+    @Test
+    void fetchesReviewsFromTheUpstream() {
+        stub.respond("cafe", Duration.ZERO, StubPlacesServer.reviews("Great coffee", "Too crowded"));
+        start();
+
+        List<ReviewResponse> reviews = reviewService.getPlaceReviews("cafe").block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("Great coffee", "Too crowded"), reviews.stream().map(ReviewResponse::getText).toList());
+        assertEquals(1, stub.hits("cafe"));
+    }
+
+    @Test
+    void slowResponseFailsAfterTheReadTimeout() {
+        ReflectionTestUtils.setField(reviewService, "readTimeoutMs", 300L);
+        stub.respond("slow", Duration.ofSeconds(3), StubPlacesServer.reviews("Late"));
+        start();
+
+        long start = System.nanoTime();
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> reviewService.getPlaceReviews("slow").block(Duration.ofSeconds(5)));
+
+        assertTrue(hasCause(e, "ReadTimeoutException"), e.toString());
+        assertTrue(elapsedMs(start) < 2000, "Took " + elapsedMs(start) + "ms");
+    }
+
+    @Test
+    void unreachableUpstreamFailsAfterTheConnectTimeout() throws IOException {
+        // Once its accept queue is full, a listening socket that never accepts leaves further connects hanging
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<Socket> queued = new ArrayList<>();
+            try {
+                while (true) {
+                    Socket socket = new Socket();
+                    queued.add(socket);
+                    socket.connect(server.getLocalSocketAddress(), 200);
+                }
+            } catch (SocketTimeoutException full) {
+                // The queue is full
+            }
+            ReflectionTestUtils.setField(reviewService, "baseUrl", "http://127.0.0.1:" + server.getLocalPort());
+            ReflectionTestUtils.setField(reviewService, "connectTimeoutMs", 300);
+            start();
+
+            long start = System.nanoTime();
+            RuntimeException e = assertThrows(RuntimeException.class,
+                () -> reviewService.getPlaceReviews("cafe").block(Duration.ofSeconds(5)));
+
+            assertTrue(hasCause(e, "ConnectTimeoutException"), e.toString());
+            assertTrue(elapsedMs(start) < 2000, "Took " + elapsedMs(start) + "ms");
+            for (Socket socket : queued) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void requestsBeyondThePendingQueueFailFast() throws Exception {
+        ReflectionTestUtils.setField(reviewService, "maxConnections", 1);
+        ReflectionTestUtils.setField(reviewService, "maxPendingRequests", 1);
+        for (String placeId : List.of("first", "second", "third")) {
+            stub.respond(placeId, Duration.ofSeconds(1), StubPlacesServer.reviews(placeId));
+        }
+        start();
+
+        // One request holds the connection and one waits for it, the third has nowhere to go
+        CompletableFuture<List<ReviewResponse>> first = reviewService.getPlaceReviews("first").toFuture();
+        awaitHits("first", 1);
+        CompletableFuture<List<ReviewResponse>> second = reviewService.getPlaceReviews("second").toFuture();
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        CompletableFuture<List<ReviewResponse>> third = reviewService.getPlaceReviews("third").toFuture();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS));
+        assertTrue(hasCause(e, "PoolAcquirePendingLimitException"), e.toString());
+        assertTrue(elapsedMs(start) < 400, "Took " + elapsedMs(start) + "ms");
+        assertEquals("first", first.get(5, TimeUnit.SECONDS).get(0).getText());
+        assertEquals("second", second.get(5, TimeUnit.SECONDS).get(0).getText());
+        assertEquals(0, stub.hits("third"));
+    }
+
+    @Test
+    void concurrentMissesShareOneUpstreamCall() throws Exception {
+        stub.respond("popular", Duration.ofMillis(300), StubPlacesServer.reviews("Busy"));
+        start();
+
+        List<CompletableFuture<List<ReviewResponse>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(reviewService.getPlaceReviews("popular").toFuture());
+        }
+
+        for (CompletableFuture<List<ReviewResponse>> future : futures) {
+            assertEquals("Busy", future.get(5, TimeUnit.SECONDS).get(0).getText());
+        }
+        assertEquals(1, stub.hits("popular"));
+    }
+
+    @Test
+    void staleReviewsAreServedWhileTheyAreRefreshed() throws Exception {
+        ReflectionTestUtils.setField(reviewService, "cacheSoftTtlSeconds", 1L);
+        stub.respond("cafe", Duration.ZERO, StubPlacesServer.reviews("Old"));
+        start();
+        assertEquals("Old", firstText("cafe"));
+
+        Thread.sleep(1100);
+        stub.respond("cafe", Duration.ofMillis(500), StubPlacesServer.reviews("New"));
+        long start = System.nanoTime();
+        assertEquals("Old", firstText("cafe"));
+        assertTrue(elapsedMs(start) < 300, "Took " + elapsedMs(start) + "ms");
+
+        awaitFirstText("cafe", "New");
+        assertEquals(2, stub.hits("cafe"));
+    }
+
+    @Test
+    void failedRefreshKeepsServingTheLastKnownReviews() throws Exception {
+        ReflectionTestUtils.setField(reviewService, "cacheSoftTtlSeconds", 1L);
+        stub.respond("cafe", Duration.ZERO, StubPlacesServer.reviews("Last known"));
+        start();
+        assertEquals("Last known", firstText("cafe"));
+
+        Thread.sleep(1100);
+        stub.respond("cafe", Duration.ZERO, StubPlacesServer.status("OVER_QUERY_LIMIT"));
+        assertEquals("Last known", firstText("cafe"));
+        awaitHits("cafe", 2);
+        // Gives the failed refresh time to be handled after its response arrived
+        Thread.sleep(200);
+
+        assertEquals("Last known", firstText("cafe"));
+    }
+
+    @Test
+    void placeUnknownToTheUpstreamIsRemovedInsteadOfStored() {
+        stub.respond("made_up", Duration.ZERO, StubPlacesServer.status("NOT_FOUND"));
+        start();
+
+        List<ReviewResponse> reviews = reviewService.getPlaceReviews("made_up").block(Duration.ofSeconds(5));
+
+        assertTrue(reviews.isEmpty());
+        verify(reviewStore, timeout(1000)).delete("made_up");
+        verify(reviewStore, never()).save(eq("made_up"), anyList());
+    }
+
+    @Test
+    void placeWithoutReviewsIsStored() {
+        stub.respond("quiet", Duration.ZERO, StubPlacesServer.status("ZERO_RESULTS"));
+        start();
+
+        List<ReviewResponse> reviews = reviewService.getPlaceReviews("quiet").block(Duration.ofSeconds(5));
+
+        assertTrue(reviews.isEmpty());
+        verify(reviewStore, timeout(1000)).save("quiet", List.of());
+        verify(reviewStore, never()).delete("quiet");
+    }
+
+    private void start() {
+        UpstreamGuards upstreamGuards = new UpstreamGuards();
+        ReflectionTestUtils.setField(upstreamGuards, "environment", environment);
+        ReflectionTestUtils.setField(reviewService, "upstreamGuards", upstreamGuards);
+        reviewService.init();
+        started = true;
+    }
+
+    private String firstText(String placeId) {
+        return reviewService.getPlaceReviews(placeId).block(Duration.ofSeconds(5)).get(0).getText();
+    }
+
+    private void awaitFirstText(String placeId, String text) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!text.equals(firstText(placeId)) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(text, firstText(placeId));
+    }
+
+    private void awaitHits(String placeId, int hits) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stub.hits(placeId) < hits && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(hits, stub.hits(placeId));
+    }
+
+    /**
+     * Causes are matched by simple name, the pool's exceptions are shaded into reactor-netty internals
+     */
+    private static boolean hasCause(Throwable e, String simpleName) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getClass().getSimpleName().equals(simpleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
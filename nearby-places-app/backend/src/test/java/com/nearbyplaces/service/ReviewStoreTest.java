@@ -0,0 +1,111 @@
+package com.nearbyplaces.service;
+
+import com.nearbyplaces.dto.ReviewResponse;
+import com.nearbyplaces.model.Review;
+import com.nearbyplaces.repository.PlaceReviewStatusRepository;
+import com.nearbyplaces.repository.ReviewRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every store call runs in its own transaction, as it does in the application
+ */
+@DataJpaTest
+@Import(ReviewStore.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReviewStoreTest {
+
+    @Autowired
+    private ReviewStore reviewStore;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private PlaceReviewStatusRepository statusRepository;
+
+    @AfterEach
+    void tearDown() {
+        reviewRepository.deleteAll();
+        statusRepository.deleteAll();
+    }
+
+    @Test
+    void findsSavedReviewsInUpstreamOrder() {
+        reviewStore.save("cafe", List.of(review("Ann", "Great coffee", "1 week ago"), review("Bob", "Crowded", "2 days ago")));
+
+        List<ReviewResponse> reviews = reviewStore.find("cafe").orElseThrow();
+
+        assertEquals(List.of("Great coffee", "Crowded"), reviews.stream().map(ReviewResponse::getText).toList());
+        assertFalse(reviewStore.find("park").isPresent());
+    }
+
+    @Test
+    void placeWithoutReviewsIsStoredAsFetched() {
+        reviewStore.save("quiet", List.of());
+
+        assertTrue(reviewStore.find("quiet").orElseThrow().isEmpty());
+    }
+
+    @Test
+    void savingAgainKeepsUnchangedReviewsAndReplacesTheRest() {
+        reviewStore.save("cafe", List.of(review("Ann", "Great coffee", "1 week ago"), review("Bob", "Crowded", "2 days ago")));
+        Review bob = reviewRepository.findByPlaceIdOrderByPositionAsc("cafe").get(1);
+
+        reviewStore.save("cafe", List.of(review("Bob", "Crowded", "1 week ago"), review("Cat", "Nice staff", "1 day ago")));
+
+        List<Review> stored = reviewRepository.findByPlaceIdOrderByPositionAsc("cafe");
+        assertEquals(2, stored.size());
+        assertEquals(bob.getId(), stored.get(0).getId());
+        assertEquals("1 week ago", stored.get(0).getRelativeTimeDescription());
+        assertEquals("Nice staff", stored.get(1).getText());
+    }
+
+    @Test
+    void stalePlacesComeMostRequestedFirst() throws InterruptedException {
+        for (String placeId : List.of("cafe", "park", "museum")) {
+            reviewStore.save(placeId, List.of(review("Ann", "Fine", "1 week ago")));
+        }
+        reviewStore.addRequests(Map.of("park", 5L, "museum", 1L, "unknown", 3L));
+        Thread.sleep(5);
+        Instant staleBefore = Instant.now();
+        Thread.sleep(5);
+
+        assertEquals(List.of("park", "museum", "cafe"), reviewStore.findStale(staleBefore, 10));
+        assertEquals(List.of("park"), reviewStore.findStale(staleBefore, 1));
+
+        reviewStore.markAttempted("park");
+        assertEquals(List.of("museum", "cafe"), reviewStore.findStale(staleBefore, 10));
+        assertFalse(statusRepository.existsById("unknown"));
+    }
+
+    @Test
+    void deletedPlaceIsNoLongerStoredOrRefreshed() {
+        reviewStore.save("gone", List.of(review("Ann", "Closed now", "1 year ago")));
+
+        reviewStore.delete("gone");
+        reviewStore.delete("never_stored");
+
+        assertFalse(reviewStore.find("gone").isPresent());
+        assertTrue(reviewRepository.findByPlaceIdOrderByPositionAsc("gone").isEmpty());
+        assertTrue(reviewStore.findStale(Instant.now().plusSeconds(60), 10).isEmpty());
+    }
+
+    private static ReviewResponse review(String author, String text, String relativeTime) {
+        return new ReviewResponse(author, new BigDecimal("4"), relativeTime, text);
+    }
+}
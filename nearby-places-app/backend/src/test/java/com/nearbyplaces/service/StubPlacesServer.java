@@ -0,0 +1,100 @@
+package com.nearbyplaces.service;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for the Google Places API. Place details are answered
+ * with the response set for their place id, after its delay; place ids
+ * without one get a single review.
+ */
+public class StubPlacesServer implements AutoCloseable {
+
+    public static final String PLACE_DETAILS_PATH = "/details/json";
+
+    private final Map<String, Reply> replies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final DisposableServer server;
+
+    public StubPlacesServer() {
+        server = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .route(routes -> routes.get(PLACE_DETAILS_PATH, (request, response) -> {
+                List<String> placeIds = new QueryStringDecoder(request.uri()).parameters().get("place_id");
+                String placeId = placeIds == null ? "" : placeIds.get(0);
+                hits.computeIfAbsent(placeId, id -> new AtomicInteger()).incrementAndGet();
+                Reply reply = replies.getOrDefault(placeId, new Reply(Duration.ZERO, reviews("Good place")));
+                return Mono.delay(reply.delay)
+                    .then(response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .sendString(Mono.just(reply.body))
+                        .then());
+            }))
+            .bindNow();
+    }
+
+    /**
+     * @return Base URL to configure as google.places.api.base-url
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public void respond(String placeId, Duration delay, String body) {
+        replies.put(placeId, new Reply(delay, body));
+    }
+
+    /**
+     * @return Number of place details requests received for the place
+     */
+    public int hits(String placeId) {
+        AtomicInteger count = hits.get(placeId);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return A successful place details body with one review per text
+     */
+    public static String reviews(String... texts) {
+        StringBuilder body = new StringBuilder("{\"status\": \"OK\", \"result\": {\"reviews\": [");
+        for (int i = 0; i < texts.length; i++) {
+            body.append(i == 0 ? "" : ", ")
+                .append("{\"author_name\": \"Author ").append(i)
+                .append("\", \"rating\": 4, \"relative_time_description\": \"1 week ago\", \"text\": \"")
+                .append(texts[i]).append("\"}");
+        }
+        return body.append("]}}").toString();
+    }
+
+    /**
+     * @return A place details body carrying only the given status
+     */
+    public static String status(String status) {
+        return "{\"status\": \"" + status + "\"}";
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private static final class Reply {
+
+        final Duration delay;
+        final String body;
+
+        Reply(Duration delay, String body) {
+            this.delay = delay;
+            this.body = body;
+        }
+    }
+}
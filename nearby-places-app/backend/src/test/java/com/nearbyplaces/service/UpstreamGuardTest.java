@@ -0,0 +1,135 @@
+package com.nearbyplaces.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamGuardTest {
+
+    private static final long OPEN_MS = 300;
+
+    private StubPlacesServer stub;
+    private WebClient webClient;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubPlacesServer();
+        webClient = WebClient.create(stub.getBaseUrl());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void openCircuitStopsCallingTheUpstreamUntilAProbeSucceeds() throws InterruptedException {
+        UpstreamGuard guard = guard(10, Duration.ofSeconds(2));
+        stub.respond("down", Duration.ZERO, StubPlacesServer.status("OVER_QUERY_LIMIT"));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> fetch(guard, "down"));
+        }
+        assertEquals(1.0, circuitState());
+        IllegalStateException open = assertThrows(IllegalStateException.class, () -> fetch(guard, "down"));
+        assertTrue(open.getMessage().contains("is open"), open.getMessage());
+        assertEquals(4, stub.hits("down"));
+
+        Thread.sleep(OPEN_MS + 50);
+        stub.respond("down", Duration.ZERO, StubPlacesServer.reviews("Back"));
+        fetch(guard, "down");
+        assertEquals(0.0, circuitState());
+        fetch(guard, "down");
+        assertEquals(6, stub.hits("down"));
+    }
+
+    @Test
+    void failedProbeKeepsTheCircuitOpen() throws InterruptedException {
+        UpstreamGuard guard = guard(10, Duration.ofSeconds(2));
+        stub.respond("down", Duration.ZERO, StubPlacesServer.status("OVER_QUERY_LIMIT"));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> fetch(guard, "down"));
+        }
+
+        Thread.sleep(OPEN_MS + 50);
+        assertThrows(IllegalStateException.class, () -> fetch(guard, "down"));
+        assertEquals(5, stub.hits("down"));
+
+        IllegalStateException open = assertThrows(IllegalStateException.class, () -> fetch(guard, "down"));
+        assertTrue(open.getMessage().contains("is open"), open.getMessage());
+        assertEquals(5, stub.hits("down"));
+        assertEquals(1.0, circuitState());
+    }
+
+    @Test
+    void fullBulkheadRejectsCallsWithoutWaiting() throws Exception {
+        UpstreamGuard guard = guard(2, Duration.ofSeconds(5));
+        stub.respond("slow", Duration.ofMillis(500), StubPlacesServer.reviews("Slow"));
+
+        CompletableFuture<String> first = guard.call(() -> get("slow")).toFuture();
+        CompletableFuture<String> second = guard.call(() -> get("slow")).toFuture();
+        long start = System.nanoTime();
+        IllegalStateException full = assertThrows(IllegalStateException.class, () -> fetch(guard, "other"));
+
+        assertTrue(full.getMessage().contains("Too many concurrent calls"), full.getMessage());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(0, stub.hits("other"));
+    }
+
+    @Test
+    void callsPastTheDeadlineTimeOutAndCountAsFailures() {
+        UpstreamGuard guard = guard(10, Duration.ofMillis(200));
+        stub.respond("slow", Duration.ofSeconds(2), StubPlacesServer.reviews("Late"));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> fetch(guard, "slow"));
+
+        assertTrue(e.getCause() instanceof TimeoutException, e.toString());
+        assertEquals(1.0, meterRegistry.get("places.upstream.calls").tag("outcome", "timeout").counter().count());
+        assertEquals(100.0, meterRegistry.get("places.upstream.circuit.failure.rate").gauge().value());
+    }
+
+    private UpstreamGuard guard(int maxConcurrentCalls, Duration timeout) {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, TimeUnit.MILLISECONDS.toNanos(OPEN_MS), 1);
+        return new UpstreamGuard("place-details", maxConcurrentCalls, timeout, breaker, meterRegistry);
+    }
+
+    private String fetch(UpstreamGuard guard, String placeId) {
+        return guard.call(() -> get(placeId)).block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * Place details whose status is not OK fail, like they do in the review service
+     */
+    private Mono<String> get(String placeId) {
+        return webClient.get()
+            .uri(StubPlacesServer.PLACE_DETAILS_PATH + "?place_id=" + placeId)
+            .retrieve()
+            .bodyToMono(String.class)
+            .map(body -> {
+                if (!body.contains("\"OK\"")) {
+                    throw new IllegalStateException("Upstream returned " + body);
+                }
+                return body;
+            });
+    }
+
+    private double circuitState() {
+        return meterRegistry.get("places.upstream.circuit.state").gauge().value();
+    }
+}